@@ -0,0 +1,19 @@
+package com.audition.benchmark;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+
+/*
+ * Application properties for the benchmarks, with the post snapshot switched on or off
+ */
+
+final class BenchmarkPropertiesHelper {
+
+    private BenchmarkPropertiesHelper() {
+    }
+
+    static AuditionApiProperties properties(final boolean snapshotEnabled) {
+        return AuditionApiPropertiesFixtures.defaults().withBaseUrl("http://localhost")
+            .withSnapshot(new AuditionApiProperties.Snapshot(snapshotEnabled, null, null, null, null));
+    }
+}
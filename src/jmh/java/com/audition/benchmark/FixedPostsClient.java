@@ -0,0 +1,30 @@
+package com.audition.benchmark;
+
+import com.audition.integration.AuditionIntegrationClient;
+import com.audition.model.AuditionPost;
+import java.util.List;
+
+/*
+ * Integration client answering from a fixed list, so the benchmarks measure the service and not the network
+ */
+
+class FixedPostsClient extends AuditionIntegrationClient {
+
+    private final List<AuditionPost> posts;
+
+    FixedPostsClient(final List<AuditionPost> posts) {
+        super(null, null, null, null, null, null, null, null, null, null, null);
+        this.posts = posts;
+    }
+
+    @Override
+    public List<AuditionPost> getPosts() {
+        return posts;
+    }
+
+    // No upstream to push the paging and filter down to, the service answers from the fixed list
+    @Override
+    public boolean isPushDownEnabled() {
+        return false;
+    }
+}
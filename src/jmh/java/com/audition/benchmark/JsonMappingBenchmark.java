@@ -0,0 +1,87 @@
+package com.audition.benchmark;
+
+import com.audition.common.logging.AuditionLogger;
+import com.audition.configuration.WebServiceConfiguration;
+import com.audition.integration.StreamingJsonReader;
+import com.audition.model.AuditionComment;
+import com.audition.model.AuditionPost;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Jackson (de)serialization of AuditionPost[] and AuditionComment[] with the application objectMapper(), plus the
+ * streaming reader used on the upstream responses.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonMappingBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int count;
+
+    private ObjectMapper objectMapper;
+    private StreamingJsonReader jsonReader;
+    private AuditionPost[] posts;
+    private AuditionComment[] comments;
+    private byte[] postsJson;
+    private byte[] commentsJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new WebServiceConfiguration(new AuditionLogger()).objectMapper();
+        jsonReader = new StreamingJsonReader(objectMapper);
+        posts = SyntheticDataHelper.posts(count).toArray(new AuditionPost[0]);
+        comments = SyntheticDataHelper.comments(count).toArray(new AuditionComment[0]);
+        postsJson = objectMapper.writeValueAsBytes(posts);
+        commentsJson = objectMapper.writeValueAsBytes(comments);
+    }
+
+    @Benchmark
+    public byte[] serializePosts() throws IOException {
+        return objectMapper.writeValueAsBytes(posts);
+    }
+
+    @Benchmark
+    public AuditionPost[] deserializePosts() throws IOException {
+        return objectMapper.readValue(postsJson, AuditionPost[].class);
+    }
+
+    @Benchmark
+    public List<AuditionPost> streamPosts() throws IOException {
+        return jsonReader.readList(new ByteArrayInputStream(postsJson), AuditionPost.class);
+    }
+
+    @Benchmark
+    public byte[] serializeComments() throws IOException {
+        return objectMapper.writeValueAsBytes(comments);
+    }
+
+    @Benchmark
+    public AuditionComment[] deserializeComments() throws IOException {
+        return objectMapper.readValue(commentsJson, AuditionComment[].class);
+    }
+
+    @Benchmark
+    public List<AuditionComment> streamComments() throws IOException {
+        return jsonReader.readList(new ByteArrayInputStream(commentsJson), AuditionComment.class);
+    }
+}
@@ -0,0 +1,70 @@
+package com.audition.benchmark;
+
+import com.audition.cache.PostSnapshotStore;
+import com.audition.common.logging.AuditionLogger;
+import com.audition.model.AuditionPost;
+import com.audition.service.AuditionService;
+import com.audition.service.PostPage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * AuditionService.getPaginatedPosts on the first and on the last page, next to the cursor paging of the snapshot
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaginationBenchmark {
+
+    private static final int PAGE_SIZE = 10;
+
+    @Param({"100", "10000", "1000000"})
+    public int postCount;
+
+    private List<AuditionPost> posts;
+    private AuditionService service;
+    private int lastPage;
+    private String secondPageCursor;
+
+    @Setup
+    public void setUp() {
+        posts = SyntheticDataHelper.posts(postCount);
+        final FixedPostsClient client = new FixedPostsClient(posts);
+        final PostSnapshotStore snapshotStore = new PostSnapshotStore(client,
+            BenchmarkPropertiesHelper.properties(true), new AuditionLogger(), new SimpleMeterRegistry());
+        service = new AuditionService(client, snapshotStore, null);
+        lastPage = (postCount + PAGE_SIZE - 1) / PAGE_SIZE;
+        secondPageCursor = service.getPostsPage(null, null, PAGE_SIZE).nextCursor();
+    }
+
+    @Benchmark
+    public List<AuditionPost> firstPage() {
+        return service.getPaginatedPosts(posts, 1, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<AuditionPost> lastPage() {
+        return service.getPaginatedPosts(posts, lastPage, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public PostPage cursorPage() {
+        return service.getPostsPage(secondPageCursor, null, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,145 @@
+package com.audition.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.audition.common.logging.AuditionLogger;
+import com.audition.configuration.WebServiceConfiguration;
+import com.audition.interceptor.RestClientLogInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+
+/*
+ * RestClientLogInterceptor.intercept around an in-memory upstream call returning the posts as JSON, at INFO (no body
+ * logged) and at DEBUG (body prefix logged). The interceptor logger gets no appender, so the messages are built but
+ * not written anywhere.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestClientLogInterceptorBenchmark {
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    @Param({"100", "10000", "1000000"})
+    public int postCount;
+
+    @Param({"INFO", "DEBUG"})
+    public String logLevel;
+
+    private RestClientLogInterceptor interceptor;
+    private HttpRequest request;
+    private ClientHttpRequestExecution execution;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Logger logger = (Logger) LoggerFactory.getLogger(RestClientLogInterceptor.class);
+        logger.setLevel(Level.toLevel(logLevel));
+        logger.setAdditive(false);
+
+        final ObjectMapper objectMapper = new WebServiceConfiguration(new AuditionLogger()).objectMapper();
+        interceptor = new RestClientLogInterceptor(new AuditionLogger(), objectMapper);
+        final byte[] body = objectMapper.writeValueAsBytes(SyntheticDataHelper.posts(postCount));
+        request = new FixedRequest();
+        execution = (httpRequest, requestBody) -> new FixedResponse(body);
+    }
+
+    @Benchmark
+    public ClientHttpResponse intercept() throws IOException {
+        return interceptor.intercept(request, NO_BODY, execution);
+    }
+
+    private static final class FixedRequest implements HttpRequest {
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        FixedRequest() {
+            headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return HttpMethod.GET;
+        }
+
+        @Override
+        public URI getURI() {
+            return URI.create("http://localhost/posts");
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+
+    private static final class FixedResponse implements ClientHttpResponse {
+
+        private final byte[] body;
+        private final HttpHeaders headers = new HttpHeaders();
+
+        FixedResponse(final byte[] body) {
+            this.body = body;
+            headers.setContentType(MediaType.APPLICATION_JSON);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return HttpStatus.OK;
+        }
+
+        @Override
+        @Deprecated
+        public int getRawStatusCode() {
+            return HttpStatus.OK.value();
+        }
+
+        @Override
+        public String getStatusText() {
+            return HttpStatus.OK.getReasonPhrase();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+            // Nothing to release, the body is in memory
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.audition.benchmark;
+
+import com.audition.model.AuditionComment;
+import com.audition.model.AuditionPost;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Synthetic, reproducible posts and comments shaped like the jsonplaceholder data: lower-case latin words,
+ * short titles, longer bodies, ids in ascending order. The same seed always gives the same dataset.
+ */
+
+final class SyntheticDataHelper {
+
+    private static final String[] WORDS = ("sunt aut facere repellat provident occaecati excepturi optio reprehenderit "
+        + "quia et suscipit recusandae consequuntur expedita sequi nesciunt ut rerum tempore vitae est dolor qui "
+        + "ipsam iure dolorem eum magnam eos accusamus nostrum voluptatem nihil molestiae porro ullam odit").split(" ");
+
+    private SyntheticDataHelper() {
+    }
+
+    static List<AuditionPost> posts(final int count) {
+        final Random random = new Random(count);
+        final List<AuditionPost> posts = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            final AuditionPost post = new AuditionPost();
+            post.setId(id);
+            post.setUserId(1 + id / 10);
+            post.setTitle(sentence(random, 3 + random.nextInt(6)));
+            post.setBody(sentence(random, 20 + random.nextInt(20)));
+            posts.add(post);
+        }
+        return posts;
+    }
+
+    static List<AuditionComment> comments(final int count) {
+        final Random random = new Random(count);
+        final List<AuditionComment> comments = new ArrayList<>(count);
+        for (int id = 1; id <= count; id++) {
+            final AuditionComment comment = new AuditionComment();
+            comment.setId(id);
+            comment.setPostId(1 + id / 5);
+            comment.setName(sentence(random, 2 + random.nextInt(4)));
+            comment.setEmail(WORDS[random.nextInt(WORDS.length)] + id + "@example.com");
+            comment.setBody(sentence(random, 10 + random.nextInt(20)));
+            comments.add(comment);
+        }
+        return comments;
+    }
+
+    private static String sentence(final Random random, final int words) {
+        final StringBuilder sentence = new StringBuilder(words * 8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.toString();
+    }
+}
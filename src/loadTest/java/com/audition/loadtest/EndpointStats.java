@@ -0,0 +1,47 @@
+package com.audition.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/*
+ * Latency histogram (microseconds, 3 significant digits, up to one minute) and error count of one endpoint
+ */
+
+final class EndpointStats {
+
+    private static final long MAX_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final String name;
+    private final Histogram histogram = new ConcurrentHistogram(MAX_TRACKABLE_MICROS, 3);
+    private final LongAdder errors = new LongAdder();
+
+    EndpointStats(final String name) {
+        this.name = name;
+    }
+
+    void record(final long latencyNanos, final boolean success) {
+        histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_TRACKABLE_MICROS));
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    void reset() {
+        histogram.reset();
+        errors.reset();
+    }
+
+    String name() {
+        return name;
+    }
+
+    Histogram histogram() {
+        return histogram;
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,52 @@
+package com.audition.loadtest;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Random;
+import org.springframework.boot.convert.DurationStyle;
+
+/*
+ * Response delay of the upstream stub, parsed from specs like:
+ *  fixed:20ms, uniform:10ms:50ms, exponential:20ms (mean), lognormal:20ms:150ms (median and p99), none
+ */
+
+@FunctionalInterface
+interface LatencyDistribution {
+
+    // Standard normal quantile of 0.99, turns the requested median/p99 ratio into the lognormal sigma
+    double Z_99 = 2.326_348;
+
+    long sampleNanos(Random random);
+
+    static LatencyDistribution parse(final String spec) {
+        final String[] parts = spec.trim().toLowerCase(Locale.ROOT).split(":");
+        switch (parts[0]) {
+            case "none":
+                return random -> 0;
+            case "fixed":
+                final long fixed = nanos(parts, 1);
+                return random -> fixed;
+            case "uniform":
+                final long low = nanos(parts, 1);
+                final long high = nanos(parts, 2);
+                return random -> low + (long) (random.nextDouble() * (high - low));
+            case "exponential":
+                final double mean = nanos(parts, 1);
+                return random -> (long) (-mean * Math.log(1 - random.nextDouble()));
+            case "lognormal":
+                final double median = nanos(parts, 1);
+                final double sigma = Math.log(nanos(parts, 2) / median) / Z_99;
+                return random -> (long) (median * Math.exp(sigma * random.nextGaussian()));
+            default:
+                throw new IllegalArgumentException("Unknown latency distribution '" + spec + "'");
+        }
+    }
+
+    private static long nanos(final String[] parts, final int index) {
+        if (parts.length <= index) {
+            throw new IllegalArgumentException("Missing duration in latency spec '" + String.join(":", parts) + "'");
+        }
+        final Duration duration = DurationStyle.detectAndParse(parts[index]);
+        return duration.toNanos();
+    }
+}
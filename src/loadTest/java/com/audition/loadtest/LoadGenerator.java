@@ -0,0 +1,147 @@
+package com.audition.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/*
+ * Sends requests to the app under test, picking a random endpoint for each of them.
+ *  - closed loop: a fixed number of clients, each one sends its next request when the previous one completed.
+ *  - open loop: requests start at a fixed rate whatever the response times are. Latency is counted from the planned
+ *    start, so a stalled server is not hidden by the load generator slowing down (coordinated omission).
+ * Requests started during the warmup are not recorded.
+ */
+
+final class LoadGenerator {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final LoadTestSettings settings;
+    private final Map<String, Function<Random, String>> endpoints = new LinkedHashMap<>();
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+    private final List<String> names;
+
+    LoadGenerator(final HttpClient httpClient, final String baseUrl, final LoadTestSettings settings) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.settings = settings;
+        final int posts = settings.stubPosts();
+        final Map<String, Function<Random, String>> known = Map.of(
+            "posts", random -> "/posts?page=" + (1 + random.nextInt(Math.max(1, posts / 10))) + "&size=10",
+            "postsFilter", random -> "/posts?filter=dolor",
+            "postById", random -> "/posts/" + (1 + random.nextInt(posts)),
+            "postWithComments", random -> "/posts/" + (1 + random.nextInt(posts)) + "/comments",
+            "comments", random -> "/comments?postId=" + (1 + random.nextInt(posts)));
+        for (final String name : settings.endpoints()) {
+            final Function<Random, String> path = known.get(name.trim());
+            if (path == null) {
+                throw new IllegalArgumentException("Unknown endpoint '" + name + "', known ones are " + known.keySet());
+            }
+            endpoints.put(name.trim(), path);
+            stats.put(name.trim(), new EndpointStats(name.trim()));
+        }
+        this.names = List.copyOf(endpoints.keySet());
+    }
+
+    // Runs the warmup then the measured period, returns the stats of the measured period by endpoint
+    Map<String, EndpointStats> run() throws InterruptedException {
+        final long start = System.nanoTime();
+        final long measureFrom = start + settings.warmup().toNanos();
+        final long end = measureFrom + settings.duration().toNanos();
+        if (settings.openLoop()) {
+            runOpenLoop(start, measureFrom, end);
+        } else {
+            runClosedLoop(measureFrom, end);
+        }
+        return stats;
+    }
+
+    private void runClosedLoop(final long measureFrom, final long end) throws InterruptedException {
+        final ExecutorService clients = Executors.newFixedThreadPool(settings.concurrency());
+        for (int i = 0; i < settings.concurrency(); i++) {
+            clients.execute(() -> {
+                final Random random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    final String name = names.get(random.nextInt(names.size()));
+                    final long started = System.nanoTime();
+                    final boolean success = send(request(name, random));
+                    if (started >= measureFrom) {
+                        stats.get(name).record(System.nanoTime() - started, success);
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(end - System.nanoTime() + REQUEST_TIMEOUT.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private void runOpenLoop(final long start, final long measureFrom, final long end) throws InterruptedException {
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / settings.ratePerSecond();
+        final Random random = new Random(start);
+        final List<CompletableFuture<Void>> measured = new ArrayList<>();
+        for (long planned = start; planned < end; planned += intervalNanos) {
+            final long wait = planned - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final String name = names.get(random.nextInt(names.size()));
+            final long plannedStart = planned;
+            final CompletableFuture<Void> response = httpClient
+                .sendAsync(request(name, random), HttpResponse.BodyHandlers.discarding())
+                .handle((result, failure) -> {
+                    if (plannedStart >= measureFrom) {
+                        stats.get(name).record(System.nanoTime() - plannedStart,
+                            failure == null && result.statusCode() < 400);
+                    }
+                    return null;
+                });
+            if (plannedStart >= measureFrom) {
+                measured.add(response);
+            }
+        }
+        try {
+            CompletableFuture.allOf(measured.toArray(new CompletableFuture<?>[0]))
+                .get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException | ExecutionException exception) {
+            // Requests still running are left out, they show up as missing in the request count
+        }
+    }
+
+    private HttpRequest request(final String name, final Random random) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + endpoints.get(name).apply(random)))
+            .timeout(REQUEST_TIMEOUT)
+            .header("Accept", "application/json")
+            .GET()
+            .build();
+    }
+
+    private boolean send(final HttpRequest request) {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() < 400;
+        } catch (final IOException exception) {
+            return false;
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.audition.loadtest;
+
+import com.audition.AuditionApplication;
+import com.audition.common.logging.AuditionLogger;
+import com.audition.configuration.WebServiceConfiguration;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/*
+ * Starts the upstream stub and the application pointed at it, drives the load and reports throughput and latency
+ * percentiles per endpoint. The summary is logged and written to the report directory along with the full
+ * HdrHistogram percentile distribution (.hgrm) of every endpoint. Run through ./gradlew loadTest.
+ */
+
+public final class LoadTestRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTestRunner.class);
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        final AuditionLogger auditionLogger = new AuditionLogger();
+
+        try (UpstreamStub stub = new UpstreamStub(settings,
+            new WebServiceConfiguration(auditionLogger).objectMapper())) {
+            final List<String> appArgs = new ArrayList<>(settings.appArgs());
+            appArgs.add("--server.port=0");
+            appArgs.add("--audition.api.base-url=" + stub.baseUrl());
+            try (ConfigurableApplicationContext context = SpringApplication.run(AuditionApplication.class,
+                appArgs.toArray(new String[0]))) {
+                final int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+                final HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+
+                auditionLogger.info(LOG, "Load test " + settings + " against http://localhost:" + port);
+                final Map<String, EndpointStats> stats = new LoadGenerator(httpClient, "http://localhost:" + port,
+                    settings).run();
+                final String report = report(settings, stats);
+                auditionLogger.info(LOG, report);
+                write(settings.reportDir(), settings.mode(), report, stats);
+            }
+        }
+    }
+
+    static String report(final LoadTestSettings settings, final Map<String, EndpointStats> stats) {
+        final double seconds = settings.duration().toMillis() / MICROS_PER_MILLI;
+        final StringBuilder report = new StringBuilder(512)
+            .append(String.format(Locale.ROOT, "%n%s loop, %s measured, stub latency %s, stub error rate %.3f%n",
+                settings.mode(), settings.duration(), settings.stubLatency(), settings.stubErrorRate()))
+            .append(String.format(Locale.ROOT, "%-18s %10s %8s %10s %9s %9s %9s %9s %9s%n", "endpoint", "requests",
+                "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (final EndpointStats endpoint : stats.values()) {
+            final Histogram histogram = endpoint.histogram();
+            report.append(String.format(Locale.ROOT, "%-18s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                endpoint.name(), histogram.getTotalCount(), endpoint.errors(), histogram.getTotalCount() / seconds,
+                millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                histogram.getMaxValue() / MICROS_PER_MILLI));
+        }
+        return report.toString();
+    }
+
+    private static double millis(final Histogram histogram, final double percentile) {
+        return histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+    }
+
+    private static void write(final Path reportDir, final String mode, final String report,
+        final Map<String, EndpointStats> stats) throws IOException {
+        Files.createDirectories(reportDir);
+        Files.writeString(reportDir.resolve("loadtest-" + mode + ".txt"), report, StandardCharsets.UTF_8);
+        for (final EndpointStats endpoint : stats.values()) {
+            final Path file = reportDir.resolve("loadtest-" + mode + "-" + endpoint.name() + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)) {
+                endpoint.histogram().outputPercentileDistribution(out, MICROS_PER_MILLI);
+            }
+        }
+    }
+}
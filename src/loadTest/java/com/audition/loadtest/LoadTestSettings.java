@@ -0,0 +1,58 @@
+package com.audition.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import org.springframework.boot.convert.DurationStyle;
+
+/*
+ * Load test knobs, read from the loadtest.* system properties (./gradlew loadTest -Ploadtest.mode=open ...).
+ */
+
+record LoadTestSettings(
+    String mode,
+    int concurrency,
+    int ratePerSecond,
+    Duration warmup,
+    Duration duration,
+    List<String> endpoints,
+    String stubLatency,
+    double stubErrorRate,
+    int stubPosts,
+    int stubCommentsPerPost,
+    int stubBodySize,
+    List<String> appArgs,
+    Path reportDir
+) {
+
+    static final String CLOSED_LOOP = "closed";
+    static final String OPEN_LOOP = "open";
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+            property("mode", CLOSED_LOOP),
+            Integer.parseInt(property("concurrency", "32")),
+            Integer.parseInt(property("rate", "500")),
+            DurationStyle.detectAndParse(property("warmup", "10s")),
+            DurationStyle.detectAndParse(property("duration", "30s")),
+            List.of(property("endpoints", "posts,postsFilter,postById,postWithComments,comments").split(",")),
+            property("stub.latency", "lognormal:20ms:150ms"),
+            Double.parseDouble(property("stub.errorRate", "0.0")),
+            Integer.parseInt(property("stub.posts", "100")),
+            Integer.parseInt(property("stub.commentsPerPost", "5")),
+            Integer.parseInt(property("stub.bodySize", "200")),
+            Arrays.stream(property("appArgs", "--logging.level.com.audition=WARN").split(" "))
+                .filter(arg -> !arg.isBlank()).toList(),
+            Path.of(property("reportDir", "build/reports/loadtest"))
+        );
+    }
+
+    boolean openLoop() {
+        return OPEN_LOOP.equals(mode);
+    }
+
+    private static String property(final String name, final String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+}
@@ -0,0 +1,197 @@
+package com.audition.loadtest;
+
+import com.audition.model.AuditionComment;
+import com.audition.model.AuditionPost;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Local stand-in for the jsonplaceholder /posts and /comments API. Every response is delayed by a sample of the
+ * latency distribution, a share of the requests fail with 503 and the payload size follows the stub settings.
+ * The JSON payloads are rendered once at start-up.
+ */
+
+final class UpstreamStub implements AutoCloseable {
+
+    private static final Pattern POST_PATH = Pattern.compile("/posts/(\\d+)(/comments)?");
+    private static final Pattern POST_ID_QUERY = Pattern.compile("(?:^|&)postId=(\\d+)");
+    private static final Pattern ID_QUERY = Pattern.compile("(?:^|&)id=(\\d+)");
+    private static final Pattern PAGE_QUERY = Pattern.compile("(?:^|&)_page=(\\d+)");
+    private static final Pattern LIMIT_QUERY = Pattern.compile("(?:^|&)_limit=(\\d+)");
+    private static final String WORDS = "sunt aut facere repellat provident occaecati excepturi optio reprehenderit "
+        + "quia et suscipit recusandae consequuntur expedita sequi nesciunt ut rerum tempore vitae est dolor qui ";
+
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final byte[] allPosts;
+    private final byte[] allComments;
+    private final byte[][] postById;
+    private final byte[][] commentsByPost;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    UpstreamStub(final LoadTestSettings settings, final ObjectMapper objectMapper) throws IOException {
+        this.latency = LatencyDistribution.parse(settings.stubLatency());
+        this.errorRate = settings.stubErrorRate();
+
+        final Random random = new Random(settings.stubPosts());
+        final List<AuditionPost> posts = new ArrayList<>();
+        final List<AuditionComment> comments = new ArrayList<>();
+        postById = new byte[settings.stubPosts() + 1][];
+        commentsByPost = new byte[settings.stubPosts() + 1][];
+        for (int id = 1; id <= settings.stubPosts(); id++) {
+            final AuditionPost post = new AuditionPost();
+            post.setId(id);
+            post.setUserId(1 + id / 10);
+            post.setTitle(text(random, 40));
+            post.setBody(text(random, settings.stubBodySize()));
+            posts.add(post);
+            postById[id] = objectMapper.writeValueAsBytes(post);
+
+            final List<AuditionComment> postComments = new ArrayList<>();
+            for (int i = 0; i < settings.stubCommentsPerPost(); i++) {
+                final AuditionComment comment = new AuditionComment();
+                comment.setPostId(id);
+                comment.setId(comments.size() + 1);
+                comment.setName(text(random, 30));
+                comment.setEmail("user" + comment.getId() + "@example.com");
+                comment.setBody(text(random, settings.stubBodySize()));
+                postComments.add(comment);
+                comments.add(comment);
+            }
+            commentsByPost[id] = objectMapper.writeValueAsBytes(postComments);
+        }
+        allPosts = toJson(objectMapper, posts);
+        allComments = toJson(objectMapper, comments);
+
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final long delayNanos = latency.sampleNanos(ThreadLocalRandom.current());
+            if (delayNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(delayNanos);
+            }
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            final byte[] body = route(exchange.getRequestURI().getPath(), exchange.getRequestURI().getRawQuery());
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private byte[] route(final String path, final String query) {
+        if ("/posts".equals(path)) {
+            if (query != null && PAGE_QUERY.matcher(query).find()) {
+                return postsPage(query);
+            }
+            if (query != null && ID_QUERY.matcher(query).find()) {
+                return postsByIds(query);
+            }
+            // Anything else, like a q search, gets every post as the application filters the result again
+            return allPosts;
+        }
+        if ("/comments".equals(path)) {
+            final Matcher postId = POST_ID_QUERY.matcher(query == null ? "" : query);
+            return postId.find() ? byId(commentsByPost, postId.group(1)) : allComments;
+        }
+        final Matcher postPath = POST_PATH.matcher(path);
+        if (postPath.matches()) {
+            return byId(postPath.group(2) == null ? postById : commentsByPost, postPath.group(1));
+        }
+        return null;
+    }
+
+    // Batched lookup /posts?id=1&id=2, unknown ids are left out of the array
+    private byte[] postsByIds(final String query) {
+        final ByteArrayOutputStream json = new ByteArrayOutputStream();
+        json.write('[');
+        final Matcher id = ID_QUERY.matcher(query);
+        boolean first = true;
+        while (id.find()) {
+            final byte[] post = byId(postById, id.group(1));
+            if (post != null) {
+                if (!first) {
+                    json.write(',');
+                }
+                json.writeBytes(post);
+                first = false;
+            }
+        }
+        json.write(']');
+        return json.toByteArray();
+    }
+
+    // Pushed down paging /posts?_sort=id&_page=2&_limit=10, the posts are stored in id order
+    private byte[] postsPage(final String query) {
+        final Matcher page = PAGE_QUERY.matcher(query);
+        final Matcher limit = LIMIT_QUERY.matcher(query);
+        final long size = limit.find() ? Long.parseLong(limit.group(1)) : 10;
+        final long first = page.find() ? (Long.parseLong(page.group(1)) - 1) * size + 1 : 1;
+        final StringBuilder ids = new StringBuilder();
+        for (long id = Math.max(first, 1); id < first + size && id < postById.length; id++) {
+            ids.append("&id=").append(id);
+        }
+        return postsByIds(ids.toString());
+    }
+
+    private static byte[] byId(final byte[][] payloads, final String id) {
+        final int index = Integer.parseInt(id);
+        return index > 0 && index < payloads.length ? payloads[index] : null;
+    }
+
+    private static byte[] toJson(final ObjectMapper objectMapper, final Object value) throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    private static String text(final Random random, final int length) {
+        final StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            final int start = random.nextInt(WORDS.length() - 10);
+            text.append(WORDS, start, Math.min(WORDS.length(), start + 10));
+        }
+        return text.substring(0, length).trim();
+    }
+}
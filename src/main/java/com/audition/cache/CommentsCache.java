@@ -0,0 +1,103 @@
+package com.audition.cache;
+
+import com.audition.common.concurrent.FutureUtils;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.model.AuditionComment;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongFunction;
+import org.springframework.stereotype.Component;
+
+/*
+ * Comments of a post keyed by postId. Caffeine evicts with a frequency aware (W-TinyLFU) policy, so a burst of
+ * one-off posts does not push out the hot ones, and its reads are lock free. The budget in
+ * audition.api.comments-cache.max-size is counted in estimated bytes of the cached comments.
+ * Hits, misses and evictions are exported as the cache.* meters tagged cache=comments.
+ */
+
+@Component
+public class CommentsCache {
+
+    static final String CACHE_NAME = "comments";
+
+    // Rough heap cost of the objects around the strings: list slot, comment object and one String object per field.
+    private static final int LIST_OVERHEAD_BYTES = 16;
+    private static final int COMMENT_OVERHEAD_BYTES = 8 + 32 + 3 * 40;
+
+    private final boolean enabled;
+    private final Cache<Long, List<AuditionComment>> cache;
+
+    public CommentsCache(final AuditionApiProperties apiConfig, final MeterRegistry meterRegistry) {
+        final AuditionApiProperties.CommentsCache config = apiConfig.commentsCache();
+        this.enabled = config.enabled();
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(config.maxSize().toBytes())
+            .weigher((Long postId, List<AuditionComment> comments) -> estimateBytes(comments))
+            .expireAfterWrite(config.ttl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    // Concurrent misses for the same post wait for a single load, the loader result must not be modified afterwards.
+    public List<AuditionComment> get(final long postId, final LongFunction<List<AuditionComment>> loader) {
+        if (!enabled) {
+            return loader.apply(postId);
+        }
+        return cache.get(postId, loader::apply);
+    }
+
+    // Non-blocking lookup, a miss runs the async loader and caches its result once it completes.
+    // Concurrent misses are not merged here, the upstream calls behind them are coalesced by the client.
+    public CompletableFuture<List<AuditionComment>> getAsync(final long postId,
+        final LongFunction<CompletableFuture<List<AuditionComment>>> loader) {
+        if (!enabled) {
+            return loader.apply(postId);
+        }
+        final List<AuditionComment> cached = cache.getIfPresent(postId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        final CompletableFuture<List<AuditionComment>> loaded = loader.apply(postId);
+        return FutureUtils.cancelling(loaded.thenApply(comments -> {
+            cache.put(postId, comments);
+            return comments;
+        }), loaded);
+    }
+
+    // Whether the comments of the post would be served without an upstream call, not counted as a hit or a miss
+    public boolean contains(final long postId) {
+        return enabled && cache.asMap().containsKey(postId);
+    }
+
+    public void invalidate(final long postId) {
+        cache.invalidate(postId);
+    }
+
+    // Runs the pending evictions right away instead of on the next cache operations
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    long weightedSize() {
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    // Strings of this API are plain ASCII, so the compact Latin-1 encoding stores one byte per character.
+    static int estimateBytes(final List<AuditionComment> comments) {
+        long bytes = LIST_OVERHEAD_BYTES;
+        for (final AuditionComment comment : comments) {
+            bytes += COMMENT_OVERHEAD_BYTES + length(comment.getName()) + length(comment.getEmail())
+                + length(comment.getBody());
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static int length(final String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -0,0 +1,134 @@
+package com.audition.cache;
+
+import com.audition.model.AuditionComment;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * All the upstream comments grouped by postId in compressed sparse row layout: one array of comments sorted by postId,
+ * and an offsets array where the comments of a post are comments[offsets[slot]] up to comments[offsets[slot + 1]].
+ * When the postIds are dense the slot is postId - firstPostId, else it is found by binary search over the distinct
+ * postIds. A lookup allocates nothing per post, the comments of a post keep their upstream order. Instances are
+ * immutable.
+ */
+
+public final class CommentsIndex {
+
+    // Direct addressing is used as long as the offsets array stays within this many slots per distinct postId
+    private static final int MAX_SLOTS_PER_POST = 2;
+    private static final int MIN_DIRECT_SLOTS = 64;
+
+    private final AuditionComment[] comments;
+    private final int firstPostId;
+    private final int[] postIds;
+    private final int[] offsets;
+
+    private CommentsIndex(final AuditionComment[] comments, final int firstPostId, final int[] postIds,
+        final int[] offsets) {
+        this.comments = comments;
+        this.firstPostId = firstPostId;
+        this.postIds = postIds;
+        this.offsets = offsets;
+    }
+
+    public static CommentsIndex build(final List<AuditionComment> upstream) {
+        final AuditionComment[] sorted = upstream.toArray(new AuditionComment[0]);
+        // Stable sort, the comments of one post stay in their upstream order
+        Arrays.sort(sorted, Comparator.comparingInt(AuditionComment::getPostId));
+        if (sorted.length == 0) {
+            return new CommentsIndex(sorted, 0, null, new int[] {0});
+        }
+
+        int distinct = 1;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].getPostId() != sorted[i - 1].getPostId()) {
+                distinct++;
+            }
+        }
+        final int firstPostId = sorted[0].getPostId();
+        final long range = (long) sorted[sorted.length - 1].getPostId() - firstPostId + 1;
+        if (range <= Math.max(MIN_DIRECT_SLOTS, (long) distinct * MAX_SLOTS_PER_POST)) {
+            return new CommentsIndex(sorted, firstPostId, null, directOffsets(sorted, firstPostId, (int) range));
+        }
+
+        final int[] postIds = new int[distinct];
+        final int[] offsets = new int[distinct + 1];
+        int slot = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i].getPostId() != sorted[i - 1].getPostId()) {
+                postIds[slot] = sorted[i].getPostId();
+                offsets[slot++] = i;
+            }
+        }
+        offsets[distinct] = sorted.length;
+        return new CommentsIndex(sorted, firstPostId, postIds, offsets);
+    }
+
+    // Slot of every postId in the range, a postId without comments gets an empty row
+    private static int[] directOffsets(final AuditionComment[] sorted, final int firstPostId, final int range) {
+        final int[] offsets = new int[range + 1];
+        int position = 0;
+        for (int slot = 0; slot < range; slot++) {
+            offsets[slot] = position;
+            while (position < sorted.length && sorted[position].getPostId() - firstPostId == slot) {
+                position++;
+            }
+        }
+        offsets[range] = position;
+        return offsets;
+    }
+
+    public int size() {
+        return comments.length;
+    }
+
+    public int countFor(final long postId) {
+        final int slot = slot(postId);
+        return slot < 0 ? 0 : offsets[slot + 1] - offsets[slot];
+    }
+
+    public List<AuditionComment> forPost(final long postId) {
+        final int slot = slot(postId);
+        return slot < 0 ? List.of()
+            : Collections.unmodifiableList(Arrays.asList(comments).subList(offsets[slot], offsets[slot + 1]));
+    }
+
+    // Comments of all the given posts in one list, post after post in the given order. The rows are copied straight
+    // into the result array, two passes over the postIds and no allocation per post.
+    public List<AuditionComment> forPosts(final Collection<Long> requested) {
+        int total = 0;
+        for (final Long postId : requested) {
+            total += countFor(postId);
+        }
+        final AuditionComment[] result = new AuditionComment[total];
+        int position = 0;
+        for (final Long postId : requested) {
+            final int slot = slot(postId);
+            if (slot >= 0) {
+                final int length = offsets[slot + 1] - offsets[slot];
+                System.arraycopy(comments, offsets[slot], result, position, length);
+                position += length;
+            }
+        }
+        return Collections.unmodifiableList(Arrays.asList(result));
+    }
+
+    // Row of the postId in offsets, -1 when it has no comments
+    private int slot(final long postId) {
+        if (comments.length == 0) {
+            return -1;
+        }
+        if (postIds == null) {
+            final long slot = postId - firstPostId;
+            return slot < 0 || slot >= offsets.length - 1 ? -1 : (int) slot;
+        }
+        if (postId < Integer.MIN_VALUE || postId > Integer.MAX_VALUE) {
+            return -1;
+        }
+        final int slot = Arrays.binarySearch(postIds, (int) postId);
+        return slot < 0 ? -1 : slot;
+    }
+}
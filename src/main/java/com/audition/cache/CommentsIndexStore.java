@@ -0,0 +1,76 @@
+package com.audition.cache;
+
+import com.audition.common.logging.AuditionLogger;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.integration.AuditionIntegrationClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/*
+ * CommentsIndex over one bulk download of all the upstream comments, so the comments of any set of posts are read
+ * from memory instead of one upstream call per post. It is loaded on first use and reloaded in the background once
+ * older than audition.api.comments-index.ttl, see RefreshingReference for how stale data is served meanwhile.
+ */
+
+@Component
+public class CommentsIndexStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommentsIndexStore.class);
+
+    private final AuditionIntegrationClient auditionIntegrationClient;
+    private final AuditionLogger auditionLogger;
+    private final ExecutorService refreshExecutor;
+    private final RefreshingReference<CommentsIndex> index;
+
+    public CommentsIndexStore(final AuditionIntegrationClient auditionIntegrationClient,
+        final AuditionApiProperties apiConfig, final AuditionLogger auditionLogger, final MeterRegistry meterRegistry) {
+        this.auditionIntegrationClient = auditionIntegrationClient;
+        this.auditionLogger = auditionLogger;
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("comments-index-");
+        threadFactory.setDaemon(true);
+        this.refreshExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        final AuditionApiProperties.CommentsIndex config = apiConfig.commentsIndex();
+        this.index = new RefreshingReference<>(this::load, config.ttl(), config.maxStaleness(), refreshExecutor,
+            this::logRefreshFailure);
+
+        Gauge.builder("audition.snapshot.age", index, CommentsIndexStore::ageSeconds)
+            .tag("name", "comments")
+            .description("Seconds since the comments index was last loaded from upstream")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stopRefresh() {
+        refreshExecutor.shutdownNow();
+    }
+
+    // Current index, downloaded on the caller thread only when there is none yet or it is older than max-staleness
+    public CommentsIndex current() {
+        return index.get();
+    }
+
+    private CommentsIndex load(final CommentsIndex previous) {
+        final CommentsIndex loaded = CommentsIndex.build(auditionIntegrationClient.getComments());
+        auditionLogger.info(LOG, "Loaded comments index with " + loaded.size() + " comments");
+        return loaded;
+    }
+
+    private void logRefreshFailure(final RuntimeException exception) {
+        auditionLogger.warn(LOG, "Comments index refresh failed, serving the previous index: "
+            + exception.getMessage());
+    }
+
+    private static double ageSeconds(final RefreshingReference<CommentsIndex> index) {
+        final Duration age = index.age();
+        return age == null ? Double.NaN : age.toMillis() / 1000.0;
+    }
+}
@@ -0,0 +1,45 @@
+package com.audition.cache;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+/*
+ * Negative cache of the post ids the upstream answered 404 for. A repeated lookup of a missing post is answered from
+ * here until audition.api.negative-cache.ttl has passed, so it costs no upstream call, no upstream error log and no
+ * stack trace. Bounded to max-size ids with the same W-TinyLFU eviction as the comments cache.
+ * Hits and misses are exported as the cache.* meters tagged cache=not-found.
+ */
+
+@Component
+public class NotFoundCache {
+
+    static final String CACHE_NAME = "not-found";
+
+    private final boolean enabled;
+    private final Cache<Long, Boolean> cache;
+
+    public NotFoundCache(final AuditionApiProperties apiConfig, final MeterRegistry meterRegistry) {
+        final AuditionApiProperties.NegativeCache config = apiConfig.negativeCache();
+        this.enabled = config.enabled();
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(config.maxSize())
+            .expireAfterWrite(config.ttl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    public boolean isMissing(final long postId) {
+        return enabled && cache.getIfPresent(postId) != null;
+    }
+
+    public void recordMissing(final long postId) {
+        if (enabled) {
+            cache.put(postId, Boolean.TRUE);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.audition.cache;
+
+import com.audition.filter.PostFilter;
+import com.audition.model.AuditionPost;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/*
+ * Trigram index over the lower-cased title and body of the snapshot posts, used to answer the /posts filter.
+ * Only the posts containing all the trigrams of the filter's required terms are looked at, and every candidate is
+ * still checked with the filter, so the result is exactly the one of a full scan (title or body, case-insensitive).
+ * Filters without a required term of three or more characters scan the pre-lower-cased texts. Instances are
+ * immutable, update() shares the untouched posting lists with the previous index.
+ */
+
+public final class PostSearchIndex {
+
+    private static final int GRAM = 3;
+
+    // Past this share of changed posts a full rebuild is cheaper than patching the posting lists
+    private static final int FULL_REBUILD_DIVISOR = 4;
+
+    private final List<Doc> docs;
+    private final Map<Integer, Doc> docsById;
+    private final Map<Long, int[]> postings;
+
+    private PostSearchIndex(final List<Doc> docs, final Map<Integer, Doc> docsById, final Map<Long, int[]> postings) {
+        this.docs = docs;
+        this.docsById = docsById;
+        this.postings = postings;
+    }
+
+    public static PostSearchIndex build(final List<AuditionPost> posts) {
+        final List<Doc> docs = toDocs(posts);
+        final Map<Integer, Doc> docsById = byId(docs);
+        if (docsById == null) {
+            return new PostSearchIndex(docs, null, null);
+        }
+
+        final Map<Long, IntArrayBuilder> builders = new HashMap<>();
+        final List<Doc> byIdOrder = new ArrayList<>(docs);
+        byIdOrder.sort(Comparator.comparingInt(Doc::id));
+        for (final Doc doc : byIdOrder) {
+            for (final long gram : doc.grams()) {
+                builders.computeIfAbsent(gram, key -> new IntArrayBuilder()).add(doc.id());
+            }
+        }
+        final Map<Long, int[]> postings = new HashMap<>(builders.size() * 4 / 3 + 1);
+        builders.forEach((gram, builder) -> postings.put(gram, builder.toArray()));
+        return new PostSearchIndex(docs, docsById, postings);
+    }
+
+    // Index for the new post list, only the posting lists of the posts whose title or body changed are rewritten.
+    public PostSearchIndex update(final List<AuditionPost> posts) {
+        if (postings == null) {
+            return build(posts);
+        }
+        final List<Doc> newDocs = reuseDocs(posts);
+        final Map<Integer, Doc> newDocsById = byId(newDocs);
+        if (newDocsById == null) {
+            return build(posts);
+        }
+
+        final Map<Long, Set<Integer>> removed = new HashMap<>();
+        final Map<Long, Set<Integer>> added = new HashMap<>();
+        int changed = 0;
+        for (final Doc old : docs) {
+            final Doc current = newDocsById.get(old.id());
+            if (current == null || !current.sameText(old)) {
+                changed++;
+                collect(removed, old);
+            }
+        }
+        for (final Doc current : newDocs) {
+            final Doc old = docsById.get(current.id());
+            if (old == null || !current.sameText(old)) {
+                changed++;
+                collect(added, current);
+            }
+        }
+        if (changed > Math.max(docs.size(), newDocs.size()) / FULL_REBUILD_DIVISOR) {
+            return build(posts);
+        }
+
+        final Map<Long, int[]> newPostings = new HashMap<>(postings);
+        final Set<Long> touched = new HashSet<>(removed.keySet());
+        touched.addAll(added.keySet());
+        for (final Long gram : touched) {
+            final int[] patched = patch(postings.get(gram), removed.get(gram), added.get(gram));
+            if (patched.length == 0) {
+                newPostings.remove(gram);
+            } else {
+                newPostings.put(gram, patched);
+            }
+        }
+        return new PostSearchIndex(newDocs, newDocsById, newPostings);
+    }
+
+    // Posts whose title or body contains the filter, in snapshot order. A blank filter matches every post.
+    public List<AuditionPost> search(final String filter) {
+        if (filter == null || filter.isBlank()) {
+            return docs.stream().map(Doc::post).toList();
+        }
+        return search(PostFilter.compile(filter));
+    }
+
+    // Posts matching the compiled filter, in snapshot order. Candidates are the posts containing all the trigrams of
+    // the filter's required terms, every candidate is then checked against the full filter.
+    public List<AuditionPost> search(final PostFilter filter) {
+        final Set<Long> grams = new HashSet<>();
+        if (postings != null) {
+            for (final String term : filter.requiredTerms()) {
+                grams(term, grams);
+            }
+        }
+        if (grams.isEmpty()) {
+            return scan(docs, filter);
+        }
+
+        final int[] candidates = candidates(grams);
+        if (candidates.length == 0) {
+            return Collections.emptyList();
+        }
+        // Candidates come out in id order, going back to snapshot order keeps the result identical to a full scan.
+        final List<Doc> candidateDocs = new ArrayList<>(candidates.length);
+        for (final int id : candidates) {
+            candidateDocs.add(docsById.get(id));
+        }
+        candidateDocs.sort(Comparator.comparingInt(Doc::position));
+        return scan(candidateDocs, filter);
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    private int[] candidates(final Set<Long> grams) {
+        final List<int[]> lists = new ArrayList<>(grams.size());
+        for (final Long gram : grams) {
+            final int[] list = postings.get(gram);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        // Smallest list first so the intersection never grows past it
+        lists.sort(Comparator.comparingInt(list -> list.length));
+        int[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private static List<AuditionPost> scan(final List<Doc> candidates, final PostFilter filter) {
+        final List<AuditionPost> matches = new ArrayList<>();
+        for (final Doc doc : candidates) {
+            if (filter.matchesLowerCase(doc.title(), doc.body())) {
+                matches.add(doc.post());
+            }
+        }
+        return matches;
+    }
+
+    // Keeps the lower-cased texts of the posts that did not change, so a refresh only lower-cases new content
+    private List<Doc> reuseDocs(final List<AuditionPost> posts) {
+        final List<Doc> newDocs = new ArrayList<>(posts.size());
+        for (int position = 0; position < posts.size(); position++) {
+            final AuditionPost post = posts.get(position);
+            final Doc old = docsById.get(post.getId());
+            if (old != null && Objects.equals(old.post().getTitle(), post.getTitle())
+                && Objects.equals(old.post().getBody(), post.getBody())) {
+                newDocs.add(new Doc(position, post, old.title(), old.body()));
+            } else {
+                newDocs.add(Doc.of(position, post));
+            }
+        }
+        return newDocs;
+    }
+
+    private static List<Doc> toDocs(final List<AuditionPost> posts) {
+        final List<Doc> docs = new ArrayList<>(posts.size());
+        for (int position = 0; position < posts.size(); position++) {
+            docs.add(Doc.of(position, posts.get(position)));
+        }
+        return docs;
+    }
+
+    // Posting lists are keyed by post id, so duplicated ids leave the index in scan-only mode (null result).
+    private static Map<Integer, Doc> byId(final List<Doc> docs) {
+        final Map<Integer, Doc> docsById = new HashMap<>(docs.size() * 4 / 3 + 1);
+        for (final Doc doc : docs) {
+            if (docsById.putIfAbsent(doc.id(), doc) != null) {
+                return null;
+            }
+        }
+        return docsById;
+    }
+
+    private static void collect(final Map<Long, Set<Integer>> target, final Doc doc) {
+        for (final long gram : doc.grams()) {
+            target.computeIfAbsent(gram, key -> new HashSet<>()).add(doc.id());
+        }
+    }
+
+    private static int[] patch(final int[] current, final Set<Integer> removed, final Set<Integer> added) {
+        final IntArrayBuilder builder = new IntArrayBuilder();
+        if (current != null) {
+            for (final int id : current) {
+                if (removed == null || !removed.contains(id)) {
+                    builder.add(id);
+                }
+            }
+        }
+        if (added != null) {
+            for (final int id : added) {
+                builder.add(id);
+            }
+        }
+        final int[] ids = builder.toArray();
+        Arrays.sort(ids);
+        return dedupe(ids);
+    }
+
+    private static int[] dedupe(final int[] sorted) {
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    private static int[] intersect(final int[] left, final int[] right) {
+        final int[] result = new int[Math.min(left.length, right.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < right.length) {
+            if (left[i] < right[j]) {
+                i++;
+            } else if (left[i] > right[j]) {
+                j++;
+            } else {
+                result[size++] = left[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    // Three UTF-16 chars packed in one long
+    static Set<Long> grams(final String text, final Set<Long> target) {
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            target.add((long) text.charAt(i) << 32 | (long) text.charAt(i + 1) << 16 | text.charAt(i + 2));
+        }
+        return target;
+    }
+
+    private record Doc(int position, AuditionPost post, String title, String body) {
+
+        static Doc of(final int position, final AuditionPost post) {
+            return new Doc(position, post, lower(post.getTitle()), lower(post.getBody()));
+        }
+
+        int id() {
+            return post.getId();
+        }
+
+        // Title and body are indexed on their own, a filter spanning both of them matches neither
+        Set<Long> grams() {
+            return PostSearchIndex.grams(body, PostSearchIndex.grams(title, new HashSet<>()));
+        }
+
+        boolean sameText(final Doc other) {
+            return title.equals(other.title) && body.equals(other.body);
+        }
+
+        private static String lower(final String text) {
+            return text == null ? "" : text.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // Growable int[] which skips a repeated tail value, so ids added in ascending order come out sorted and unique
+    private static final class IntArrayBuilder {
+
+        private int[] values = new int[4];
+        private int size;
+
+        void add(final int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.audition.cache;
+
+import com.audition.model.AuditionPost;
+import java.util.List;
+
+/*
+ * Versioned copy of the full upstream post list, ordered by post id, along with its filter index. The list cannot be
+ * changed, and the store fills it with read-only posts (ReadOnlyPost) since every request is handed the same ones.
+ * The version changes only when the content of the list changes.
+ */
+
+public record PostSnapshot(long version, List<AuditionPost> posts, PostSearchIndex index) {
+
+    public PostSnapshot {
+        posts = List.copyOf(posts);
+    }
+
+    public PostSnapshot(final long version, final List<AuditionPost> posts) {
+        this(version, posts, PostSearchIndex.build(posts));
+    }
+}
@@ -0,0 +1,166 @@
+package com.audition.cache;
+
+import com.audition.common.logging.AuditionLogger;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.filter.PostFilter;
+import com.audition.integration.AuditionIntegrationClient;
+import com.audition.model.AuditionPost;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/*
+ * In-memory snapshot of all the upstream posts, so the paged and filtered /posts requests do not download the full list
+ * every time. It is refreshed in the background every audition.api.snapshot.refresh-interval, see RefreshingReference
+ * for how stale data is served while a refresh is running or failing. The posts are kept ordered by id, not in the
+ * upstream order, the keyset cursors and the pushed-down pages rely on it. They are read-only copies of the upstream
+ * posts, see ReadOnlyPost. The posts matching a filter are kept per snapshot version for cursor-retention after their
+ * last use, so the filtered cursor pages do not search the whole snapshot again on every page. They are bounded by the
+ * total number of posts they hold, not by the number of filters.
+ */
+
+@Component
+public class PostSnapshotStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PostSnapshotStore.class);
+    private static final Comparator<AuditionPost> BY_ID = Comparator.comparingInt(AuditionPost::getId);
+    // Post references kept across all the match lists, about 16 MB with compressed references. An entry weighs its
+    // list size plus one, the lists of a filter matching most of a large snapshot count for what they hold.
+    private static final long MAX_MATCHED_POSTS = 4L << 20;
+
+    private final AuditionIntegrationClient auditionIntegrationClient;
+    private final AuditionApiProperties.Snapshot config;
+    private final AuditionLogger auditionLogger;
+    private final ScheduledExecutorService refreshScheduler;
+    private final RefreshingReference<PostSnapshot> snapshot;
+    private final Map<Long, Retired> retired = new ConcurrentHashMap<>();
+    private final Cache<Matches, List<AuditionPost>> matches;
+
+    public PostSnapshotStore(final AuditionIntegrationClient auditionIntegrationClient,
+        final AuditionApiProperties apiConfig, final AuditionLogger auditionLogger, final MeterRegistry meterRegistry) {
+        this.auditionIntegrationClient = auditionIntegrationClient;
+        this.config = apiConfig.snapshot();
+        this.auditionLogger = auditionLogger;
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("post-snapshot-");
+        threadFactory.setDaemon(true);
+        this.refreshScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.snapshot = new RefreshingReference<>(this::load, config.ttl(), config.maxStaleness(), refreshScheduler,
+            this::logRefreshFailure);
+        this.matches = Caffeine.newBuilder()
+            .maximumWeight(MAX_MATCHED_POSTS)
+            .weigher((Matches key, List<AuditionPost> posts) -> posts.size() + 1)
+            .expireAfterAccess(config.cursorRetention())
+            .build();
+
+        Gauge.builder("audition.snapshot.age", snapshot, PostSnapshotStore::ageSeconds)
+            .tag("name", "posts")
+            .description("Seconds since the post snapshot was last loaded from upstream")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void startRefresh() {
+        if (isEnabled()) {
+            final long intervalMillis = config.refreshInterval().toMillis();
+            refreshScheduler.scheduleWithFixedDelay(this::refreshNow, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stopRefresh() {
+        refreshScheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return config.enabled();
+    }
+
+    // Current snapshot, loaded on the caller thread only when there is none yet or it is older than max-staleness
+    public PostSnapshot current() {
+        return snapshot.get();
+    }
+
+    // Current snapshot if one was loaded already, never calls upstream
+    public PostSnapshot peek() {
+        return snapshot.peek();
+    }
+
+    // Snapshot of the given version: the current one, or a replaced one for cursor-retention after it was replaced
+    public Optional<PostSnapshot> find(final long version) {
+        final PostSnapshot latest = current();
+        if (latest.version() == version) {
+            return Optional.of(latest);
+        }
+        pruneRetired();
+        return Optional.ofNullable(retired.get(version)).map(Retired::snapshot);
+    }
+
+    // Posts of the snapshot matching the filter, ordered by id. Searched once per snapshot version and filter.
+    public List<AuditionPost> matching(final PostSnapshot snapshot, final PostFilter filter) {
+        return matches.get(new Matches(snapshot.version(), filter), key -> snapshot.index().search(filter));
+    }
+
+    // Reloads from upstream right away, a failure keeps the current snapshot
+    public void refreshNow() {
+        snapshot.refresh();
+    }
+
+    private PostSnapshot load(final PostSnapshot previous) {
+        final List<AuditionPost> posts = auditionIntegrationClient.getPosts().stream()
+            .map(ReadOnlyPost::of)
+            .sorted(BY_ID)
+            .toList();
+        if (previous != null && previous.posts().equals(posts)) {
+            return previous;
+        }
+        final long version = previous == null ? 1 : previous.version() + 1;
+        if (previous != null) {
+            pruneRetired();
+            retired.put(previous.version(), new Retired(previous, System.nanoTime()));
+        }
+        auditionLogger.info(LOG, "Loaded post snapshot version " + version + " with " + posts.size() + " posts");
+        // The filter index is patched from the previous one on the refresh thread, never on a request thread
+        final PostSearchIndex index = previous == null ? PostSearchIndex.build(posts) : previous.index().update(posts);
+        return new PostSnapshot(version, posts, index);
+    }
+
+    private void pruneRetired() {
+        final long oldestKept = System.nanoTime() - config.cursorRetention().toNanos();
+        retired.values().removeIf(entry -> entry.retiredAtNanos() - oldestKept < 0);
+    }
+
+    private void logRefreshFailure(final RuntimeException exception) {
+        auditionLogger.warn(LOG, "Post snapshot refresh failed, serving the previous snapshot: "
+            + exception.getMessage());
+    }
+
+    private static double ageSeconds(final RefreshingReference<PostSnapshot> snapshot) {
+        final Duration age = snapshot.age();
+        return age == null ? Double.NaN : age.toMillis() / 1000.0;
+    }
+
+    private record Retired(PostSnapshot snapshot, long retiredAtNanos) {
+
+    }
+
+    private record Matches(long version, PostFilter filter) {
+
+    }
+}
@@ -0,0 +1,116 @@
+package com.audition.cache;
+
+import com.audition.common.exception.SystemException;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.filter.PostFilter;
+import com.audition.model.AuditionPost;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+/*
+ * Rendered JSON of the /posts pages, keyed by snapshot version, filter, page and size. A snapshot never changes, so a
+ * page rendered once is written from here as is until a newer snapshot version is asked for, which drops every entry.
+ * Pages of at least audition.api.response-cache.gzip-min-size are gzipped once as well. The budget in max-size is
+ * counted in cached bytes, both variants included. Hits and misses are exported as the cache.* meters tagged
+ * cache=posts-response.
+ */
+
+@Component
+public class PostsResponseCache {
+
+    static final String CACHE_NAME = "posts-response";
+
+    private final boolean enabled;
+    private final long gzipMinBytes;
+    private final ObjectMapper objectMapper;
+    private final Cache<Key, RenderedPage> cache;
+    private final AtomicLong latestVersion = new AtomicLong();
+
+    public PostsResponseCache(final AuditionApiProperties apiConfig, final ObjectMapper objectMapper,
+        final MeterRegistry meterRegistry) {
+        final AuditionApiProperties.ResponseCache config = apiConfig.responseCache();
+        this.enabled = config.enabled();
+        this.gzipMinBytes = config.gzipMinSize().toBytes();
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(config.maxSize().toBytes())
+            .weigher((Key key, RenderedPage page) -> page.weight())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Concurrent misses for the same page wait for a single render. The loader must read the snapshot of the given
+    // version, so the bytes cached under it are the ones of that snapshot. A request still on an older snapshot than
+    // the latest one asked for gets its page rendered without caching it, it would only take budget until evicted.
+    public RenderedPage get(final long snapshotVersion, final PostFilter filter, final int page, final int size,
+        final Supplier<List<AuditionPost>> loader) {
+        final long previousVersion = latestVersion.getAndAccumulate(snapshotVersion, Math::max);
+        if (previousVersion < snapshotVersion) {
+            cache.invalidateAll();
+        } else if (previousVersion > snapshotVersion) {
+            return render(loader.get());
+        }
+        return cache.get(new Key(snapshotVersion, filter, page, size), key -> render(loader.get()));
+    }
+
+    private RenderedPage render(final List<AuditionPost> posts) {
+        final byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(posts);
+        } catch (final JsonProcessingException exception) {
+            throw new SystemException("The posts could not be written as JSON.", "Internal Server Error",
+                HttpStatus.INTERNAL_SERVER_ERROR.value(), exception);
+        }
+        return new RenderedPage(json, json.length >= gzipMinBytes ? gzip(json) : null);
+    }
+
+    private static byte[] gzip(final byte[] json) {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(json);
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return compressed.toByteArray();
+    }
+
+    // Runs the pending evictions right away instead of on the next cache operations
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    long size() {
+        return cache.estimatedSize();
+    }
+
+    private record Key(long snapshotVersion, PostFilter filter, int page, int size) {
+
+    }
+
+    // The JSON of a page, and its gzip encoding when the page is large enough to be worth it. Never modified.
+    @SuppressWarnings("PMD.MethodReturnsInternalArray")
+    public record RenderedPage(byte[] json, byte[] gzip) {
+
+        int weight() {
+            return json.length + (gzip == null ? 0 : gzip.length);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.audition.cache;
+
+import com.audition.model.AuditionComment;
+import com.audition.model.AuditionPost;
+import java.util.List;
+
+/*
+ * Copy of an upstream post whose setters throw, the snapshot hands the same instances to every request so none of
+ * them may change one. Equal to an AuditionPost with the same values, and serialized the same way.
+ */
+
+final class ReadOnlyPost extends AuditionPost {
+
+    private ReadOnlyPost(final AuditionPost post) {
+        super();
+        super.setUserId(post.getUserId());
+        super.setId(post.getId());
+        super.setTitle(post.getTitle());
+        super.setBody(post.getBody());
+        super.setComments(post.getComments() == null ? null
+            : post.getComments().stream().<AuditionComment>map(ReadOnlyComment::new).toList());
+    }
+
+    static AuditionPost of(final AuditionPost post) {
+        return post instanceof ReadOnlyPost ? post : new ReadOnlyPost(post);
+    }
+
+    @Override
+    public void setUserId(final int userId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setId(final int id) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setTitle(final String title) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setBody(final String body) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setComments(final List<AuditionComment> comments) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Snapshot posts are shared between requests and cannot be changed");
+    }
+
+    private static final class ReadOnlyComment extends AuditionComment {
+
+        private ReadOnlyComment(final AuditionComment comment) {
+            super();
+            super.setPostId(comment.getPostId());
+            super.setId(comment.getId());
+            super.setName(comment.getName());
+            super.setEmail(comment.getEmail());
+            super.setBody(comment.getBody());
+        }
+
+        @Override
+        public void setPostId(final int postId) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setId(final int id) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setName(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setEmail(final String email) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setBody(final String body) {
+            throw readOnly();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.audition.cache;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/*
+ * Holds an immutable value which is reloaded in the background (stale-while-revalidate).
+ *  - Readers always get the current value without locking, the reference is swapped atomically on reload.
+ *  - A value older than the ttl is still served while a background reload is triggered.
+ *  - A value older than maxStaleness is not served anymore, the reader has to wait for a reload.
+ *  - A failed reload keeps the current value, it is retried on the next read or scheduled refresh.
+ * The loader gets the current value (null when nothing was loaded yet) and may return it as it is when nothing changed.
+ */
+
+public class RefreshingReference<T> {
+
+    private final AtomicReference<Loaded<T>> current = new AtomicReference<>();
+    private final AtomicBoolean backgroundRefreshRunning = new AtomicBoolean();
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    private final UnaryOperator<T> loader;
+    private final long ttlNanos;
+    private final long maxStalenessNanos;
+    private final Executor refreshExecutor;
+    private final Consumer<RuntimeException> refreshFailureHandler;
+    private final LongSupplier nanoClock;
+
+    public RefreshingReference(final UnaryOperator<T> loader, final Duration ttl, final Duration maxStaleness,
+        final Executor refreshExecutor, final Consumer<RuntimeException> refreshFailureHandler) {
+        this(loader, ttl, maxStaleness, refreshExecutor, refreshFailureHandler, System::nanoTime);
+    }
+
+    RefreshingReference(final UnaryOperator<T> loader, final Duration ttl, final Duration maxStaleness,
+        final Executor refreshExecutor, final Consumer<RuntimeException> refreshFailureHandler,
+        final LongSupplier nanoClock) {
+        this.loader = loader;
+        this.ttlNanos = ttl.toNanos();
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        this.refreshExecutor = refreshExecutor;
+        this.refreshFailureHandler = refreshFailureHandler;
+        this.nanoClock = nanoClock;
+    }
+
+    public T get() {
+        final Loaded<T> loaded = current.get();
+        if (loaded == null) {
+            return load(null);
+        }
+
+        final long age = nanoClock.getAsLong() - loaded.loadedAtNanos();
+        if (age > maxStalenessNanos) {
+            return load(loaded);
+        }
+        if (age > ttlNanos) {
+            refreshInBackground();
+        }
+        return loaded.value();
+    }
+
+    // Current value without triggering any load, null when nothing was loaded yet
+    public T peek() {
+        final Loaded<T> loaded = current.get();
+        return loaded == null ? null : loaded.value();
+    }
+
+    // Age of the current value, null when nothing was loaded yet
+    public Duration age() {
+        final Loaded<T> loaded = current.get();
+        return loaded == null ? null : Duration.ofNanos(nanoClock.getAsLong() - loaded.loadedAtNanos());
+    }
+
+    // Reloads right away, used by the scheduled refresh. Failures are handed to the failure handler.
+    public void refresh() {
+        try {
+            load(current.get());
+        } catch (final RuntimeException exception) {
+            refreshFailureHandler.accept(exception);
+        }
+    }
+
+    private void refreshInBackground() {
+        if (!backgroundRefreshRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refresh();
+                } finally {
+                    backgroundRefreshRunning.set(false);
+                }
+            });
+        } catch (final RejectedExecutionException exception) {
+            backgroundRefreshRunning.set(false);
+            refreshFailureHandler.accept(exception);
+        }
+    }
+
+    // Only one load at a time, whoever waited for the lock reuses a value loaded in the meantime.
+    private T load(final Loaded<T> seen) {
+        loadLock.lock();
+        try {
+            final Loaded<T> latest = current.get();
+            if (latest != null && latest != seen) {
+                return latest.value();
+            }
+            final T value = loader.apply(latest == null ? null : latest.value());
+            current.set(new Loaded<>(value, nanoClock.getAsLong()));
+            return value;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private record Loaded<T>(T value, long loadedAtNanos) {
+
+    }
+}
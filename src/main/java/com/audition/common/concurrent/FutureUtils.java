@@ -0,0 +1,71 @@
+package com.audition.common.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/*
+ * Helpers for waiting on upstream calls that run on other threads, and for cancelling them.
+ */
+
+public final class FutureUtils {
+
+    private FutureUtils() {
+    }
+
+    // Rethrows what the upstream call threw, so the callers keep mapping the same exceptions as a direct call
+    public static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw exception;
+        }
+    }
+
+    // A stage derived with thenApply, exceptionally and the like is cancelled on its own, the future it was derived
+    // from keeps running. This passes the cancellation of the dependent stage back to the futures it was derived from.
+    public static <T> CompletableFuture<T> cancelling(final CompletableFuture<T> dependent,
+        final CompletableFuture<?>... sources) {
+        dependent.whenComplete((value, failure) -> {
+            if (dependent.isCancelled()) {
+                for (final CompletableFuture<?> source : sources) {
+                    source.cancel(false);
+                }
+            }
+        });
+        return dependent;
+    }
+
+    // thenCompose, but cancelling the result cancels the source and the future the function returned, e.g. an upstream
+    // call started once the source is in
+    public static <T, U> CompletableFuture<U> composing(final CompletableFuture<T> source,
+        final Function<? super T, ? extends CompletableFuture<U>> next) {
+        final CompletableFuture<U> result = new CompletableFuture<>();
+        source.whenComplete((value, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            final CompletableFuture<U> stage;
+            try {
+                stage = next.apply(value);
+            } catch (final RuntimeException exception) {
+                result.completeExceptionally(exception);
+                return;
+            }
+            // Runs at once when the result was cancelled while the function ran
+            cancelling(result, stage);
+            stage.whenComplete((staged, stageFailure) -> {
+                if (stageFailure == null) {
+                    result.complete(staged);
+                } else {
+                    result.completeExceptionally(stageFailure);
+                }
+            });
+        });
+        return cancelling(result, source);
+    }
+}
@@ -0,0 +1,51 @@
+package com.audition.common.deadline;
+
+import io.micrometer.context.ContextRegistry;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/*
+ * Deadline of the request being served, held for the thread that starts its upstream calls. The calls read it when
+ * they start, so the retries they schedule later on other threads still know how much time the caller has left.
+ * The deadline is part of the context captured by the upstream executor, so the tasks it runs for the request read it
+ * as well.
+ */
+
+public final class RequestDeadline {
+
+    // Deadline outside of a request with a deadline, never compared as a point in time
+    public static final long NONE = Long.MAX_VALUE;
+
+    static final String CONTEXT_KEY = "audition.request-deadline";
+
+    private static final ThreadLocal<Long> DEADLINE_NANOS = new ThreadLocal<>();
+
+    static {
+        ContextRegistry.getInstance().registerThreadLocalAccessor(CONTEXT_KEY, DEADLINE_NANOS::get,
+            DEADLINE_NANOS::set, DEADLINE_NANOS::remove);
+    }
+
+    private RequestDeadline() {
+    }
+
+    // Starts the calls with a deadline timeout from now, the deadline of an enclosing call is back in place afterwards
+    public static <T> T within(final Duration timeout, final Supplier<T> calls) {
+        final Long previous = DEADLINE_NANOS.get();
+        DEADLINE_NANOS.set(System.nanoTime() + timeout.toNanos());
+        try {
+            return calls.get();
+        } finally {
+            if (previous == null) {
+                DEADLINE_NANOS.remove();
+            } else {
+                DEADLINE_NANOS.set(previous);
+            }
+        }
+    }
+
+    // Deadline in System.nanoTime terms, NONE outside of a request with a deadline
+    public static long nanos() {
+        final Long deadline = DEADLINE_NANOS.get();
+        return deadline == null ? NONE : deadline;
+    }
+}
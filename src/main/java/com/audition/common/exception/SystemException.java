@@ -65,4 +65,17 @@ public class SystemException extends RuntimeException {
         this.title = title;
         this.detail = detail;
     }
+
+    private SystemException(final String detail, final String title, final Integer errorCode,
+        final boolean writableStackTrace) {
+        super(detail, null, false, writableStackTrace);
+        this.statusCode = errorCode;
+        this.title = title;
+        this.detail = detail;
+    }
+
+    // For an expected error answered locally, where filling in the stack trace would be most of the cost
+    public static SystemException withoutStackTrace(final String detail, final String title, final Integer errorCode) {
+        return new SystemException(detail, title, errorCode, false);
+    }
 }
@@ -1,14 +1,30 @@
 package com.audition.configuration;
 
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import lombok.With;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 
-//Configuration properties for the Audition API Expected configuration structure in application.yml
+/**
+ * Configuration properties for the Audition API, expected configuration structure in application.yml. Only base-url,
+ * posts and comments are required. Every other section, and every value within one, falls back to its default when
+ * it is left out, and the features that change what the API answers or how it calls the upstream are off unless
+ * enabled. In code, start from {@link #defaults(String, Posts, Comments)} and replace sections with the withers.
+ */
 @ConfigurationProperties(prefix = "audition.api")
 @Validated
+@With
 public record AuditionApiProperties(
     @NotBlank(message = "Base URL audition.api.base-url  is required")
     String baseUrl,
@@ -21,9 +37,92 @@ public record AuditionApiProperties(
     @NotNull(message = "Comments audition.api.comments configuration is required (missing 'comments' section or "
         + "'comments.path' property)")
     @Valid
-    Comments comments
+    Comments comments,
+
+    @Valid
+    Connection connection,
+
+    @Valid
+    Pool pool,
+
+    @Valid
+    Execution execution,
+
+    @Valid
+    Snapshot snapshot,
+
+    @Valid
+    CommentsCache commentsCache,
+
+    @Valid
+    Async async,
+
+    @Valid
+    Batch batch,
+
+    @Valid
+    CommentsIndex commentsIndex,
+
+    @Valid
+    PushDown pushDown,
+
+    @Valid
+    Embed embed,
+
+    @Valid
+    NegativeCache negativeCache,
+
+    @Valid
+    ResponseCache responseCache,
+
+    @Valid
+    Passthrough passthrough,
+
+    @Valid
+    CircuitBreaker circuitBreaker,
+
+    @Valid
+    Bulkhead bulkhead,
+
+    @Valid
+    ConcurrencyLimit concurrencyLimit,
+
+    @Valid
+    Hedging hedging,
+
+    @Valid
+    Retry retry
 ) {
 
+    // Optional sections fall back to their defaults when they are left out of application.yml
+    @ConstructorBinding
+    public AuditionApiProperties {
+        connection = Objects.requireNonNullElseGet(connection, Connection::defaults);
+        pool = Objects.requireNonNullElseGet(pool, Pool::defaults);
+        execution = Objects.requireNonNullElseGet(execution, Execution::defaults);
+        snapshot = Objects.requireNonNullElseGet(snapshot, Snapshot::defaults);
+        commentsCache = Objects.requireNonNullElseGet(commentsCache, CommentsCache::defaults);
+        async = Objects.requireNonNullElseGet(async, Async::defaults);
+        batch = Objects.requireNonNullElseGet(batch, Batch::defaults);
+        commentsIndex = Objects.requireNonNullElseGet(commentsIndex, CommentsIndex::defaults);
+        pushDown = Objects.requireNonNullElseGet(pushDown, PushDown::defaults);
+        embed = Objects.requireNonNullElseGet(embed, Embed::defaults);
+        negativeCache = Objects.requireNonNullElseGet(negativeCache, NegativeCache::defaults);
+        responseCache = Objects.requireNonNullElseGet(responseCache, ResponseCache::defaults);
+        passthrough = Objects.requireNonNullElseGet(passthrough, Passthrough::defaults);
+        circuitBreaker = Objects.requireNonNullElseGet(circuitBreaker, CircuitBreaker::defaults);
+        bulkhead = Objects.requireNonNullElseGet(bulkhead, Bulkhead::defaults);
+        concurrencyLimit = Objects.requireNonNullElseGet(concurrencyLimit, ConcurrencyLimit::defaults);
+        hedging = Objects.requireNonNullElseGet(hedging, Hedging::defaults);
+        retry = Objects.requireNonNullElseGet(retry, Retry::defaults);
+    }
+
+    // The mandatory values only, every optional section gets its defaults
+    public static AuditionApiProperties defaults(final String baseUrl, final Posts posts, final Comments comments) {
+        return new AuditionApiProperties(baseUrl, posts, comments, null, null, null, null, null, null, null, null, null,
+            null, null, null, null, null, null, null, null, null);
+    }
+
     /**
      * Posts configuration. Requires 'path' property to be set.
      */
@@ -43,4 +142,498 @@ public record AuditionApiProperties(
     ) {
 
     }
+
+    /**
+     * Timeouts for the calls to the upstream API.
+     */
+    public record Connection(
+        Duration connectTimeout,
+        Duration readTimeout,
+        Duration poolAcquireTimeout
+    ) {
+
+        public Connection {
+            connectTimeout = Objects.requireNonNullElse(connectTimeout, Duration.ofSeconds(2));
+            readTimeout = Objects.requireNonNullElse(readTimeout, Duration.ofSeconds(5));
+            poolAcquireTimeout = Objects.requireNonNullElse(poolAcquireTimeout, Duration.ofSeconds(1));
+        }
+
+        public static Connection defaults() {
+            return new Connection(null, null, null);
+        }
+    }
+
+    /**
+     * Connection pool sizing for the upstream API. max-total and max-per-route are the budget of both HTTP clients
+     * together: the non-blocking client gets async-share percent of each and the blocking one the rest, each at least
+     * one connection.
+     */
+    public record Pool(
+        @Positive(message = "Pool size audition.api.pool.max-total must be greater than 0")
+        Integer maxTotal,
+
+        @Positive(message = "Pool size audition.api.pool.max-per-route must be greater than 0")
+        Integer maxPerRoute,
+
+        Duration keepAlive,
+
+        @Min(value = 1, message = "Share audition.api.pool.async-share must be at least 1")
+        @Max(value = 99, message = "Share audition.api.pool.async-share must be less than 100")
+        Integer asyncShare
+    ) {
+
+        public Pool {
+            maxTotal = Objects.requireNonNullElse(maxTotal, 50);
+            maxPerRoute = Objects.requireNonNullElse(maxPerRoute, 20);
+            keepAlive = Objects.requireNonNullElse(keepAlive, Duration.ofSeconds(30));
+            asyncShare = Objects.requireNonNullElse(asyncShare, 50);
+        }
+
+        public static Pool defaults() {
+            return new Pool(null, null, null, null);
+        }
+
+        // The non-blocking client's part of max-total or max-per-route
+        public int asyncPart(final int limit) {
+            return Math.max(1, limit * asyncShare / 100);
+        }
+
+        // The blocking client's part of max-total or max-per-route, what the non-blocking one leaves
+        public int blockingPart(final int limit) {
+            return Math.max(1, limit - asyncPart(limit));
+        }
+    }
+
+    /**
+     * Bounded executor running the blocking calls of the /posts and /comments?postIds= endpoints, the parallel upstream
+     * calls of the blocking client, the batch flushes, and the hedges and retries once their delay is over. With
+     * virtual-threads the requests and these tasks run on virtual threads instead, pool-size and queue-capacity are
+     * then not used.
+     */
+    public record Execution(
+        @Positive(message = "Executor size audition.api.execution.pool-size must be greater than 0")
+        Integer poolSize,
+
+        @PositiveOrZero(message = "Executor queue audition.api.execution.queue-capacity must not be negative")
+        Integer queueCapacity,
+
+        Boolean virtualThreads
+    ) {
+
+        public Execution {
+            poolSize = Objects.requireNonNullElse(poolSize, 16);
+            queueCapacity = Objects.requireNonNullElse(queueCapacity, 100);
+            virtualThreads = Objects.requireNonNullElse(virtualThreads, Boolean.FALSE);
+        }
+
+        public static Execution defaults() {
+            return new Execution(null, null, null);
+        }
+    }
+
+    /**
+     * In-memory snapshot of all the posts. Once older than ttl a read triggers a background refresh, a snapshot older
+     * than max-staleness is not served anymore. A replaced snapshot is kept for cursor-retention so the paging cursors
+     * issued on it keep working.
+     */
+    public record Snapshot(
+        Boolean enabled,
+        Duration ttl,
+        Duration refreshInterval,
+        Duration maxStaleness,
+        Duration cursorRetention
+    ) {
+
+        public Snapshot {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            ttl = Objects.requireNonNullElse(ttl, Duration.ofSeconds(30));
+            refreshInterval = Objects.requireNonNullElse(refreshInterval, Duration.ofSeconds(30));
+            maxStaleness = Objects.requireNonNullElse(maxStaleness, Duration.ofMinutes(10));
+            cursorRetention = Objects.requireNonNullElse(cursorRetention, Duration.ofMinutes(5));
+        }
+
+        public static Snapshot defaults() {
+            return new Snapshot(null, null, null, null, null);
+        }
+    }
+
+    /**
+     * Comments cache keyed by postId. The size is a memory budget on the estimated bytes of the cached comments, not
+     * an entry count.
+     */
+    public record CommentsCache(
+        Boolean enabled,
+        DataSize maxSize,
+        Duration ttl
+    ) {
+
+        public CommentsCache {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            maxSize = Objects.requireNonNullElse(maxSize, DataSize.ofMegabytes(16));
+            ttl = Objects.requireNonNullElse(ttl, Duration.ofMinutes(5));
+        }
+
+        public static CommentsCache defaults() {
+            return new CommentsCache(null, null, null);
+        }
+    }
+
+    /**
+     * Non-blocking client behind the CompletableFuture calls. Its io-threads serve every upstream connection, the
+     * pool sizes and timeouts are the ones of the blocking client. An async endpoint answers 504 once its entry in
+     * timeouts, or else timeout, has passed.
+     */
+    public record Async(
+        @Positive(message = "I/O threads audition.api.async.io-threads must be greater than 0")
+        Integer ioThreads,
+
+        Duration timeout,
+
+        Map<String, Duration> timeouts
+    ) {
+
+        public Async {
+            ioThreads = Objects.requireNonNullElse(ioThreads, 2);
+            timeout = Objects.requireNonNullElse(timeout, Duration.ofSeconds(10));
+            timeouts = Map.copyOf(Objects.requireNonNullElse(timeouts, Map.of()));
+        }
+
+        public static Async defaults() {
+            return new Async(null, null, null);
+        }
+
+        public Duration timeoutFor(final String endpoint) {
+            return timeouts.getOrDefault(endpoint, timeout);
+        }
+    }
+
+    /**
+     * Micro-batching of the post lookups by id. The lookups arriving within window of the first one are sent upstream
+     * as one /posts?id=..&id=.. query, a batch is sent right away once it holds max-size ids.
+     */
+    public record Batch(
+        Boolean enabled,
+
+        Duration window,
+
+        @Positive(message = "Batch size audition.api.batch.max-size must be greater than 0")
+        Integer maxSize
+    ) {
+
+        public Batch {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            window = Objects.requireNonNullElse(window, Duration.ofMillis(2));
+            maxSize = Objects.requireNonNullElse(maxSize, 50);
+        }
+
+        public static Batch defaults() {
+            return new Batch(null, null, null);
+        }
+    }
+
+    /**
+     * Bulk download of all the comments, grouped by postId, behind the comments lookup for several posts. Once older
+     * than ttl a read triggers a background reload, an index older than max-staleness is not served anymore.
+     */
+    public record CommentsIndex(
+        Duration ttl,
+        Duration maxStaleness
+    ) {
+
+        public CommentsIndex {
+            ttl = Objects.requireNonNullElse(ttl, Duration.ofMinutes(5));
+            maxStaleness = Objects.requireNonNullElse(maxStaleness, Duration.ofMinutes(30));
+        }
+
+        public static CommentsIndex defaults() {
+            return new CommentsIndex(null, null);
+        }
+    }
+
+    /**
+     * Push-down of the /posts paging and filter to the upstream _page, _limit and q query parameters while the post
+     * snapshot is disabled or not loaded yet. The upstream q search only narrows the download, the filter is still
+     * applied here.
+     */
+    public record PushDown(
+        Boolean enabled
+    ) {
+
+        public PushDown {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+        }
+
+        public static PushDown defaults() {
+            return new PushDown(null);
+        }
+    }
+
+    /**
+     * Post with its comments in one upstream call, /posts/{id}?_embed=comments. When the upstream answers without the
+     * embedded comments the two calls are used again, and embedding is retried after probe-interval.
+     */
+    public record Embed(
+        Boolean enabled,
+        Duration probeInterval
+    ) {
+
+        public Embed {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            probeInterval = Objects.requireNonNullElse(probeInterval, Duration.ofMinutes(10));
+        }
+
+        public static Embed defaults() {
+            return new Embed(null, null);
+        }
+    }
+
+    /**
+     * Post ids the upstream answered 404 for, kept for ttl so repeated lookups of a missing post are answered without
+     * an upstream call. At most max-size ids are kept.
+     */
+    public record NegativeCache(
+        Boolean enabled,
+
+        @Positive(message = "Negative cache size audition.api.negative-cache.max-size must be greater than 0")
+        Integer maxSize,
+
+        Duration ttl
+    ) {
+
+        public NegativeCache {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            maxSize = Objects.requireNonNullElse(maxSize, 10_000);
+            ttl = Objects.requireNonNullElse(ttl, Duration.ofSeconds(30));
+        }
+
+        public static NegativeCache defaults() {
+            return new NegativeCache(null, null, null);
+        }
+    }
+
+    /**
+     * Rendered JSON of the /posts pages served from the post snapshot, kept until the snapshot version changes. The
+     * size is a budget on the cached bytes, a page of at least gzip-min-size is also kept gzipped for the clients
+     * accepting it.
+     */
+    public record ResponseCache(
+        Boolean enabled,
+        DataSize maxSize,
+        DataSize gzipMinSize
+    ) {
+
+        public ResponseCache {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            maxSize = Objects.requireNonNullElse(maxSize, DataSize.ofMegabytes(8));
+            gzipMinSize = Objects.requireNonNullElse(gzipMinSize, DataSize.ofKilobytes(1));
+        }
+
+        public static ResponseCache defaults() {
+            return new ResponseCache(null, null, null);
+        }
+    }
+
+    /**
+     * Passthrough of the upstream JSON for /posts/{postId} and /comments?postId=, streamed out token by token instead
+     * of being bound and serialized again. These lookups are then neither batched nor served from the comments cache.
+     */
+    public record Passthrough(
+        Boolean enabled
+    ) {
+
+        public Passthrough {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+        }
+
+        public static Passthrough defaults() {
+            return new Passthrough(null);
+        }
+    }
+
+    /**
+     * Circuit breaker of each upstream endpoint (posts, post, comments) over its last window-size calls. Once
+     * minimum-calls are in, a failure rate or a rate of calls slower than slow-call-duration at or above its
+     * threshold (in percent) opens the circuit: calls fail fast with 503 for open-duration, then half-open-calls trial
+     * calls decide whether it closes again.
+     */
+    public record CircuitBreaker(
+        Boolean enabled,
+
+        @Positive(message = "Window audition.api.circuit-breaker.window-size must be greater than 0")
+        Integer windowSize,
+
+        @Positive(message = "Calls audition.api.circuit-breaker.minimum-calls must be greater than 0")
+        Integer minimumCalls,
+
+        @Positive(message = "Rate audition.api.circuit-breaker.failure-rate-threshold must be greater than 0")
+        @Max(value = 100, message = "Rate audition.api.circuit-breaker.failure-rate-threshold must not exceed 100")
+        Integer failureRateThreshold,
+
+        Duration slowCallDuration,
+
+        @Positive(message = "Rate audition.api.circuit-breaker.slow-call-rate-threshold must be greater than 0")
+        @Max(value = 100, message = "Rate audition.api.circuit-breaker.slow-call-rate-threshold must not exceed 100")
+        Integer slowCallRateThreshold,
+
+        Duration openDuration,
+
+        @Positive(message = "Calls audition.api.circuit-breaker.half-open-calls must be greater than 0")
+        Integer halfOpenCalls
+    ) {
+
+        public CircuitBreaker {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            windowSize = Objects.requireNonNullElse(windowSize, 50);
+            minimumCalls = Objects.requireNonNullElse(minimumCalls, 20);
+            failureRateThreshold = Objects.requireNonNullElse(failureRateThreshold, 50);
+            slowCallDuration = Objects.requireNonNullElse(slowCallDuration, Duration.ofSeconds(3));
+            slowCallRateThreshold = Objects.requireNonNullElse(slowCallRateThreshold, 80);
+            openDuration = Objects.requireNonNullElse(openDuration, Duration.ofSeconds(30));
+            halfOpenCalls = Objects.requireNonNullElse(halfOpenCalls, 5);
+        }
+
+        public static CircuitBreaker defaults() {
+            return new CircuitBreaker(null, null, null, null, null, null, null, null);
+        }
+    }
+
+    /**
+     * Semaphore bulkhead of each upstream endpoint: at most max-concurrent-calls calls of one endpoint are in flight,
+     * the next ones fail fast with 503 instead of waiting for a connection. Unset, it is the per-route budget of both
+     * pools once pool.max-per-route is split by pool.async-share, see UpstreamGuards, so one endpoint may use every
+     * connection of its pool but is never rejected while one sits idle.
+     */
+    public record Bulkhead(
+        Boolean enabled,
+
+        @Positive(message = "Calls audition.api.bulkhead.max-concurrent-calls must be greater than 0")
+        Integer maxConcurrentCalls
+    ) {
+
+        public Bulkhead {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+        }
+
+        public static Bulkhead defaults() {
+            return new Bulkhead(null, null);
+        }
+    }
+
+    /**
+     * Adaptive limit of the calls in flight to the upstream, tuned from their round trip times. The limit starts at
+     * initial-limit and stays within min-limit and max-limit. It grows while the round trips stay within rtt-tolerance
+     * percent of their long-term average, shrinks when they rise above it, and is cut to backoff-ratio percent on an
+     * I/O error, a 5xx or a 429. Each new limit moves smoothing percent of the way from the current one, the average
+     * spans about long-window calls.
+     */
+    public record ConcurrencyLimit(
+        Boolean enabled,
+
+        @Positive(message = "Limit audition.api.concurrency-limit.initial-limit must be greater than 0")
+        Integer initialLimit,
+
+        @Positive(message = "Limit audition.api.concurrency-limit.min-limit must be greater than 0")
+        Integer minLimit,
+
+        @Positive(message = "Limit audition.api.concurrency-limit.max-limit must be greater than 0")
+        Integer maxLimit,
+
+        @Min(value = 100, message = "Tolerance audition.api.concurrency-limit.rtt-tolerance must be at least 100")
+        Integer rttTolerance,
+
+        @Positive(message = "Smoothing audition.api.concurrency-limit.smoothing must be greater than 0")
+        @Max(value = 100, message = "Smoothing audition.api.concurrency-limit.smoothing must not exceed 100")
+        Integer smoothing,
+
+        @Positive(message = "Window audition.api.concurrency-limit.long-window must be greater than 0")
+        Integer longWindow,
+
+        @Positive(message = "Ratio audition.api.concurrency-limit.backoff-ratio must be greater than 0")
+        @Max(value = 99, message = "Ratio audition.api.concurrency-limit.backoff-ratio must be less than 100")
+        Integer backoffRatio
+    ) {
+
+        public ConcurrencyLimit {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            initialLimit = Objects.requireNonNullElse(initialLimit, 20);
+            minLimit = Objects.requireNonNullElse(minLimit, 4);
+            maxLimit = Objects.requireNonNullElse(maxLimit, 50);
+            rttTolerance = Objects.requireNonNullElse(rttTolerance, 150);
+            smoothing = Objects.requireNonNullElse(smoothing, 20);
+            longWindow = Objects.requireNonNullElse(longWindow, 600);
+            backoffRatio = Objects.requireNonNullElse(backoffRatio, 90);
+        }
+
+        public static ConcurrencyLimit defaults() {
+            return new ConcurrencyLimit(null, null, null, null, null, null, null, null);
+        }
+    }
+
+    /**
+     * Hedged upstream GETs: a call still unanswered after the percentile latency of its endpoint, over its last
+     * window successful calls, is sent a second time and the first answer wins. The delay is never below min-delay and
+     * no hedge is sent before half the window is in. The hedges are at most budget percent of the calls.
+     */
+    public record Hedging(
+        Boolean enabled,
+
+        @Positive(message = "Percentile audition.api.hedging.percentile must be greater than 0")
+        @Max(value = 99, message = "Percentile audition.api.hedging.percentile must be less than 100")
+        Integer percentile,
+
+        @Positive(message = "Window audition.api.hedging.window must be greater than 0")
+        Integer window,
+
+        @Positive(message = "Budget audition.api.hedging.budget must be greater than 0")
+        @Max(value = 100, message = "Budget audition.api.hedging.budget must not exceed 100")
+        Integer budget,
+
+        Duration minDelay
+    ) {
+
+        public Hedging {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            percentile = Objects.requireNonNullElse(percentile, 95);
+            window = Objects.requireNonNullElse(window, 200);
+            budget = Objects.requireNonNullElse(budget, 5);
+            minDelay = Objects.requireNonNullElse(minDelay, Duration.ofMillis(20));
+        }
+
+        public static Hedging defaults() {
+            return new Hedging(null, null, null, null, null);
+        }
+    }
+
+    /**
+     * Retries of the upstream calls failed with an I/O error, a 5xx or a 429, at most max-attempts calls in all. Each
+     * retry waits a random backoff up to initial-backoff doubled per attempt, capped at max-backoff. The retries are at
+     * most budget percent of the calls, with a small burst allowance.
+     */
+    public record Retry(
+        Boolean enabled,
+
+        @Positive(message = "Attempts audition.api.retry.max-attempts must be greater than 0")
+        Integer maxAttempts,
+
+        Duration initialBackoff,
+
+        Duration maxBackoff,
+
+        @Positive(message = "Budget audition.api.retry.budget must be greater than 0")
+        @Max(value = 100, message = "Budget audition.api.retry.budget must not exceed 100")
+        Integer budget
+    ) {
+
+        public Retry {
+            enabled = Objects.requireNonNullElse(enabled, Boolean.FALSE);
+            maxAttempts = Objects.requireNonNullElse(maxAttempts, 3);
+            initialBackoff = Objects.requireNonNullElse(initialBackoff, Duration.ofMillis(50));
+            maxBackoff = Objects.requireNonNullElse(maxBackoff, Duration.ofSeconds(1));
+            budget = Objects.requireNonNullElse(budget, 10);
+        }
+
+        public static Retry defaults() {
+            return new Retry(null, null, null, null, null);
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package com.audition.configuration;
+
+import io.micrometer.context.ContextSnapshot;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import lombok.RequiredArgsConstructor;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/*
+ * Bounded executor for the upstream work started off the request thread (the blocking endpoints, the parallel calls of
+ * the blocking client, batch flushes, hedges and retries after their delay), sized from audition.api.execution.
+ * Every task runs with the trace/observation context and the RequestDeadline of the thread which submitted it.
+ * With audition.api.execution.virtual-threads=true the Tomcat requests and the upstream calls run on virtual threads,
+ * so a slow upstream does not hold a platform thread per waiting request.
+ */
+
+@Configuration
+@RequiredArgsConstructor
+public class ExecutorConfiguration {
+
+    public static final String UPSTREAM_EXECUTOR = "upstreamExecutor";
+    static final String REQUEST_EXECUTOR_SERVICE = "virtualThreadRequestExecutorService";
+    static final String VIRTUAL_THREADS_PROPERTY = "audition.api.execution.virtual-threads";
+
+    final AuditionApiProperties apiConfig;
+
+    @Bean(UPSTREAM_EXECUTOR)
+    public AsyncTaskExecutor upstreamExecutor() {
+        final AuditionApiProperties.Execution execution = apiConfig.execution();
+        if (execution.virtualThreads()) {
+            // One virtual thread per upstream call, the upstream concurrency is still capped by the connection pool
+            final VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("upstream-vt-", 0).factory()));
+            executor.setTaskDecorator(contextPropagatingDecorator());
+            return executor;
+        }
+
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("upstream-");
+        executor.setCorePoolSize(execution.poolSize());
+        executor.setMaxPoolSize(execution.poolSize());
+        executor.setQueueCapacity(execution.queueCapacity());
+        // When the pool and queue are full the request thread makes the call itself instead of failing
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setTaskDecorator(contextPropagatingDecorator());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    // Tomcat leaves an executor it was given running when it stops, closing the bean lets the requests still in
+    // progress end before the context is gone
+    @Bean(name = REQUEST_EXECUTOR_SERVICE, destroyMethod = "close")
+    @ConditionalOnProperty(name = VIRTUAL_THREADS_PROPERTY, havingValue = "true")
+    public ExecutorService virtualThreadRequestExecutorService() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-vt-", 0).factory());
+    }
+
+    // Tomcat hands every request to a new virtual thread instead of its worker pool, server.tomcat.threads.max no
+    // longer caps the number of requests in progress (server.tomcat.max-connections still does).
+    @Bean
+    @ConditionalOnProperty(name = VIRTUAL_THREADS_PROPERTY, havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadRequestExecutor(
+        @Qualifier(REQUEST_EXECUTOR_SERVICE) final ExecutorService requestExecutorService) {
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutorService);
+    }
+
+    // Captures the ThreadLocal values known to context-propagation (current observation and its span) on submit
+    static TaskDecorator contextPropagatingDecorator() {
+        return runnable -> ContextSnapshot.captureAll().wrap(runnable);
+    }
+
+    // Closed with the context: ExecutorService.close lets the calls in flight end, as waitForTasksToCompleteOnShutdown
+    // does for the platform pool
+    static final class VirtualThreadTaskExecutor extends TaskExecutorAdapter implements DisposableBean {
+
+        private final ExecutorService executorService;
+
+        VirtualThreadTaskExecutor(final ExecutorService executorService) {
+            super(executorService);
+            this.executorService = executorService;
+        }
+
+        @Override
+        public void destroy() {
+            executorService.close();
+        }
+    }
+}
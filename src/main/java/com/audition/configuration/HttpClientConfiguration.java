@@ -0,0 +1,163 @@
+package com.audition.configuration;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Duration;
+import lombok.RequiredArgsConstructor;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * Pooled, keep-alive HTTP clients for the upstream API calls: the blocking one behind the RestTemplate and the
+ * non-blocking one behind the CompletableFuture calls. The two pools split the audition.api.pool budget, so the
+ * upstream never sees more than max-total connections from this application.
+ * Timeouts and pool sizes come from audition.api.connection and audition.api.pool in application.yml
+ */
+
+@Configuration
+@RequiredArgsConstructor
+public class HttpClientConfiguration {
+
+    static final String POOL_METRIC_PREFIX = "audition.upstream.pool.";
+    static final String POOL_TAG = "pool";
+
+    final AuditionApiProperties apiConfig;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager upstreamConnectionManager() {
+        final AuditionApiProperties.Pool pool = apiConfig.pool();
+        return PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(pool.blockingPart(pool.maxTotal()))
+            .setMaxConnPerRoute(pool.blockingPart(pool.maxPerRoute()))
+            // Socket timeout guards against upstream stalls in the middle of a response body
+            .setDefaultSocketConfig(SocketConfig.custom()
+                .setSoTimeout(toTimeout(apiConfig.connection().readTimeout()))
+                .build())
+            .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient upstreamHttpClient(final PoolingHttpClientConnectionManager upstreamConnectionManager) {
+        final TimeValue keepAlive = keepAlive();
+        return HttpClients.custom()
+            .setConnectionManager(upstreamConnectionManager)
+            .setDefaultRequestConfig(requestConfig())
+            // Retried by UpstreamRetry instead, within its budget and the deadline of the request
+            .disableAutomaticRetries()
+            .evictExpiredConnections()
+            .evictIdleConnections(keepAlive)
+            .build();
+    }
+
+    // Connection pool of the non-blocking client, async-share percent of the audition.api.pool budget
+    @Bean(destroyMethod = "close")
+    public PoolingAsyncClientConnectionManager upstreamAsyncConnectionManager() {
+        final AuditionApiProperties.Pool pool = apiConfig.pool();
+        return PoolingAsyncClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(pool.asyncPart(pool.maxTotal()))
+            .setMaxConnPerRoute(pool.asyncPart(pool.maxPerRoute()))
+            .build();
+    }
+
+    // Non-blocking client for the CompletableFuture calls. The audition.api.async.io-threads reactor threads serve all
+    // of its connections, no thread waits on a response.
+    @Bean(destroyMethod = "close")
+    public CloseableHttpAsyncClient upstreamAsyncHttpClient(
+        final PoolingAsyncClientConnectionManager upstreamAsyncConnectionManager) {
+        final TimeValue keepAlive = keepAlive();
+        final CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+            .setConnectionManager(upstreamAsyncConnectionManager)
+            .setIOReactorConfig(IOReactorConfig.custom()
+                .setIoThreadCount(apiConfig.async().ioThreads())
+                .setSoTimeout(toTimeout(apiConfig.connection().readTimeout()))
+                .build())
+            .setDefaultRequestConfig(requestConfig())
+            // Retried by UpstreamRetry instead, within its budget and the deadline of the request
+            .disableAutomaticRetries()
+            .evictExpiredConnections()
+            .evictIdleConnections(keepAlive)
+            .build();
+        client.start();
+        return client;
+    }
+
+    // Pool saturation is exported as gauges tagged pool=blocking|async, leased/max close to 1 along with pending > 0
+    // means callers are queueing.
+    @Bean
+    public MeterBinder upstreamConnectionPoolMetrics(final PoolingHttpClientConnectionManager upstreamConnectionManager,
+        final PoolingAsyncClientConnectionManager upstreamAsyncConnectionManager) {
+        return registry -> {
+            bindPoolMetrics(registry, "blocking", upstreamConnectionManager);
+            bindPoolMetrics(registry, "async", upstreamAsyncConnectionManager);
+        };
+    }
+
+    private static void bindPoolMetrics(final MeterRegistry registry, final String pool,
+        final ConnPoolControl<?> connectionManager) {
+        Gauge.builder(POOL_METRIC_PREFIX + "leased", connectionManager, manager -> manager.getTotalStats().getLeased())
+            .tag(POOL_TAG, pool)
+            .description("Upstream connections currently in use")
+            .register(registry);
+        Gauge.builder(POOL_METRIC_PREFIX + "available", connectionManager,
+                manager -> manager.getTotalStats().getAvailable())
+            .tag(POOL_TAG, pool)
+            .description("Idle upstream connections kept alive in the pool")
+            .register(registry);
+        Gauge.builder(POOL_METRIC_PREFIX + "pending", connectionManager,
+                manager -> manager.getTotalStats().getPending())
+            .tag(POOL_TAG, pool)
+            .description("Requests waiting for an upstream connection")
+            .register(registry);
+        Gauge.builder(POOL_METRIC_PREFIX + "max", connectionManager, manager -> manager.getTotalStats().getMax())
+            .tag(POOL_TAG, pool)
+            .description("Maximum number of upstream connections")
+            .register(registry);
+        Gauge.builder(POOL_METRIC_PREFIX + "saturation", connectionManager,
+                manager -> saturation(manager.getTotalStats()))
+            .tag(POOL_TAG, pool)
+            .description("Ratio of leased upstream connections to the pool maximum")
+            .register(registry);
+    }
+
+    private RequestConfig requestConfig() {
+        final AuditionApiProperties.Connection connection = apiConfig.connection();
+        return RequestConfig.custom()
+            .setConnectTimeout(toTimeout(connection.connectTimeout()))
+            .setConnectionRequestTimeout(toTimeout(connection.poolAcquireTimeout()))
+            .setResponseTimeout(toTimeout(connection.readTimeout()))
+            // Used when upstream does not send a Keep-Alive header
+            .setConnectionKeepAlive(keepAlive())
+            .build();
+    }
+
+    private TimeValue keepAlive() {
+        return TimeValue.ofMilliseconds(apiConfig.pool().keepAlive().toMillis());
+    }
+
+    private static double saturation(final PoolStats stats) {
+        if (stats.getMax() <= 0) {
+            return 0;
+        }
+        return (double) stats.getLeased() / stats.getMax();
+    }
+
+    private static Timeout toTimeout(final Duration duration) {
+        return Timeout.ofMilliseconds(duration.toMillis());
+    }
+}
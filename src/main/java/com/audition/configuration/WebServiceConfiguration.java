@@ -1,7 +1,12 @@
 package com.audition.configuration;
 
 import com.audition.common.logging.AuditionLogger;
+import com.audition.integration.AdaptiveConcurrencyLimiter;
+import com.audition.integration.UpstreamGuards;
+import com.audition.interceptor.ConcurrencyLimitInterceptor;
 import com.audition.interceptor.RestClientLogInterceptor;
+import com.audition.interceptor.UpstreamGuardInterceptor;
+import com.audition.web.JsonPassthroughHttpMessageConverter;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -12,12 +17,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import lombok.RequiredArgsConstructor;
+import org.apache.hc.client5.http.classic.HttpClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
-import org.springframework.http.client.BufferingClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.client.RestTemplate;
@@ -61,15 +67,26 @@ public class WebServiceConfiguration implements WebMvcConfigurer {
         return converter;
     }
 
+    // Ahead of Jackson, which would otherwise try to serialize a JsonPassthrough as a bean
+    @Override
+    public void extendMessageConverters(final List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new JsonPassthroughHttpMessageConverter());
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        final RestTemplate restTemplate = new RestTemplate(
-            new BufferingClientHttpRequestFactory(createClientFactory()));
+    public RestTemplate restTemplate(final HttpClient upstreamHttpClient, final UpstreamGuards upstreamGuards,
+        final AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        // Not wrapped in a BufferingClientHttpRequestFactory, response bodies are streamed from the socket
+        final RestTemplate restTemplate = new RestTemplate(createClientFactory(upstreamHttpClient));
         restTemplate.getMessageConverters().add(0, mappingJackson2HttpMessageConverter());
         List<ClientHttpRequestInterceptor> interceptors = restTemplate.getInterceptors();
         if (CollectionUtils.isEmpty(interceptors)) {
             interceptors = new ArrayList<>();
         }
+        // Concurrency limit, circuit breaker and bulkhead first, a rejected call is neither sent nor logged. The limit
+        // comes before the guards so their rejections do not count as upstream failures.
+        interceptors.add(new ConcurrencyLimitInterceptor(concurrencyLimiter));
+        interceptors.add(new UpstreamGuardInterceptor(upstreamGuards));
         // Setting the auditionLogger along with Objectmapper
         interceptors.add(restClientLogInterceptor(auditionLogger, objectMapper()));
 
@@ -84,9 +101,8 @@ public class WebServiceConfiguration implements WebMvcConfigurer {
         return new RestClientLogInterceptor(logger, objectMapper);
     }
 
-    private SimpleClientHttpRequestFactory createClientFactory() {
-        final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        requestFactory.setOutputStreaming(false);
-        return requestFactory;
+    // Timeouts, keep-alive and pool limits are configured on the pooled client, see HttpClientConfiguration
+    private HttpComponentsClientHttpRequestFactory createClientFactory(final HttpClient upstreamHttpClient) {
+        return new HttpComponentsClientHttpRequestFactory(upstreamHttpClient);
     }
 }
@@ -0,0 +1,330 @@
+package com.audition.filter;
+
+import com.audition.common.exception.SystemException;
+import com.audition.model.AuditionPost;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.springframework.http.HttpStatus;
+
+/*
+ * The /posts filter parameter compiled once per request into a reusable, case-insensitive matcher.
+ * A plain filter (mode=plain, the default) is one substring looked up in the title or the body, whatever it contains.
+ * With mode=boolean it is a query: words and "quoted phrases" are substrings, adjacent terms are ANDed, upper-case
+ * NOT binds tightest and OR loosest, e.g. dolor OR "rerum est" NOT qui
+ * Two filters are equal when they have the same text and mode, caches key on them.
+ * Terms are folded to lower case at compile time. Texts are folded the way String.toLowerCase(Locale.ROOT) folds them,
+ * as the snapshot index does, so a raw match and an index match always agree. Matching a raw text does not allocate,
+ * it is folded char by char, except for a text with a char String.toLowerCase folds otherwise (dotted capital I,
+ * capital sigma, surrogate pairs), which is lower-cased as a whole.
+ */
+
+public final class PostFilter {
+
+    private static final String AND = "AND";
+    private static final String OR = "OR";
+    private static final String NOT = "NOT";
+    private static final char QUOTE = '"';
+
+    private final String text;
+    private final Mode mode;
+    private final Node root;
+    private final Set<String> requiredTerms;
+
+    private PostFilter(final String text, final Mode mode, final Node root) {
+        this.text = text;
+        this.mode = mode;
+        this.root = root;
+        this.requiredTerms = Collections.unmodifiableSet(root.requiredTerms());
+    }
+
+    // Plain filter, one substring
+    public static PostFilter compile(final String filter) {
+        return compile(filter, Mode.PLAIN);
+    }
+
+    public static PostFilter compile(final String filter, final Mode mode) {
+        if (mode == Mode.PLAIN) {
+            return new PostFilter(filter, mode, new Term(filter.toLowerCase(Locale.ROOT)));
+        }
+        final Parser parser = new Parser(tokenize(filter), filter);
+        final Node root = parser.parseOr();
+        if (parser.hasNext()) {
+            throw invalid(filter, "unexpected '" + parser.peek().text() + "'");
+        }
+        return new PostFilter(filter, mode, root);
+    }
+
+    public String text() {
+        return text;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    // Case-insensitive match on the raw post texts, a missing title or body never matches
+    public boolean matches(final AuditionPost post) {
+        return root.matches(post.getTitle(), post.getBody(), false);
+    }
+
+    // Match on texts already lower-cased with Locale.ROOT, as kept by the snapshot index
+    public boolean matchesLowerCase(final String lowerTitle, final String lowerBody) {
+        return root.matches(lowerTitle, lowerBody, true);
+    }
+
+    // Lower-cased terms every matching post contains, an index may use them to narrow down the candidates
+    public Set<String> requiredTerms() {
+        return requiredTerms;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof PostFilter filter && text.equals(filter.text) && mode == filter.mode;
+    }
+
+    @Override
+    public int hashCode() {
+        return text.hashCode() * 31 + mode.hashCode();
+    }
+
+    // The mode, a colon and the text, e.g. boolean:dolor OR qui
+    @Override
+    public String toString() {
+        return mode.name().toLowerCase(Locale.ROOT) + ":" + text;
+    }
+
+    private static List<Token> tokenize(final String filter) {
+        final List<Token> tokens = new ArrayList<>();
+        int index = 0;
+        while (index < filter.length()) {
+            final char current = filter.charAt(index);
+            if (Character.isWhitespace(current)) {
+                index++;
+            } else if (current == QUOTE) {
+                final int end = filter.indexOf(QUOTE, index + 1);
+                if (end < 0) {
+                    throw invalid(filter, "missing closing quote");
+                }
+                tokens.add(new Token(filter.substring(index + 1, end), true));
+                index = end + 1;
+            } else {
+                int end = index;
+                while (end < filter.length() && !Character.isWhitespace(filter.charAt(end))
+                    && filter.charAt(end) != QUOTE) {
+                    end++;
+                }
+                tokens.add(new Token(filter.substring(index, end), false));
+                index = end;
+            }
+        }
+        return tokens;
+    }
+
+    private static SystemException invalid(final String filter, final String reason) {
+        return new SystemException("Invalid filter '" + filter + "': " + reason, "Bad Request",
+            HttpStatus.BAD_REQUEST.value());
+    }
+
+    // Contains on the lower-cased text: a raw text is folded char by char while it is compared, see foldsCharByChar
+    static boolean contains(final String text, final String folded, final boolean lowerCase) {
+        if (text == null) {
+            return false;
+        }
+        if (lowerCase) {
+            return text.contains(folded);
+        }
+        if (!foldsCharByChar(text)) {
+            return text.toLowerCase(Locale.ROOT).contains(folded);
+        }
+        final int last = text.length() - folded.length();
+        for (int offset = 0; offset <= last; offset++) {
+            if (lowerCaseRegionMatches(text, offset, folded)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Whether String.toLowerCase(Locale.ROOT) lower-cases every char of the text on its own, one char into one char
+    private static boolean foldsCharByChar(final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char current = text.charAt(i);
+            if (current == '\u0130' || current == '\u03A3' || Character.isSurrogate(current)) { // İ, Σ
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean lowerCaseRegionMatches(final String text, final int offset, final String folded) {
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.toLowerCase(text.charAt(offset + i)) != folded.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The syntax of the filter parameter, given by the mode parameter
+    public enum Mode {
+        PLAIN, BOOLEAN;
+
+        public static Mode of(final String mode) {
+            for (final Mode value : values()) {
+                if (value.name().equalsIgnoreCase(mode)) {
+                    return value;
+                }
+            }
+            throw new SystemException("Invalid mode '" + mode + "': use plain or boolean", "Bad Request",
+                HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    private record Token(String text, boolean quoted) {
+
+        boolean is(final String operator) {
+            return !quoted && operator.equals(text);
+        }
+    }
+
+    private interface Node {
+
+        boolean matches(String title, String body, boolean lowerCase);
+
+        Set<String> requiredTerms();
+    }
+
+    private record Term(String folded) implements Node {
+
+        @Override
+        public boolean matches(final String title, final String body, final boolean lowerCase) {
+            return contains(title, folded, lowerCase) || contains(body, folded, lowerCase);
+        }
+
+        @Override
+        public Set<String> requiredTerms() {
+            final Set<String> terms = new HashSet<>();
+            terms.add(folded);
+            return terms;
+        }
+    }
+
+    private record Not(Node operand) implements Node {
+
+        @Override
+        public boolean matches(final String title, final String body, final boolean lowerCase) {
+            return !operand.matches(title, body, lowerCase);
+        }
+
+        @Override
+        public Set<String> requiredTerms() {
+            return new HashSet<>();
+        }
+    }
+
+    private record And(Node[] operands) implements Node {
+
+        @Override
+        public boolean matches(final String title, final String body, final boolean lowerCase) {
+            for (final Node operand : operands) {
+                if (!operand.matches(title, body, lowerCase)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Set<String> requiredTerms() {
+            final Set<String> terms = new HashSet<>();
+            for (final Node operand : operands) {
+                terms.addAll(operand.requiredTerms());
+            }
+            return terms;
+        }
+    }
+
+    private record Or(Node[] operands) implements Node {
+
+        @Override
+        public boolean matches(final String title, final String body, final boolean lowerCase) {
+            for (final Node operand : operands) {
+                if (operand.matches(title, body, lowerCase)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Only the terms shared by every alternative are required
+        @Override
+        public Set<String> requiredTerms() {
+            final Set<String> terms = operands[0].requiredTerms();
+            for (int i = 1; i < operands.length; i++) {
+                terms.retainAll(operands[i].requiredTerms());
+            }
+            return terms;
+        }
+    }
+
+    // Recursive descent over: or := and (OR and)*, and := unary ([AND] unary)*, unary := NOT unary | term
+    private static final class Parser {
+
+        private final List<Token> tokens;
+        private final String filter;
+        private int position;
+
+        Parser(final List<Token> tokens, final String filter) {
+            this.tokens = tokens;
+            this.filter = filter;
+        }
+
+        boolean hasNext() {
+            return position < tokens.size();
+        }
+
+        Token peek() {
+            return tokens.get(position);
+        }
+
+        Node parseOr() {
+            final List<Node> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (hasNext() && peek().is(OR)) {
+                position++;
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands.toArray(new Node[0]));
+        }
+
+        private Node parseAnd() {
+            final List<Node> operands = new ArrayList<>();
+            operands.add(parseUnary());
+            while (hasNext() && !peek().is(OR)) {
+                if (peek().is(AND)) {
+                    position++;
+                }
+                operands.add(parseUnary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands.toArray(new Node[0]));
+        }
+
+        private Node parseUnary() {
+            if (!hasNext()) {
+                throw invalid(filter, "a term is missing at the end");
+            }
+            final Token token = tokens.get(position++);
+            if (token.is(NOT)) {
+                return new Not(parseUnary());
+            }
+            if (token.is(AND) || token.is(OR)) {
+                throw invalid(filter, "a term is missing before '" + token.text() + "'");
+            }
+            return new Term(token.text().toLowerCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.audition.integration;
+
+import com.audition.common.exception.SystemException;
+import com.audition.configuration.AuditionApiProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+
+/*
+ * Adaptive limit of the calls in flight to the upstream, tuned from their round trips like a gradient congestion
+ * window. A call answered in time is compared with the long-term average round trip: while the two agree within
+ * rtt-tolerance the limit grows by about its square root, the queue the upstream absorbs without slowing down, and
+ * once the round trips rise above it the limit shrinks in proportion, by half at most. An I/O error, a 5xx or a 429
+ * cuts it to backoff-ratio percent. Calls past the limit fail at once with 503 instead of queueing for a pooled
+ * connection. The limit, the calls in flight and the rejections are exported as audition.upstream.limit,
+ * audition.upstream.limit.inflight and audition.upstream.limit.rejected.
+ */
+
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    static final String LIMIT_METRIC = "audition.upstream.limit";
+    static final String INFLIGHT_METRIC = "audition.upstream.limit.inflight";
+    static final String REJECTED_METRIC = "audition.upstream.limit.rejected";
+
+    // Bounds of the gradient, and the decay of a long-term average left far above the current round trips
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double MAX_GRADIENT = 1.0;
+    private static final double LONG_RTT_DECAY = 0.95;
+
+    private final boolean enabled;
+    private final double minLimit;
+    private final double maxLimit;
+    private final double rttTolerance;
+    private final double smoothing;
+    private final int longWindow;
+    private final double backoffRatio;
+    private final Counter rejected;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private double limit;
+    private double longRttNanos;
+    private int samples;
+    private int inflight;
+
+    public AdaptiveConcurrencyLimiter(final AuditionApiProperties apiConfig, final MeterRegistry meterRegistry) {
+        final AuditionApiProperties.ConcurrencyLimit config = apiConfig.concurrencyLimit();
+        this.enabled = config.enabled();
+        this.minLimit = config.minLimit();
+        this.maxLimit = Math.max(config.maxLimit(), config.minLimit());
+        this.rttTolerance = config.rttTolerance() / 100.0;
+        this.smoothing = config.smoothing() / 100.0;
+        this.longWindow = config.longWindow();
+        this.backoffRatio = config.backoffRatio() / 100.0;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, config.initialLimit()));
+        this.rejected = Counter.builder(REJECTED_METRIC)
+            .description("Upstream calls rejected as the concurrency limit was reached")
+            .register(meterRegistry);
+        Gauge.builder(LIMIT_METRIC, this, AdaptiveConcurrencyLimiter::limit)
+            .description("Current limit of the calls in flight to the upstream")
+            .register(meterRegistry);
+        Gauge.builder(INFLIGHT_METRIC, this, AdaptiveConcurrencyLimiter::inflight)
+            .description("Calls in flight to the upstream")
+            .register(meterRegistry);
+    }
+
+    // Permit to send one call upstream, a call past the limit fails with 503 before anything is sent
+    public Permit acquire() {
+        if (!enabled) {
+            return new Permit(0);
+        }
+        final int current;
+        lock.lock();
+        try {
+            current = inflight < (int) limit ? ++inflight : 0;
+        } finally {
+            lock.unlock();
+        }
+        if (current == 0) {
+            rejected.increment();
+            throw new SystemException("Too many calls to the upstream are in flight, try again shortly.",
+                "Service Unavailable", HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+        return new Permit(current);
+    }
+
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inflight() {
+        lock.lock();
+        try {
+            return inflight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // New limit from the round trip of a call sent with inflightAtStart calls in flight, or from a failed call
+    void update(final long rttNanos, final int inflightAtStart, final boolean failed) {
+        lock.lock();
+        try {
+            if (failed) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                return;
+            }
+            // Plain mean until long-window calls are in, then an exponential average over about as many
+            samples = Math.min(samples + 1, longWindow);
+            longRttNanos += (rttNanos - longRttNanos) / samples;
+            // Back from an overload, the average comes down faster than its window alone would let it
+            if (longRttNanos > 2.0 * rttNanos) {
+                longRttNanos *= LONG_RTT_DECAY;
+            }
+            // A limit the calls left half unused says nothing about what the upstream could take
+            if (inflightAtStart < limit / 2) {
+                return;
+            }
+            final double gradient = Math.max(MIN_GRADIENT,
+                Math.min(MAX_GRADIENT, rttTolerance * longRttNanos / Math.max(1L, rttNanos)));
+            final double target = limit * gradient + Math.sqrt(limit);
+            limit = Math.max(minLimit, Math.min(maxLimit, limit + (target - limit) * smoothing));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // One call let through, completed exactly once with its outcome
+    public final class Permit {
+
+        private final int inflightAtStart;
+        private final long startedNanos = System.nanoTime();
+
+        private Permit(final int inflightAtStart) {
+            this.inflightAtStart = inflightAtStart;
+        }
+
+        // Outcome of a future, null on success. A call given up by its caller, or rejected by its circuit breaker or
+        // bulkhead before being sent, has no round trip.
+        public void complete(final Throwable failure) {
+            final Throwable cause = UpstreamGuards.unwrap(failure);
+            if (cause instanceof CancellationException || cause instanceof SystemException) {
+                release(false, false);
+                return;
+            }
+            release(true, UpstreamGuards.isFailure(cause));
+        }
+
+        // Outcome of a response, before the RestTemplate turns its status into an exception
+        public void complete(final HttpStatusCode status) {
+            release(true, UpstreamGuards.isFailure(status));
+        }
+
+        private void release(final boolean sent, final boolean failed) {
+            if (inflightAtStart == 0) {
+                return;
+            }
+            final long rttNanos = System.nanoTime() - startedNanos;
+            lock.lock();
+            try {
+                inflight--;
+                if (sent) {
+                    update(rttNanos, inflightAtStart, failed);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
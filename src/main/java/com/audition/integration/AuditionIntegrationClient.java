@@ -1,15 +1,27 @@
 package com.audition.integration;
 
+import com.audition.cache.CommentsCache;
+import com.audition.cache.NotFoundCache;
+import com.audition.common.concurrent.FutureUtils;
 import com.audition.common.exception.SystemException;
 import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.ExecutorConfiguration;
 import com.audition.model.AuditionComment;
 import com.audition.model.AuditionPost;
-import java.util.Arrays;
+import io.micrometer.context.ContextSnapshot;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
@@ -26,18 +38,60 @@ public class AuditionIntegrationClient {
 
     final AuditionApiProperties apiConfig;
 
+    final StreamingJsonReader jsonReader;
+
+    @Qualifier(ExecutorConfiguration.UPSTREAM_EXECUTOR)
+    final Executor upstreamExecutor;
+
+    final RequestCoalescer requestCoalescer;
+
+    final CommentsCache commentsCache;
+
+    final UpstreamAsyncClient asyncClient;
+
+    final PostBatchLoader postBatchLoader;
+
+    final CommentsEmbedding commentsEmbedding;
+
+    final NotFoundCache notFoundCache;
+
+    final UpstreamRetry upstreamRetry;
+
     public List<AuditionPost> getPosts() {
         final String url = apiConfig.baseUrl() + apiConfig.posts().path();
-        final ResponseEntity<AuditionPost[]> responseEntity = restTemplate.getForEntity(url, AuditionPost[].class);
-        return Arrays.asList(Objects.requireNonNull(responseEntity.getBody()));
+        return getList(url, AuditionPost.class);
+    }
+
+    // Paging and filter push-down, see audition.api.push-down
+    public boolean isPushDownEnabled() {
+        return apiConfig.pushDown().enabled();
+    }
+
+    // One page of the posts ordered by id, cut by the upstream _page and _limit parameters
+    public List<AuditionPost> getPostsPage(final int page, final int size) {
+        final String url = apiConfig.baseUrl() + apiConfig.posts().path() + "?_sort=id&_page=" + page
+            + "&_limit=" + size;
+        return getList(URI.create(url), AuditionPost.class);
+    }
+
+    // The posts with the term in any of their fields, from the upstream q full-text search, which is case-insensitive.
+    // It matches the id and userId too, so callers filter the result again.
+    public List<AuditionPost> searchPosts(final String term) {
+        final String url = apiConfig.baseUrl() + apiConfig.posts().path() + "?q="
+            + URLEncoder.encode(term, StandardCharsets.UTF_8);
+        return getList(URI.create(url), AuditionPost.class);
     }
 
+    // A post the upstream has just answered 404 for is reported missing again without asking, see NotFoundCache
     public AuditionPost getPostById(final long postId) {
         final String url = apiConfig.baseUrl() + apiConfig.posts().path() + "/" + postId;
+        if (notFoundCache.isMissing(postId)) {
+            throw knownMissing("Cannot find a Post with id " + postId);
+        }
         try {
-            return restTemplate.getForObject(url, AuditionPost.class);
+            return upstreamRetry.execute(() -> restTemplate.getForObject(url, AuditionPost.class));
         } catch (final HttpClientErrorException exception) {
-            checkResourceNotFoundErrors(exception, "Cannot find a Post with id " + postId);
+            checkResourceNotFoundErrors(exception, postId, "Cannot find a Post with id " + postId);
             throw new SystemException(exception.getMessage(), exception.getStatusCode().value(), exception);
         }
     }
@@ -45,15 +99,36 @@ public class AuditionIntegrationClient {
 
     public AuditionPost getPostWithComments(final long postId) {
         final String url = apiConfig.baseUrl() + apiConfig.posts().path() + "/" + postId + "/comments";
+        if (notFoundCache.isMissing(postId)) {
+            throw knownMissing("Cannot find a Post and its comments with id " + postId);
+        }
+        // The post and its comments do not depend on each other, so both upstream calls are made at the same time on
+        // the bounded upstream executor, which hands the trace/observation context of this thread over to its tasks
+        final CompletableFuture<AuditionPost> postFuture = CompletableFuture.supplyAsync(
+            () -> getPostById(postId), upstreamExecutor);
+        // A failed post leaves nothing to attach the comments to: a comments call not started yet is skipped, and the
+        // comments loaded for a post the upstream does not have are not kept
+        final CompletableFuture<List<AuditionComment>> commentsFuture = CompletableFuture.supplyAsync(() -> {
+            final List<AuditionComment> comments = commentsCache.get(postId, id -> getList(url, AuditionComment.class));
+            postFuture.whenComplete((post, failure) -> {
+                if (isNotFound(failure)) {
+                    commentsCache.invalidate(postId);
+                }
+            });
+            return comments;
+        }, upstreamExecutor);
+        postFuture.whenComplete((post, failure) -> {
+            if (failure != null) {
+                commentsFuture.cancel(true);
+            }
+        });
         try {
-            final AuditionPost auditionpost = getPostById(postId);
-            final ResponseEntity<AuditionComment[]> responseEntity = restTemplate.getForEntity(url,
-                AuditionComment[].class);
-            final List<AuditionComment> auditionComments = Arrays.asList(responseEntity.getBody());
+            final AuditionPost auditionpost = FutureUtils.join(postFuture);
+            final List<AuditionComment> auditionComments = FutureUtils.join(commentsFuture);
             auditionpost.setComments(auditionComments);
             return auditionpost;
         } catch (final HttpClientErrorException exception) {
-            checkResourceNotFoundErrors(exception, "Cannot find a Post and its comments with id " + postId);
+            checkResourceNotFoundErrors(exception, postId, "Cannot find a Post and its comments with id " + postId);
             throw new SystemException(exception.getMessage(), exception.getStatusCode().value(), exception);
         }
     }
@@ -61,17 +136,170 @@ public class AuditionIntegrationClient {
 
     public List<AuditionComment> getCommentsByPostId(final long postId) {
         final String url = apiConfig.baseUrl() + apiConfig.comments().path() + "?postId=" + postId;
-        final ResponseEntity<AuditionComment[]> responseEntity = restTemplate.getForEntity(url,
-            AuditionComment[].class);
-        return Arrays.asList(Objects.requireNonNull(responseEntity.getBody()));
+        return commentsCache.get(postId, id -> getList(url, AuditionComment.class));
+    }
+
+    // Every comment of every post in one download, grouped by the CommentsIndexStore
+    public List<AuditionComment> getComments() {
+        final String url = apiConfig.baseUrl() + apiConfig.comments().path();
+        return getList(url, AuditionComment.class);
+    }
+
+    // Non-blocking variants of the calls above, the upstream calls run on the I/O threads of the async HTTP client so
+    // no thread is held while waiting. Failures are mapped the same way as in the blocking calls.
+    public CompletableFuture<List<AuditionPost>> getPostsAsync() {
+        final String url = apiConfig.baseUrl() + apiConfig.posts().path();
+        return getListAsync(url, AuditionPost.class);
+    }
+
+    // Lookups made at about the same time are merged into one upstream query when audition.api.batch is enabled
+    public CompletableFuture<AuditionPost> getPostByIdAsync(final long postId) {
+        final String url = apiConfig.baseUrl() + apiConfig.posts().path() + "/" + postId;
+        if (notFoundCache.isMissing(postId)) {
+            return CompletableFuture.failedFuture(knownMissing("Cannot find a Post with id " + postId));
+        }
+        final CompletableFuture<AuditionPost> post = apiConfig.batch().enabled()
+            ? postBatchLoader.load(postId) : asyncClient.get(url, AuditionPost.class);
+        return mapClientErrors(post, postId, "Cannot find a Post with id " + postId);
+    }
+
+    // One upstream call with _embed=comments, unless the comments are cached already or the upstream cannot embed
+    // them. The post and its comments are then fetched at the same time.
+    public CompletableFuture<AuditionPost> getPostWithCommentsAsync(final long postId) {
+        final String url = apiConfig.baseUrl() + apiConfig.posts().path() + "/" + postId + "/comments";
+        if (notFoundCache.isMissing(postId)) {
+            return CompletableFuture.failedFuture(
+                knownMissing("Cannot find a Post and its comments with id " + postId));
+        }
+        final CompletableFuture<AuditionPost> postWithComments;
+        if (commentsEmbedding.isAvailable() && !commentsCache.contains(postId)) {
+            postWithComments = getPostWithEmbeddedCommentsAsync(postId, url);
+        } else {
+            commentsEmbedding.recordTwoCalls();
+            final CompletableFuture<List<AuditionComment>> commentsFuture = commentsCache.getAsync(postId,
+                id -> getListAsync(url, AuditionComment.class));
+            final CompletableFuture<AuditionPost> postFuture = getPostByIdAsync(postId);
+            // As in getPostWithComments, the comments loaded for a post the upstream does not have are not kept
+            postFuture.whenComplete((post, failure) -> {
+                if (isNotFound(failure)) {
+                    commentsFuture.whenComplete((comments, commentsFailure) -> commentsCache.invalidate(postId));
+                }
+            });
+            postWithComments = FutureUtils.cancelling(postFuture.thenCombine(commentsFuture,
+                AuditionIntegrationClient::attach), postFuture, commentsFuture);
+        }
+        return mapClientErrors(inCallerContext(postWithComments), postId,
+            "Cannot find a Post and its comments with id " + postId);
+    }
+
+    // The calls complete on the I/O threads of the async client. The result is completed there with the
+    // trace/observation context captured on the calling thread, so the error mapping and the stages the caller adds
+    // on run with it as well.
+    private static <T> CompletableFuture<T> inCallerContext(final CompletableFuture<T> call) {
+        final ContextSnapshot snapshot = ContextSnapshot.captureAll();
+        final Executor callerContext = runnable -> snapshot.wrap(runnable).run();
+        return FutureUtils.cancelling(call.whenCompleteAsync((value, failure) -> {
+        }, callerContext), call);
+    }
+
+    // An answer without the comments field means the upstream ignored _embed, the comments are fetched on their own
+    private CompletableFuture<AuditionPost> getPostWithEmbeddedCommentsAsync(final long postId,
+        final String commentsUrl) {
+        final String url = apiConfig.baseUrl() + apiConfig.posts().path() + "/" + postId + "?_embed=comments";
+        final CompletableFuture<AuditionPost> embeddedCall = asyncClient.get(url, AuditionPost.class);
+        return FutureUtils.composing(embeddedCall, auditionPost -> {
+            final CompletableFuture<List<AuditionComment>> comments;
+            if (auditionPost.getComments() == null) {
+                commentsEmbedding.recordUnsupported();
+                comments = commentsCache.getAsync(postId, id -> getListAsync(commentsUrl, AuditionComment.class));
+            } else {
+                commentsEmbedding.recordEmbedded();
+                final List<AuditionComment> embedded = Collections.unmodifiableList(auditionPost.getComments());
+                comments = commentsCache.getAsync(postId, id -> CompletableFuture.completedFuture(embedded));
+            }
+            return FutureUtils.cancelling(comments.thenApply(list -> attach(auditionPost, list)), comments);
+        });
+    }
+
+    private static AuditionPost attach(final AuditionPost auditionPost, final List<AuditionComment> comments) {
+        auditionPost.setComments(comments);
+        return auditionPost;
+    }
+
+    public CompletableFuture<List<AuditionComment>> getCommentsByPostIdAsync(final long postId) {
+        final String url = apiConfig.baseUrl() + apiConfig.comments().path() + "?postId=" + postId;
+        return commentsCache.getAsync(postId, id -> getListAsync(url, AuditionComment.class));
+    }
+
+    public boolean isPassthroughEnabled() {
+        return apiConfig.passthrough().enabled();
+    }
+
+    // Passthrough variant of getPostByIdAsync, the upstream JSON of the post is streamed out as received, see
+    // JsonPassthrough. Neither batched, as a batch answer has to be bound to be split between its callers, nor
+    // coalesced, as each caller reads its own body.
+    public CompletableFuture<JsonPassthrough> getPostByIdJsonAsync(final long postId) {
+        final String url = apiConfig.baseUrl() + apiConfig.posts().path() + "/" + postId;
+        if (notFoundCache.isMissing(postId)) {
+            return CompletableFuture.failedFuture(knownMissing("Cannot find a Post with id " + postId));
+        }
+        return mapClientErrors(asyncClient.getJson(url), postId, "Cannot find a Post with id " + postId);
+    }
+
+    // Passthrough variant of getCommentsByPostIdAsync, the comments cache holds bound comments and is not used
+    public CompletableFuture<JsonPassthrough> getCommentsByPostIdJsonAsync(final long postId) {
+        return asyncClient.getJson(apiConfig.baseUrl() + apiConfig.comments().path() + "?postId=" + postId);
+    }
+
+    // Upstream arrays are parsed element by element from the response stream, no buffered copy of the body is kept.
+    // Concurrent calls for the same URL share one upstream call, hence the read-only list. A transient failure, even
+    // halfway through the body, is retried with a new call, see UpstreamRetry.
+    private <T> List<T> getList(final String url, final Class<T> elementType) {
+        return requestCoalescer.execute(url, () -> Collections.unmodifiableList(Objects.requireNonNull(
+            upstreamRetry.execute(() -> restTemplate.execute(url, HttpMethod.GET, jsonReader.acceptJson(),
+                jsonReader.listExtractor(elementType))))));
+    }
+
+    // Same as above for an already encoded URI, which the RestTemplate would otherwise encode a second time
+    private <T> List<T> getList(final URI uri, final Class<T> elementType) {
+        return requestCoalescer.execute(uri.toString(), () -> Collections.unmodifiableList(Objects.requireNonNull(
+            upstreamRetry.execute(() -> restTemplate.execute(uri, HttpMethod.GET, jsonReader.acceptJson(),
+                jsonReader.listExtractor(elementType))))));
+    }
+
+    private <T> CompletableFuture<List<T>> getListAsync(final String url, final Class<T> elementType) {
+        return requestCoalescer.executeAsync(url, () -> asyncClient.getList(url, elementType));
+    }
+
+    private <T> CompletableFuture<T> mapClientErrors(final CompletableFuture<T> call, final long postId,
+        final String notFoundMessage) {
+        return FutureUtils.cancelling(call.exceptionally(failure -> {
+            final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof HttpClientErrorException exception) {
+                checkResourceNotFoundErrors(exception, postId, notFoundMessage);
+                throw new SystemException(exception.getMessage(), exception.getStatusCode().value(), exception);
+            }
+            throw failure instanceof CompletionException completion ? completion : new CompletionException(cause);
+        }), call);
     }
 
     // The comments are a separate list that needs to be returned to the API consumers. Hint: this is not part of the AuditionPost pojo.
 
-    private void checkResourceNotFoundErrors(final HttpClientErrorException exception, final String message) {
+    private void checkResourceNotFoundErrors(final HttpClientErrorException exception, final long postId,
+        final String message) {
         if (exception.getStatusCode() == HttpStatus.NOT_FOUND) {
+            notFoundCache.recordMissing(postId);
             throw new SystemException(message, "Resource not found", HttpStatus.NOT_FOUND.value(), exception);
         }
     }
+
+    private static boolean isNotFound(final Throwable failure) {
+        final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        return cause instanceof SystemException exception && exception.getStatusCode() == HttpStatus.NOT_FOUND.value();
+    }
+
+    private static SystemException knownMissing(final String message) {
+        return SystemException.withoutStackTrace(message, "Resource not found", HttpStatus.NOT_FOUND.value());
+    }
 }
 
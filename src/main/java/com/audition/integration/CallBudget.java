@@ -0,0 +1,32 @@
+package com.audition.integration;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Budget of the extra upstream calls, hedges or retries. Every call earns a share of an extra call and every extra
+ * call spends a whole one, so they stay within that share of the calls. Kept in hundredths of a call, at most burst
+ * extra calls are saved up.
+ */
+
+final class CallBudget {
+
+    private static final int CALL = 100;
+
+    private final int earnedPerCall;
+    private final int max;
+    private final AtomicInteger saved;
+
+    CallBudget(final int percentPerCall, final int burst, final boolean full) {
+        this.earnedPerCall = percentPerCall;
+        this.max = burst * CALL;
+        this.saved = new AtomicInteger(full ? max : 0);
+    }
+
+    void earn() {
+        saved.getAndUpdate(budget -> Math.min(max, budget + earnedPerCall));
+    }
+
+    boolean trySpend() {
+        return saved.getAndUpdate(budget -> budget >= CALL ? budget - CALL : budget) >= CALL;
+    }
+}
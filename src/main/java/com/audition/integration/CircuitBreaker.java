@@ -0,0 +1,156 @@
+package com.audition.integration;
+
+import com.audition.configuration.AuditionApiProperties;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Count based circuit breaker over the outcomes of the last window-size calls of one upstream endpoint. CLOSED lets
+ * every call through. Once minimum-calls are in the window, a failure rate or slow call rate at or above its
+ * threshold opens it. OPEN rejects every call until open-duration has passed, then HALF_OPEN lets half-open-calls
+ * trial calls through. Their outcomes close it again with an empty window, or open it for another open-duration.
+ * Every permit carries the generation of the state it was given in, so a call sent before a transition cannot count
+ * as a trial of the state after it. Guarded by a ReentrantLock rather than synchronized, so a virtual thread waiting
+ * on it does not pin its carrier.
+ */
+
+public final class CircuitBreaker {
+
+    // Ordered by severity, the ordinal is the value of the state gauge
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    // Permit of a rejected call
+    public static final long REJECTED = -1;
+
+    // Permit of a call sent while no breaker guards the endpoint, it is never recorded nor released
+    public static final long NO_PERMIT = -2;
+
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final int slowCallRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Ring of the recorded outcomes, guarded by lock
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private long openedAtNanos;
+    private int trialPermits;
+
+    public CircuitBreaker(final AuditionApiProperties.CircuitBreaker config) {
+        this.minimumCalls = Math.min(config.minimumCalls(), config.windowSize());
+        this.failureRateThreshold = config.failureRateThreshold();
+        this.slowCallNanos = config.slowCallDuration().toNanos();
+        this.slowCallRateThreshold = config.slowCallRateThreshold();
+        this.openNanos = config.openDuration().toNanos();
+        this.halfOpenCalls = Math.min(config.halfOpenCalls(), config.windowSize());
+        this.failed = new boolean[config.windowSize()];
+        this.slow = new boolean[config.windowSize()];
+    }
+
+    // Permit for a call to go upstream now, REJECTED when it may not. An open circuit turns half-open here once
+    // open-duration has passed.
+    public long tryAcquire() {
+        lock.lock();
+        try {
+            if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialPermits == 0) {
+                    return REJECTED;
+                }
+                trialPermits--;
+            }
+            return state == State.OPEN ? REJECTED : generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Outcome of a call let through by tryAcquire. Calls still finishing after the state they were sent in has changed
+    // are not counted.
+    public void record(final long permit, final long durationNanos, final boolean failure) {
+        lock.lock();
+        try {
+            if (permit != generation || state == State.OPEN) {
+                return;
+            }
+            add(failure, durationNanos >= slowCallNanos);
+            if (state == State.HALF_OPEN) {
+                if (recorded >= halfOpenCalls) {
+                    transition(isFailing() ? State.OPEN : State.CLOSED);
+                }
+            } else if (recorded >= minimumCalls && isFailing()) {
+                transition(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A call let through that ended without an outcome, e.g. cancelled, hands its trial permit back. Only a permit of
+    // the current half-open state was a trial.
+    public void release(final long permit) {
+        lock.lock();
+        try {
+            if (permit == generation && state == State.HALF_OPEN && trialPermits + recorded < halfOpenCalls) {
+                trialPermits++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The state the next call would meet, an open circuit whose open-duration has passed reads half-open even while
+    // no call has come to turn it so
+    public State state() {
+        lock.lock();
+        try {
+            if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+                return State.HALF_OPEN;
+            }
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(final boolean failure, final boolean slowCall) {
+        if (recorded == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        failures += failure ? 1 : 0;
+        slowCalls += slowCall ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private boolean isFailing() {
+        return failures * 100 >= failureRateThreshold * recorded || slowCalls * 100 >= slowCallRateThreshold * recorded;
+    }
+
+    // Every state starts with an empty window
+    private void transition(final State target) {
+        state = target;
+        generation++;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        openedAtNanos = System.nanoTime();
+        trialPermits = target == State.HALF_OPEN ? halfOpenCalls : 0;
+    }
+}
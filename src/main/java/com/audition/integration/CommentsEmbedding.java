@@ -0,0 +1,67 @@
+package com.audition.integration;
+
+import com.audition.configuration.AuditionApiProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Component;
+
+/*
+ * Whether a post and its comments are fetched in one upstream call with _embed=comments. An upstream that answers
+ * without the embedded comments is asked with two calls again until audition.api.embed.probe-interval has passed.
+ * The way each post with comments was fetched is counted in audition.upstream.post.comments, tagged by path.
+ */
+
+@Component
+public class CommentsEmbedding {
+
+    static final String PATH_METRIC = "audition.upstream.post.comments";
+
+    // 0 while embedding is supported, else the time it was last found unsupported
+    private final AtomicLong unsupportedSinceNanos = new AtomicLong();
+    private final boolean enabled;
+    private final long probeIntervalNanos;
+    private final Counter embedded;
+    private final Counter twoCalls;
+    private final Counter fallbacks;
+
+    public CommentsEmbedding(final AuditionApiProperties apiConfig, final MeterRegistry meterRegistry) {
+        this.enabled = apiConfig.embed().enabled();
+        this.probeIntervalNanos = apiConfig.embed().probeInterval().toNanos();
+        this.embedded = counter(meterRegistry, "embed", "Posts fetched with their comments embedded, one call");
+        this.twoCalls = counter(meterRegistry, "two-calls", "Posts and comments fetched with separate calls");
+        this.fallbacks = counter(meterRegistry, "embed-fallback",
+            "Embed calls answered without the comments, which were then fetched separately");
+    }
+
+    private static Counter counter(final MeterRegistry meterRegistry, final String path, final String description) {
+        return Counter.builder(PATH_METRIC)
+            .tag("path", path)
+            .description(description)
+            .register(meterRegistry);
+    }
+
+    public boolean isAvailable() {
+        if (!enabled) {
+            return false;
+        }
+        final long since = unsupportedSinceNanos.get();
+        return since == 0 || System.nanoTime() - since >= probeIntervalNanos;
+    }
+
+    void recordEmbedded() {
+        unsupportedSinceNanos.set(0);
+        embedded.increment();
+    }
+
+    void recordTwoCalls() {
+        twoCalls.increment();
+    }
+
+    // The embed call was made but its answer holds no comments, the nano clock value 0 is skipped as it means supported
+    void recordUnsupported() {
+        final long now = System.nanoTime();
+        unsupportedSinceNanos.set(now == 0 ? 1 : now);
+        fallbacks.increment();
+    }
+}
@@ -0,0 +1,68 @@
+package com.audition.integration;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * Upstream JSON of a passthrough lookup, copied token by token to the response while it is still arriving, so the
+ * body is never bound nor held whole in memory. Object fields holding null, "" or [] are left out, as the NON_EMPTY
+ * inclusion leaves them out of a bound object, everything else is written as received, unknown fields included.
+ * The body can be written once, closing it before its end aborts the upstream exchange.
+ */
+
+public final class JsonPassthrough implements Closeable {
+
+    private final JsonFactory jsonFactory;
+    private final InputStream body;
+
+    public JsonPassthrough(final JsonFactory jsonFactory, final InputStream body) {
+        this.jsonFactory = jsonFactory;
+        this.body = body;
+    }
+
+    // Reads the body to its end, the output stream is flushed but left open. A malformed body fails half way through,
+    // once part of it may already be written.
+    public void writeTo(final OutputStream out) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(body);
+            JsonGenerator generator = jsonFactory.createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                if (token == JsonToken.FIELD_NAME) {
+                    final String name = parser.currentName();
+                    token = parser.nextToken();
+                    if (token == JsonToken.VALUE_NULL
+                        || token == JsonToken.VALUE_STRING && parser.getTextLength() == 0) {
+                        continue;
+                    }
+                    if (token == JsonToken.START_ARRAY) {
+                        // One token of lookahead tells an empty array apart, the first element is copied below
+                        token = parser.nextToken();
+                        if (token == JsonToken.END_ARRAY) {
+                            continue;
+                        }
+                        generator.writeFieldName(name);
+                        generator.writeStartArray();
+                    } else {
+                        generator.writeFieldName(name);
+                    }
+                }
+                generator.copyCurrentEvent(parser);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            body.close();
+        } catch (final IOException ignored) {
+            // Nothing is read from the body anymore
+        }
+    }
+}
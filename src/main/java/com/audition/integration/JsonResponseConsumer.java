@@ -0,0 +1,201 @@
+package com.audition.integration;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.springframework.core.log.LogFormatUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+
+/*
+ * Parses an upstream JSON response on the I/O thread as its chunks arrive, with Jackson's non-blocking parser.
+ * In array mode each element is bound as soon as its last token is in, only the tokens of the current element are
+ * buffered. An error status completes the result with the same HttpStatusCodeException the RestTemplate would throw.
+ */
+
+class JsonResponseConsumer<T> extends AbstractBinResponseConsumer<List<T>> {
+
+    static final int CHUNK_BYTES = 8192;
+    static final int MAX_ERROR_BODY_BYTES = 2048;
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader reader;
+    private final Class<T> elementType;
+    private final boolean array;
+    private final CompletableFuture<List<T>> result;
+    private final List<T> elements = new ArrayList<>();
+    private final byte[] chunk = new byte[CHUNK_BYTES];
+
+    private HttpResponse response;
+    private Charset charset;
+    private ByteArrayOutputStream errorBody;
+    private JsonParser parser;
+    private TokenBuffer element;
+    private int depth;
+    private boolean started;
+
+    JsonResponseConsumer(final ObjectMapper objectMapper, final Class<T> elementType, final boolean array,
+        final CompletableFuture<List<T>> result) {
+        this.objectMapper = objectMapper;
+        this.reader = objectMapper.readerFor(elementType);
+        this.elementType = elementType;
+        this.array = array;
+        this.result = result;
+    }
+
+    @Override
+    protected void start(final HttpResponse response, final ContentType contentType) throws IOException {
+        this.response = response;
+        this.charset = contentType == null || contentType.getCharset() == null ? StandardCharsets.UTF_8
+            : contentType.getCharset();
+        if (isSuccess()) {
+            parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } else {
+            errorBody = new ByteArrayOutputStream();
+        }
+    }
+
+    @Override
+    protected int capacityIncrement() {
+        return CHUNK_BYTES;
+    }
+
+    // A parsing error fails the result right away and aborts the exchange, the rest of the body is not read
+    @Override
+    protected void data(final ByteBuffer src, final boolean endOfStream) throws IOException {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            while (src.hasRemaining()) {
+                final int length = Math.min(src.remaining(), chunk.length);
+                src.get(chunk, 0, length);
+                if (parser == null) {
+                    errorBody.write(chunk, 0, Math.min(length, MAX_ERROR_BODY_BYTES - errorBody.size()));
+                } else {
+                    ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(chunk, 0, length);
+                    drain();
+                }
+            }
+            if (endOfStream && parser != null) {
+                ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).endOfInput();
+                drain();
+            }
+        } catch (final IOException exception) {
+            result.completeExceptionally(exception);
+            throw exception;
+        }
+    }
+
+    // Runs once the whole body is in, completes the result instead of throwing so the I/O thread is never disturbed
+    @Override
+    protected List<T> buildResult() {
+        if (result.isDone()) {
+            return elements;
+        }
+        if (parser == null) {
+            result.completeExceptionally(statusError(response, errorBody.toByteArray(), charset));
+        } else if (!started || element != null) {
+            result.completeExceptionally(MismatchedInputException.from(parser, elementType,
+                "Incomplete JSON response for " + elementType.getSimpleName()));
+        } else {
+            result.complete(elements);
+        }
+        return elements;
+    }
+
+    @Override
+    public void failed(final Exception cause) {
+        result.completeExceptionally(cause);
+    }
+
+    @Override
+    public void releaseResources() {
+        if (parser != null) {
+            try {
+                parser.close();
+            } catch (final IOException ignored) {
+                // Nothing is left to read, the parser holds no external resource
+            }
+        }
+    }
+
+    // Consumes every complete token fed so far. Tokens are copied into a buffer until the current value is closed,
+    // then it is bound to the element type. Nulls in an array are skipped, as the blocking reader does.
+    private void drain() throws IOException {
+        JsonToken token = parser.nextToken();
+        while (token != null && token != JsonToken.NOT_AVAILABLE) {
+            if (!started) {
+                started = true;
+                if (array) {
+                    if (token != JsonToken.START_ARRAY) {
+                        throw MismatchedInputException.from(parser, elementType,
+                            "Expected a JSON array of " + elementType.getSimpleName());
+                    }
+                    token = parser.nextToken();
+                    continue;
+                }
+            }
+            if (element == null && !(array && (token == JsonToken.END_ARRAY || token == JsonToken.VALUE_NULL))) {
+                element = new TokenBuffer(parser);
+            }
+            if (element != null) {
+                element.copyCurrentEvent(parser);
+                if (token.isStructStart()) {
+                    depth++;
+                } else if (token.isStructEnd()) {
+                    depth--;
+                }
+                if (depth == 0) {
+                    try (JsonParser value = element.asParser(objectMapper)) {
+                        elements.add(reader.readValue(value));
+                    }
+                    element = null;
+                }
+            }
+            token = parser.nextToken();
+        }
+    }
+
+    private boolean isSuccess() {
+        return HttpStatusCode.valueOf(response.getCode()).is2xxSuccessful();
+    }
+
+    // Same exception and message as the RestTemplate DefaultResponseErrorHandler for this status
+    static RuntimeException statusError(final HttpResponse response, final byte[] body, final Charset charset) {
+        final HttpStatusCode statusCode = HttpStatusCode.valueOf(response.getCode());
+        final String statusText = response.getReasonPhrase() == null ? "" : response.getReasonPhrase();
+        final String message = statusCode.value() + " " + statusText + ": "
+            + (body.length == 0 ? "[no body]" : LogFormatUtils.formatValue(new String(body, charset), -1, true));
+        final HttpHeaders headers = new HttpHeaders();
+        for (final Header header : response.getHeaders()) {
+            headers.add(header.getName(), header.getValue());
+        }
+        if (statusCode.is4xxClientError()) {
+            return HttpClientErrorException.create(message, statusCode, statusText, headers, body, charset);
+        }
+        if (statusCode.is5xxServerError()) {
+            return HttpServerErrorException.create(message, statusCode, statusText, headers, body, charset);
+        }
+        return new UnknownHttpStatusCodeException(message, statusCode.value(), statusText, headers, body, charset);
+    }
+}
@@ -0,0 +1,280 @@
+package com.audition.integration;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.UnknownContentTypeException;
+
+/*
+ * Hands an upstream JSON response over as a JsonPassthrough once its status and content type are checked, the body
+ * is then read from the I/O threads into a buffer the passthrough drains. No more than MAX_BUFFERED_BYTES are granted
+ * to the connection ahead of the reader, so a slow client slows the upstream read down instead of filling the heap.
+ * An error status completes the result with the exception the RestTemplate would throw, and a success that is not
+ * JSON with the UnknownContentTypeException it throws when no converter fits, both once their body is in.
+ */
+
+class PassthroughResponseConsumer implements AsyncResponseConsumer<JsonPassthrough> {
+
+    static final int MAX_BUFFERED_BYTES = 64 * 1024;
+
+    private final JsonFactory jsonFactory;
+    private final CompletableFuture<JsonPassthrough> result;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readable = lock.newCondition();
+    private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+
+    private HttpResponse response;
+    private MediaType mediaType;
+    private Charset charset;
+    private ByteArrayOutputStream rejectedBody;
+    private FutureCallback<JsonPassthrough> resultCallback;
+    private JsonPassthrough passthrough;
+    private CapacityChannel capacityChannel;
+    private int buffered;
+    private int granted;
+    private boolean ended;
+    private boolean closed;
+    private IOException failure;
+
+    PassthroughResponseConsumer(final JsonFactory jsonFactory, final CompletableFuture<JsonPassthrough> result) {
+        this.jsonFactory = jsonFactory;
+        this.result = result;
+    }
+
+    @Override
+    public void consumeResponse(final HttpResponse response, final EntityDetails entityDetails,
+        final HttpContext context, final FutureCallback<JsonPassthrough> resultCallback) throws IOException {
+        this.response = response;
+        this.resultCallback = resultCallback;
+        final ContentType contentType = entityDetails == null ? null
+            : ContentType.parseLenient(entityDetails.getContentType());
+        this.mediaType = contentType == null ? null : MediaType.parseMediaType(contentType.toString());
+        this.charset = contentType == null || contentType.getCharset() == null ? StandardCharsets.UTF_8
+            : contentType.getCharset();
+        if (HttpStatusCode.valueOf(response.getCode()).is2xxSuccessful() && isJson()) {
+            passthrough = new JsonPassthrough(jsonFactory, new Body());
+            result.complete(passthrough);
+        } else {
+            rejectedBody = new ByteArrayOutputStream();
+        }
+        if (entityDetails == null) {
+            streamEnd(null);
+        }
+    }
+
+    @Override
+    public void informationResponse(final HttpResponse response, final HttpContext context) {
+        // 1xx responses carry nothing to pass on
+    }
+
+    // A rejected body is read in full, only its first bytes are kept for the exception message
+    @Override
+    public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+        if (rejectedBody != null) {
+            capacityChannel.update(JsonResponseConsumer.CHUNK_BYTES);
+            return;
+        }
+        lock.lock();
+        try {
+            this.capacityChannel = capacityChannel;
+            granted = 0;
+        } finally {
+            lock.unlock();
+        }
+        grant();
+    }
+
+    // The bytes are copied out of the I/O buffer, a passthrough closed before its end aborts the exchange from here
+    @Override
+    public void consume(final ByteBuffer src) throws IOException {
+        if (rejectedBody != null) {
+            final byte[] bytes = new byte[Math.min(src.remaining(),
+                JsonResponseConsumer.MAX_ERROR_BODY_BYTES - rejectedBody.size())];
+            src.get(bytes);
+            rejectedBody.write(bytes);
+            src.position(src.limit());
+            return;
+        }
+        final byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Passthrough response closed before the end of the upstream body");
+            }
+            chunks.add(ByteBuffer.wrap(bytes));
+            buffered += bytes.length;
+            granted = Math.max(0, granted - bytes.length);
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Completes the result instead of throwing so the I/O thread is never disturbed
+    @Override
+    public void streamEnd(final List<? extends Header> trailers) {
+        if (rejectedBody == null) {
+            lock.lock();
+            try {
+                ended = true;
+                readable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } else if (HttpStatusCode.valueOf(response.getCode()).is2xxSuccessful()) {
+            result.completeExceptionally(new UnknownContentTypeException(JsonPassthrough.class, mediaType == null
+                ? MediaType.APPLICATION_OCTET_STREAM : mediaType, response.getCode(),
+                response.getReasonPhrase() == null ? "" : response.getReasonPhrase(), headers(),
+                rejectedBody.toByteArray()));
+        } else {
+            result.completeExceptionally(JsonResponseConsumer.statusError(response, rejectedBody.toByteArray(),
+                charset));
+        }
+        resultCallback.completed(passthrough);
+    }
+
+    @Override
+    public void failed(final Exception cause) {
+        end(cause instanceof IOException exception ? exception : new IOException(cause));
+        result.completeExceptionally(cause);
+    }
+
+    // Also runs for a cancelled exchange, which fails nothing, the reader is then not left waiting
+    @Override
+    public void releaseResources() {
+        end(new IOException("Upstream exchange ended before the end of its body"));
+    }
+
+    private void end(final IOException cause) {
+        lock.lock();
+        try {
+            capacityChannel = null;
+            if (!ended && failure == null) {
+                failure = cause;
+            }
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Tops the window of the connection up to MAX_BUFFERED_BYTES ahead of the reader, at least a chunk at a time.
+    // Once the passthrough is closed a chunk is granted so that consume gets to abort the exchange.
+    private void grant() throws IOException {
+        final CapacityChannel channel;
+        final int increment;
+        lock.lock();
+        try {
+            channel = capacityChannel;
+            final int room = closed ? JsonResponseConsumer.CHUNK_BYTES : MAX_BUFFERED_BYTES - buffered - granted;
+            increment = channel == null || ended || room < JsonResponseConsumer.CHUNK_BYTES ? 0 : room;
+            granted += increment;
+        } finally {
+            lock.unlock();
+        }
+        if (increment > 0) {
+            channel.update(increment);
+        }
+    }
+
+    // application/json or any +json type
+    private boolean isJson() {
+        return mediaType != null && (MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)
+            || "json".equals(mediaType.getSubtypeSuffix()));
+    }
+
+    private HttpHeaders headers() {
+        final HttpHeaders headers = new HttpHeaders();
+        for (final Header header : response.getHeaders()) {
+            headers.add(header.getName(), header.getValue());
+        }
+        return headers;
+    }
+
+    // The reading side of the buffer, used by a single thread at a time
+    private final class Body extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            final int count;
+            lock.lock();
+            try {
+                while (chunks.isEmpty() && !ended && failure == null && !closed) {
+                    readable.await();
+                }
+                if (closed) {
+                    throw new IOException("Passthrough response closed");
+                }
+                if (chunks.isEmpty()) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+                final ByteBuffer chunk = chunks.peek();
+                count = Math.min(length, chunk.remaining());
+                chunk.get(bytes, offset, count);
+                if (!chunk.hasRemaining()) {
+                    chunks.poll();
+                }
+                buffered -= count;
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the upstream body");
+            } finally {
+                lock.unlock();
+            }
+            grant();
+            return count;
+        }
+
+        // Before the end of the body the exchange is aborted, the connection is not reused
+        @Override
+        public void close() throws IOException {
+            lock.lock();
+            try {
+                if (closed || ended && chunks.isEmpty()) {
+                    return;
+                }
+                closed = true;
+                chunks.clear();
+                buffered = 0;
+                readable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            grant();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.audition.integration;
+
+import com.audition.common.concurrent.FutureUtils;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.ExecutorConfiguration;
+import com.audition.model.AuditionPost;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+/*
+ * DataLoader style micro-batching of the post lookups by id. The lookups made within audition.api.batch.window of the
+ * first one are merged into one upstream /posts?id=1&id=2 query and its result is fanned back out to every caller.
+ * An id missing from the result fails its callers with the 404 the single lookup would have got. A window with a
+ * single id asks for /posts/{id}, so the upstream's own answer for it, 404 included, reaches the callers.
+ */
+
+@Component
+public class PostBatchLoader {
+
+    static final String BATCH_SIZE_METRIC = "audition.upstream.batch.size";
+
+    private final UpstreamAsyncClient asyncClient;
+    private final String postsUrl;
+    private final int maxSize;
+    private final Executor windowTimer;
+    private final DistributionSummary batchSizes;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Callers waiting for the next batch by post id, guarded by lock. Each new batch gets a new generation so a late
+    // window timer cannot flush the batch after the one it was started for.
+    private Map<Long, List<CompletableFuture<AuditionPost>>> pending = new LinkedHashMap<>();
+    private long generation;
+
+    public PostBatchLoader(final AuditionApiProperties apiConfig, final UpstreamAsyncClient asyncClient,
+        final MeterRegistry meterRegistry,
+        @Qualifier(ExecutorConfiguration.UPSTREAM_EXECUTOR) final Executor upstreamExecutor) {
+        this.asyncClient = asyncClient;
+        this.postsUrl = apiConfig.baseUrl() + apiConfig.posts().path();
+        this.maxSize = apiConfig.batch().maxSize();
+        // The shared delay thread of CompletableFuture only hands the flush over to the upstream executor
+        this.windowTimer = CompletableFuture.delayedExecutor(apiConfig.batch().window().toNanos(),
+            TimeUnit.NANOSECONDS, upstreamExecutor);
+        this.batchSizes = DistributionSummary.builder(BATCH_SIZE_METRIC)
+            .description("Distinct post ids per batched upstream lookup")
+            .register(meterRegistry);
+    }
+
+    // Each caller gets its own AuditionPost, as it is free to modify it (e.g. to attach the comments)
+    public CompletableFuture<AuditionPost> load(final long postId) {
+        final CompletableFuture<AuditionPost> result = new CompletableFuture<>();
+        Map<Long, List<CompletableFuture<AuditionPost>>> full = null;
+        long startedGeneration = -1;
+        lock.lock();
+        try {
+            if (pending.isEmpty()) {
+                startedGeneration = generation;
+            }
+            pending.computeIfAbsent(postId, id -> new ArrayList<>(1)).add(result);
+            if (pending.size() >= maxSize) {
+                full = takePending();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (full != null) {
+            dispatch(full);
+        } else if (startedGeneration >= 0) {
+            final long batch = startedGeneration;
+            windowTimer.execute(() -> flush(batch));
+        }
+        return result;
+    }
+
+    private void flush(final long batch) {
+        final Map<Long, List<CompletableFuture<AuditionPost>>> ready;
+        lock.lock();
+        try {
+            if (batch != generation || pending.isEmpty()) {
+                return;
+            }
+            ready = takePending();
+        } finally {
+            lock.unlock();
+        }
+        dispatch(ready);
+    }
+
+    private Map<Long, List<CompletableFuture<AuditionPost>>> takePending() {
+        final Map<Long, List<CompletableFuture<AuditionPost>>> taken = pending;
+        pending = new LinkedHashMap<>();
+        generation++;
+        return taken;
+    }
+
+    private void dispatch(final Map<Long, List<CompletableFuture<AuditionPost>>> batch) {
+        batchSizes.record(batch.size());
+        final CompletableFuture<List<AuditionPost>> call;
+        try {
+            call = batch.size() == 1 ? getOne(batch.keySet().iterator().next()) : getAll(batch.keySet());
+        } catch (final RuntimeException exception) {
+            // Thrown before any future existed, the callers would otherwise wait until their request times out
+            fail(batch, exception);
+            return;
+        }
+        cancelWithCallers(batch, call);
+        call.whenComplete((posts, failure) -> {
+            if (failure != null) {
+                fail(batch, failure instanceof CompletionException ? failure.getCause() : failure);
+                return;
+            }
+            final Map<Long, AuditionPost> postsById = new HashMap<>();
+            for (final AuditionPost post : posts) {
+                postsById.putIfAbsent((long) post.getId(), post);
+            }
+            batch.forEach((postId, callers) -> complete(postId, postsById.get(postId), callers));
+        });
+    }
+
+    private CompletableFuture<List<AuditionPost>> getOne(final long postId) {
+        final CompletableFuture<AuditionPost> post = asyncClient.get(postsUrl + "/" + postId, AuditionPost.class);
+        return FutureUtils.cancelling(post.thenApply(List::of), post);
+    }
+
+    private CompletableFuture<List<AuditionPost>> getAll(final Set<Long> postIds) {
+        final String url = postsUrl + postIds.stream()
+            .map(id -> "id=" + id)
+            .collect(Collectors.joining("&", "?", ""));
+        return asyncClient.getList(url, AuditionPost.class);
+    }
+
+    private static void fail(final Map<Long, List<CompletableFuture<AuditionPost>>> batch, final Throwable failure) {
+        batch.values().forEach(callers -> callers.forEach(caller -> caller.completeExceptionally(failure)));
+    }
+
+    // The upstream call is shared by the whole batch, so it is only cancelled once every caller has cancelled
+    private static void cancelWithCallers(final Map<Long, List<CompletableFuture<AuditionPost>>> batch,
+        final CompletableFuture<?> call) {
+        final List<CompletableFuture<AuditionPost>> callers = batch.values().stream().flatMap(List::stream).toList();
+        final AtomicInteger remaining = new AtomicInteger(callers.size());
+        for (final CompletableFuture<AuditionPost> caller : callers) {
+            caller.whenComplete((post, failure) -> {
+                if (caller.isCancelled() && remaining.decrementAndGet() == 0) {
+                    call.cancel(false);
+                }
+            });
+        }
+    }
+
+    private static void complete(final long postId, final AuditionPost post,
+        final List<CompletableFuture<AuditionPost>> callers) {
+        for (final CompletableFuture<AuditionPost> caller : callers) {
+            if (post == null) {
+                caller.completeExceptionally(HttpClientErrorException.create("404 Not Found: post " + postId
+                    + " is not in the batch result", HttpStatus.NOT_FOUND, HttpStatus.NOT_FOUND.getReasonPhrase(),
+                    null, null, null));
+            } else {
+                caller.complete(copy(post));
+            }
+        }
+    }
+
+    private static AuditionPost copy(final AuditionPost post) {
+        final AuditionPost copy = new AuditionPost();
+        copy.setId(post.getId());
+        copy.setUserId(post.getUserId());
+        copy.setTitle(post.getTitle());
+        copy.setBody(post.getBody());
+        copy.setComments(post.getComments());
+        return copy;
+    }
+}
@@ -0,0 +1,130 @@
+package com.audition.integration;
+
+import com.audition.common.concurrent.FutureUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/*
+ * Single-flight for upstream calls. Concurrent callers asking for the same key (the upstream URL) share one
+ * in-flight call and all of them get its result or its exception. The key is released as soon as the call finishes,
+ * so nothing is cached here. An async call is cancelled once every caller sharing it has cancelled its future.
+ */
+
+@Component
+public class RequestCoalescer {
+
+    static final String CALLS_METRIC = "audition.upstream.calls";
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final Counter issuedCalls;
+    private final Counter coalescedCalls;
+
+    public RequestCoalescer(final MeterRegistry meterRegistry) {
+        this.issuedCalls = Counter.builder(CALLS_METRIC)
+            .tag("result", "issued")
+            .description("Upstream calls actually sent")
+            .register(meterRegistry);
+        this.coalescedCalls = Counter.builder(CALLS_METRIC)
+            .tag("result", "coalesced")
+            .description("Upstream calls served by joining an identical call already in flight")
+            .register(meterRegistry);
+    }
+
+    // The result is shared between all the callers of a key, so it must not be modified by any of them.
+    @SuppressWarnings("unchecked")
+    public <T> T execute(final String key, final Supplier<T> upstreamCall) {
+        final Flight flight = new Flight();
+        final Flight existing = join(key, flight);
+        if (existing != null) {
+            coalescedCalls.increment();
+            return (T) FutureUtils.join(existing.result);
+        }
+
+        issuedCalls.increment();
+        try {
+            final T result = upstreamCall.get();
+            flight.result.complete(result);
+            return result;
+        } catch (final RuntimeException exception) {
+            flight.result.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    // Non-blocking variant sharing the same in-flight calls. Every caller gets a dependent future, so none of them can
+    // complete the shared call, and the call is only cancelled once all of them have cancelled theirs.
+    public <T> CompletableFuture<T> executeAsync(final String key, final Supplier<CompletableFuture<T>> upstreamCall) {
+        final Flight flight = new Flight();
+        final Flight existing = join(key, flight);
+        if (existing != null) {
+            coalescedCalls.increment();
+            return existing.subscribe(key);
+        }
+
+        issuedCalls.increment();
+        final CompletableFuture<T> started;
+        try {
+            started = upstreamCall.get();
+        } catch (final RuntimeException exception) {
+            inFlight.remove(key, flight);
+            flight.result.completeExceptionally(exception);
+            throw exception;
+        }
+        flight.source = started;
+        started.whenComplete((result, exception) -> {
+            inFlight.remove(key, flight);
+            if (exception == null) {
+                flight.result.complete(result);
+            } else {
+                flight.result.completeExceptionally(exception);
+            }
+        });
+        return flight.subscribe(key);
+    }
+
+    // The call in flight for the key, joined, or null when the given flight was registered for the caller to start.
+    // A call all of whose callers have cancelled is not joined anymore.
+    private Flight join(final String key, final Flight flight) {
+        while (true) {
+            final Flight existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                return null;
+            }
+            if (existing.subscribers.getAndUpdate(count -> count == 0 ? 0 : count + 1) > 0) {
+                return existing;
+            }
+            inFlight.remove(key, existing);
+        }
+    }
+
+    // One shared call, counting the callers which have not cancelled yet. The starter is counted from the beginning.
+    private final class Flight {
+
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private final AtomicInteger subscribers = new AtomicInteger(1);
+        private volatile CompletableFuture<?> source;
+
+        @SuppressWarnings("unchecked")
+        <T> CompletableFuture<T> subscribe(final String key) {
+            final CompletableFuture<T> subscriber = result.thenApply(value -> (T) value);
+            subscriber.whenComplete((value, failure) -> {
+                if (subscriber.isCancelled() && subscribers.decrementAndGet() == 0) {
+                    inFlight.remove(key, this);
+                    final CompletableFuture<?> call = source;
+                    if (call != null) {
+                        call.cancel(false);
+                    }
+                }
+            });
+            return subscriber;
+        }
+    }
+}
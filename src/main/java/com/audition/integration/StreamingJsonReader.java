@@ -0,0 +1,66 @@
+package com.audition.integration;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+
+/*
+ * Reads the upstream JSON arrays straight from the response stream one element at a time,
+ * so a full payload is never held as a byte[] or as an intermediate array before it reaches the target collection.
+ */
+
+@Component
+@RequiredArgsConstructor
+public class StreamingJsonReader {
+
+    private static final RequestCallback ACCEPT_JSON = request ->
+        request.getHeaders().setAccept(List.of(MediaType.APPLICATION_JSON));
+
+    final ObjectMapper objectMapper;
+
+    // Request callback to ask upstream for JSON, as RestTemplate.execute does not add the Accept header by itself
+    public RequestCallback acceptJson() {
+        return ACCEPT_JSON;
+    }
+
+    public <T> ResponseExtractor<List<T>> listExtractor(final Class<T> elementType) {
+        return response -> readList(response.getBody(), elementType);
+    }
+
+    public <T> List<T> readList(final InputStream body, final Class<T> elementType) throws IOException {
+        final List<T> elements = new ArrayList<>();
+        forEach(body, elementType, elements::add);
+        return elements;
+    }
+
+    // Hands every element of the JSON array over to the consumer as soon as it is parsed. Null elements are skipped.
+    public <T> void forEach(final InputStream body, final Class<T> elementType, final Consumer<? super T> consumer)
+        throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw MismatchedInputException.from(parser, elementType,
+                    "Expected a JSON array of " + elementType.getSimpleName());
+            }
+            final ObjectReader reader = objectMapper.readerFor(elementType);
+            JsonToken token = parser.nextToken();
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (token != JsonToken.VALUE_NULL) {
+                    consumer.accept(reader.readValue(parser));
+                }
+                token = parser.nextToken();
+            }
+        }
+    }
+}
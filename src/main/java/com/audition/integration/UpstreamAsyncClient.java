@@ -0,0 +1,246 @@
+package com.audition.integration;
+
+import com.audition.common.concurrent.FutureUtils;
+import com.audition.common.exception.SystemException;
+import com.audition.configuration.ExecutorConfiguration;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+/*
+ * Non-blocking GET of upstream JSON. The returned futures complete on the I/O threads of the async HTTP client,
+ * with the same exceptions the RestTemplate throws for an error status or an I/O error. Every call is a GET, so a slow
+ * one may be hedged with a second one, see UpstreamHedging, and one that failed on the way may be retried, see
+ * UpstreamRetry.
+ */
+
+@Component
+@RequiredArgsConstructor
+public class UpstreamAsyncClient {
+
+    final CloseableHttpAsyncClient upstreamAsyncHttpClient;
+
+    final ObjectMapper objectMapper;
+
+    final UpstreamGuards upstreamGuards;
+
+    final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    final UpstreamHedging upstreamHedging;
+
+    final UpstreamRetry upstreamRetry;
+
+    // Runs the delayed hedges and retries, the shared delay thread of CompletableFuture only hands them over
+    @Qualifier(ExecutorConfiguration.UPSTREAM_EXECUTOR)
+    final Executor upstreamExecutor;
+
+    public <T> CompletableFuture<T> get(final String url, final Class<T> type) {
+        final CompletableFuture<List<T>> values = execute(url, type, false);
+        return FutureUtils.cancelling(values.thenApply(list -> list.get(0)), values);
+    }
+
+    // Elements are bound while the array is still arriving, the list is read-only as it may be shared by callers.
+    public <T> CompletableFuture<List<T>> getList(final String url, final Class<T> elementType) {
+        final CompletableFuture<List<T>> values = execute(url, elementType, true);
+        return FutureUtils.cancelling(values.thenApply(Collections::unmodifiableList), values);
+    }
+
+    // Upstream JSON for the passthrough endpoints, handed over once the status and content type are checked. The body
+    // is read while the passthrough writes it out, so the call is not retried once the body has started.
+    public CompletableFuture<JsonPassthrough> getJson(final String url) {
+        final CompletableFuture<JsonPassthrough> received = retried(url,
+            result -> new PassthroughResponseConsumer(objectMapper.getFactory(), result));
+        return FutureUtils.cancelling(received.exceptionally(failure -> {
+            throw toRestClientException(url, failure);
+        }), received);
+    }
+
+    // Cancelling the returned future, or the stages the public methods derive from it, aborts the upstream exchange
+    private <T> CompletableFuture<List<T>> execute(final String url, final Class<T> type, final boolean array) {
+        final CompletableFuture<List<T>> received = this.<List<T>>retried(url,
+            result -> new JsonResponseConsumer<>(objectMapper, type, array, result));
+        return FutureUtils.cancelling(received.exceptionally(failure -> {
+            throw toRestClientException(url, failure);
+        }), received);
+    }
+
+    // Transient failures are retried after a jittered backoff, see UpstreamRetry. The deadline of the request is read
+    // here, on the thread of the caller, as the retries are started from the I/O threads.
+    private <R> CompletableFuture<R> retried(final String url,
+        final Function<CompletableFuture<R>, AsyncResponseConsumer<R>> consumers) {
+        final long deadlineNanos = upstreamRetry.deadlineNanos();
+        upstreamRetry.recordCall();
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        attempt(url, consumers, 1, deadlineNanos, result);
+        return result;
+    }
+
+    private <R> void attempt(final String url, final Function<CompletableFuture<R>, AsyncResponseConsumer<R>> consumers,
+        final int attempt, final long deadlineNanos, final CompletableFuture<R> result) {
+        final CompletableFuture<R> call = hedged(url, consumers);
+        result.whenComplete((value, failure) -> call.cancel(false));
+        call.whenComplete((value, failure) -> {
+            if (failure == null) {
+                if (!result.complete(value)) {
+                    discard(value);
+                }
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            final long backoffNanos = upstreamRetry.backoffNanos(attempt, failure, deadlineNanos);
+            if (backoffNanos < 0) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            CompletableFuture.delayedExecutor(backoffNanos, TimeUnit.NANOSECONDS, upstreamExecutor).execute(() -> {
+                if (!result.isDone()) {
+                    attempt(url, consumers, attempt + 1, deadlineNanos, result);
+                }
+            });
+        });
+    }
+
+    // A call still unanswered after the hedge delay of its endpoint is sent again when the hedge budget allows it.
+    // The first answer wins and the other call is cancelled, a failure only wins once no other call is left.
+    private <R> CompletableFuture<R> hedged(final String url,
+        final Function<CompletableFuture<R>, AsyncResponseConsumer<R>> consumers) {
+        final String endpoint = upstreamGuards.endpointOf(URI.create(url));
+        final long delayNanos = upstreamHedging.hedgeDelayNanos(endpoint);
+        final long startedNanos = System.nanoTime();
+        final CompletableFuture<R> primary = send(url, consumers);
+        primary.whenComplete((value, failure) -> {
+            if (failure == null) {
+                upstreamHedging.record(endpoint, System.nanoTime() - startedNanos);
+            }
+        });
+        if (delayNanos < 0) {
+            return primary;
+        }
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        race(primary, result, pending, null);
+        CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, upstreamExecutor).execute(() -> {
+            // No hedge once a failure has ended the race
+            if (!result.isDone() && upstreamHedging.tryHedge(endpoint)
+                && pending.getAndUpdate(calls -> calls == 0 ? 0 : calls + 1) > 0) {
+                race(send(url, consumers), result, pending, endpoint);
+            }
+        });
+        return result;
+    }
+
+    private <R> void race(final CompletableFuture<R> call, final CompletableFuture<R> result,
+        final AtomicInteger pending, final String hedgedEndpoint) {
+        call.whenComplete((value, failure) -> {
+            if (failure == null) {
+                if (!result.complete(value)) {
+                    discard(value);
+                } else if (hedgedEndpoint != null) {
+                    upstreamHedging.won(hedgedEndpoint);
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(failure);
+            }
+        });
+        result.whenComplete((value, failure) -> call.cancel(false));
+    }
+
+    // The consumer completes the result, the callback only reports the failures it never saw. The call is complete
+    // for the concurrency limit, its circuit breaker and its bulkhead once the whole body is in, or for a passthrough
+    // once its head is in, the body then only holds its pooled connection. Cancelling the result aborts the exchange.
+    private <R> CompletableFuture<R> send(final String url,
+        final Function<CompletableFuture<R>, AsyncResponseConsumer<R>> consumers) {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        final AdaptiveConcurrencyLimiter.Permit permit;
+        final UpstreamGuards.Call call;
+        try {
+            permit = concurrencyLimiter.acquire();
+        } catch (final SystemException rejected) {
+            return CompletableFuture.failedFuture(rejected);
+        }
+        try {
+            call = upstreamGuards.acquire(URI.create(url));
+        } catch (final SystemException rejected) {
+            permit.complete(rejected);
+            return CompletableFuture.failedFuture(rejected);
+        }
+        result.whenComplete((value, failure) -> {
+            call.complete(failure);
+            permit.complete(failure);
+        });
+        final Future<R> exchange;
+        try {
+            exchange = upstreamAsyncHttpClient.execute(
+                AsyncRequestBuilder.get(url).addHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE).build(),
+                consumers.apply(result),
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(final R value) {
+                        // The consumer has already completed the result
+                    }
+
+                    @Override
+                    public void failed(final Exception exception) {
+                        result.completeExceptionally(exception);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        result.cancel(false);
+                    }
+                });
+        } catch (final RuntimeException exception) {
+            // Not sent at all, e.g. the client is shut down. Failing the result releases the call and the permit.
+            result.completeExceptionally(exception);
+            return result;
+        }
+        result.whenComplete((value, failure) -> {
+            if (failure instanceof CancellationException) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // A passthrough that lost a hedge race, or came in after its caller gave up, is closed to abort its exchange
+    private static void discard(final Object value) {
+        if (value instanceof JsonPassthrough passthrough) {
+            passthrough.close();
+        }
+    }
+
+    // An I/O or parsing error surfaces as a ResourceAccessException, like from RestTemplate.execute
+    private static RuntimeException toRestClientException(final String url, final Throwable failure) {
+        final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        if (cause instanceof IOException exception) {
+            return new ResourceAccessException("I/O error on GET request for \"" + url + "\": "
+                + exception.getMessage(), exception);
+        }
+        if (cause instanceof RuntimeException exception) {
+            return exception;
+        }
+        return new CompletionException(cause);
+    }
+}
@@ -0,0 +1,212 @@
+package com.audition.integration;
+
+import com.audition.common.exception.SystemException;
+import com.audition.configuration.AuditionApiProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+/*
+ * Circuit breaker and semaphore bulkhead of each upstream endpoint, so a failing or slow endpoint fails fast with 503
+ * instead of holding threads and pooled connections the other endpoints need. The endpoints are posts (the post
+ * list, its pages and searches), post (one post by id), posts-batch (the /posts?id=..&id=.. queries of
+ * PostBatchLoader, slower than one post and failing apart from it) and comments. Every upstream call, blocking or
+ * async, asks for a Call before it is sent and completes it with its outcome. The circuit states are exported as the
+ * audition.upstream.circuit.state gauge (0 closed, 1 half-open, 2 open), read from the breaker on each scrape, and the
+ * outcomes as the audition.upstream.guard.calls counter, both tagged by endpoint.
+ */
+
+@Component
+public class UpstreamGuards {
+
+    static final String POSTS = "posts";
+    static final String POST = "post";
+    static final String POSTS_BATCH = "posts-batch";
+    static final String COMMENTS = "comments";
+    static final List<String> ENDPOINTS = List.of(POSTS, POST, POSTS_BATCH, COMMENTS);
+    static final String STATE_METRIC = "audition.upstream.circuit.state";
+    static final String CALLS_METRIC = "audition.upstream.guard.calls";
+
+    private final String postsUrl;
+    private final String commentsUrl;
+    private final boolean breakerEnabled;
+    private final boolean bulkheadEnabled;
+    private final long openSeconds;
+    private final Map<String, Guard> guards = new HashMap<>();
+
+    public UpstreamGuards(final AuditionApiProperties apiConfig, final MeterRegistry meterRegistry) {
+        this.postsUrl = apiConfig.baseUrl() + apiConfig.posts().path();
+        this.commentsUrl = apiConfig.baseUrl() + apiConfig.comments().path();
+        this.breakerEnabled = apiConfig.circuitBreaker().enabled();
+        this.bulkheadEnabled = apiConfig.bulkhead().enabled();
+        this.openSeconds = apiConfig.circuitBreaker().openDuration().toSeconds();
+        final int maxConcurrentCalls = Objects.requireNonNullElseGet(apiConfig.bulkhead().maxConcurrentCalls(),
+            () -> routeBudget(apiConfig.pool()));
+        for (final String endpoint : ENDPOINTS) {
+            guards.put(endpoint, new Guard(endpoint, apiConfig, maxConcurrentCalls, meterRegistry));
+        }
+    }
+
+    // Connections the two pools hold to the upstream route together, each pool keeps at least one of max-per-route
+    static int routeBudget(final AuditionApiProperties.Pool pool) {
+        return pool.asyncPart(pool.maxPerRoute()) + pool.blockingPart(pool.maxPerRoute());
+    }
+
+    // Permit to send one call to the upstream URL, a rejected call fails with 503 before anything is sent
+    public Call acquire(final URI uri) {
+        final Guard guard = guards.get(endpointOf(uri));
+        if (bulkheadEnabled && !guard.bulkhead.tryAcquire()) {
+            guard.bulkheadFull.increment();
+            throw new SystemException("Too many calls to the upstream " + guard.endpoint
+                + " endpoint are in flight, try again shortly.", "Service Unavailable",
+                HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+        final long permit = breakerEnabled ? guard.breaker.tryAcquire() : CircuitBreaker.NO_PERMIT;
+        if (permit == CircuitBreaker.REJECTED) {
+            guard.release(bulkheadEnabled);
+            guard.circuitOpen.increment();
+            throw new SystemException("The upstream " + guard.endpoint + " endpoint is failing, its calls are "
+                + "stopped for " + openSeconds + " s.", "Service Unavailable", HttpStatus.SERVICE_UNAVAILABLE.value());
+        }
+        return new Call(guard, permit, System.nanoTime());
+    }
+
+    public CircuitBreaker.State stateOf(final String endpoint) {
+        return guards.get(endpoint).breaker.state();
+    }
+
+    // The upstream endpoint a URL belongs to, from its path and its id query
+    String endpointOf(final URI uri) {
+        final String url = uri.toString();
+        final String path = uri.getPath() == null ? "" : uri.getPath();
+        if (url.startsWith(commentsUrl) || path.endsWith("/comments")) {
+            return COMMENTS;
+        }
+        if (url.startsWith(postsUrl + "/")) {
+            return POST;
+        }
+        if (uri.getRawQuery() != null && uri.getRawQuery().startsWith("id=")) {
+            return POSTS_BATCH;
+        }
+        return POSTS;
+    }
+
+    static Throwable unwrap(final Throwable failure) {
+        return failure instanceof CompletionException ? failure.getCause() : failure;
+    }
+
+    // Whether an upstream call failed. A 4xx answer, but 429, comes from a healthy upstream.
+    static boolean isFailure(final Throwable cause) {
+        return cause != null && (!(cause instanceof HttpClientErrorException)
+            || cause instanceof HttpClientErrorException.TooManyRequests);
+    }
+
+    static boolean isFailure(final HttpStatusCode status) {
+        return status.is5xxServerError() || status.value() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    // One call let through, completed exactly once with its outcome
+    public final class Call {
+
+        private final Guard guard;
+        private final long permit;
+        private final long startedNanos;
+
+        private Call(final Guard guard, final long permit, final long startedNanos) {
+            this.guard = guard;
+            this.permit = permit;
+            this.startedNanos = startedNanos;
+        }
+
+        // Outcome of a future, null on success. A call given up by its caller has no outcome.
+        public void complete(final Throwable failure) {
+            final Throwable cause = unwrap(failure);
+            if (cause instanceof CancellationException) {
+                guard.release(bulkheadEnabled);
+                if (breakerEnabled) {
+                    guard.breaker.release(permit);
+                }
+                return;
+            }
+            record(isFailure(cause));
+        }
+
+        // Outcome of a response, before the RestTemplate turns its status into an exception
+        public void complete(final HttpStatusCode status) {
+            record(isFailure(status));
+        }
+
+        private void record(final boolean failed) {
+            final long durationNanos = System.nanoTime() - startedNanos;
+            guard.release(bulkheadEnabled);
+            if (breakerEnabled) {
+                guard.breaker.record(permit, durationNanos, failed);
+            }
+            guard.outcome(failed, durationNanos).increment();
+        }
+    }
+
+    private static final class Guard {
+
+        private final String endpoint;
+        private final CircuitBreaker breaker;
+        private final Semaphore bulkhead;
+        private final long slowCallNanos;
+        private final Counter success;
+        private final Counter slow;
+        private final Counter failure;
+        private final Counter circuitOpen;
+        private final Counter bulkheadFull;
+
+        Guard(final String endpoint, final AuditionApiProperties apiConfig, final int maxConcurrentCalls,
+            final MeterRegistry meterRegistry) {
+            this.endpoint = endpoint;
+            this.breaker = new CircuitBreaker(apiConfig.circuitBreaker());
+            this.bulkhead = new Semaphore(maxConcurrentCalls);
+            this.slowCallNanos = apiConfig.circuitBreaker().slowCallDuration().toNanos();
+            this.success = counter(meterRegistry, "success", "Upstream calls answered in time");
+            this.slow = counter(meterRegistry, "slow", "Upstream calls answered slower than the slow call duration");
+            this.failure = counter(meterRegistry, "failure", "Upstream calls failed with an I/O error or a 5xx");
+            this.circuitOpen = counter(meterRegistry, "circuit-open", "Calls rejected as the circuit was open");
+            this.bulkheadFull = counter(meterRegistry, "bulkhead-full",
+                "Calls rejected as the endpoint had all its concurrent calls in flight");
+            Gauge.builder(STATE_METRIC, breaker, circuit -> circuit.state().ordinal())
+                .tag("endpoint", endpoint)
+                .description("Circuit state of the upstream endpoint, 0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+        }
+
+        private Counter counter(final MeterRegistry meterRegistry, final String outcome, final String description) {
+            return Counter.builder(CALLS_METRIC)
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .description(description)
+                .register(meterRegistry);
+        }
+
+        void release(final boolean bulkheadEnabled) {
+            if (bulkheadEnabled) {
+                bulkhead.release();
+            }
+        }
+
+        Counter outcome(final boolean failed, final long durationNanos) {
+            if (failed) {
+                return failure;
+            }
+            return durationNanos >= slowCallNanos ? slow : success;
+        }
+    }
+}
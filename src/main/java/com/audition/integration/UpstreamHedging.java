@@ -0,0 +1,128 @@
+package com.audition.integration;
+
+import com.audition.configuration.AuditionApiProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.stereotype.Component;
+
+/*
+ * When to hedge an upstream GET and whether it may be. Each endpoint (see UpstreamGuards) keeps the latencies of its
+ * last audition.api.hedging.window calls, a call still unanswered after their percentile latency is hedged. Every
+ * call earns budget percent of a hedge and every hedge spends a whole one, so hedges stay within that share of the
+ * calls, with a small burst allowance. The hedges are counted in audition.upstream.hedges, tagged by endpoint and
+ * outcome sent, won or over-budget.
+ */
+
+@Component
+public class UpstreamHedging {
+
+    static final String HEDGES_METRIC = "audition.upstream.hedges";
+
+    // At most BURST hedges are saved up
+    private static final int BURST = 10;
+
+    private final boolean enabled;
+    private final CallBudget budget;
+    private final Map<String, Endpoint> endpoints = new HashMap<>();
+
+    public UpstreamHedging(final AuditionApiProperties apiConfig, final MeterRegistry meterRegistry) {
+        final AuditionApiProperties.Hedging config = apiConfig.hedging();
+        this.enabled = config.enabled();
+        this.budget = new CallBudget(config.budget(), BURST, false);
+        for (final String endpoint : UpstreamGuards.ENDPOINTS) {
+            endpoints.put(endpoint, new Endpoint(endpoint, config, meterRegistry));
+        }
+    }
+
+    // Delay after which a call to the endpoint is hedged, -1 for none. Every call earns its share of the budget here.
+    public long hedgeDelayNanos(final String endpoint) {
+        if (!enabled) {
+            return -1;
+        }
+        budget.earn();
+        return endpoints.get(endpoint).delayNanos;
+    }
+
+    // Latency of a call answered successfully. Failed and cancelled calls are left out, the time they took says
+    // nothing of how long an answer takes.
+    public void record(final String endpoint, final long latencyNanos) {
+        if (enabled) {
+            endpoints.get(endpoint).record(latencyNanos);
+        }
+    }
+
+    // Whether a hedge may be sent now, which spends its budget
+    public boolean tryHedge(final String endpoint) {
+        final Endpoint target = endpoints.get(endpoint);
+        if (!budget.trySpend()) {
+            target.overBudget.increment();
+            return false;
+        }
+        target.sent.increment();
+        return true;
+    }
+
+    public void won(final String endpoint) {
+        endpoints.get(endpoint).won.increment();
+    }
+
+    private static final class Endpoint {
+
+        private final int percentile;
+        private final long minDelayNanos;
+        private final int refreshEvery;
+        private final Counter sent;
+        private final Counter won;
+        private final Counter overBudget;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // Ring of the last latencies, guarded by lock. The delay is worked out again every refreshEvery calls.
+        private final long[] latencies;
+        private int next;
+        private int recorded;
+        private int sinceRefresh;
+        private volatile long delayNanos = -1;
+
+        Endpoint(final String endpoint, final AuditionApiProperties.Hedging config, final MeterRegistry meterRegistry) {
+            this.percentile = config.percentile();
+            this.minDelayNanos = config.minDelay().toNanos();
+            this.latencies = new long[config.window()];
+            this.refreshEvery = Math.max(1, config.window() / 10);
+            this.sent = counter(meterRegistry, endpoint, "sent", "Hedged upstream calls sent");
+            this.won = counter(meterRegistry, endpoint, "won", "Hedged upstream calls answered first");
+            this.overBudget = counter(meterRegistry, endpoint, "over-budget",
+                "Hedged upstream calls not sent as the hedge budget was spent");
+        }
+
+        private static Counter counter(final MeterRegistry meterRegistry, final String endpoint,
+            final String outcome, final String description) {
+            return Counter.builder(HEDGES_METRIC)
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .description(description)
+                .register(meterRegistry);
+        }
+
+        void record(final long latencyNanos) {
+            lock.lock();
+            try {
+                latencies[next] = latencyNanos;
+                next = (next + 1) % latencies.length;
+                recorded = Math.min(recorded + 1, latencies.length);
+                if (recorded * 2 >= latencies.length && ++sinceRefresh >= refreshEvery) {
+                    sinceRefresh = 0;
+                    final long[] sorted = Arrays.copyOf(latencies, recorded);
+                    Arrays.sort(sorted);
+                    final int rank = (int) Math.ceil(percentile / 100.0 * recorded);
+                    delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, rank - 1)]);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
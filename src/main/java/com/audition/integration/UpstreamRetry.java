@@ -0,0 +1,138 @@
+package com.audition.integration;
+
+import com.audition.common.deadline.RequestDeadline;
+import com.audition.configuration.AuditionApiProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+/*
+ * Retries of the upstream calls, all of them idempotent GETs, failed with an I/O error, a 5xx or a 429. Attempt n+1
+ * waits a random backoff between 0 and initial-backoff * 2^(n-1), capped at max-backoff (full jitter), so the
+ * retries of many callers spread out instead of hitting the upstream in waves. Every call earns budget percent of a
+ * retry and every retry spends a whole one, so the retries cannot multiply the load of an outage. A retry whose
+ * backoff would end past the deadline of the request, see RequestDeadline, is not made. A call started outside of a
+ * request deadline, as the blocking ones are, gets the default audition.api.async.timeout from its start as its
+ * deadline, so no caller sleeps through unbounded backoffs. Local rejections (open circuit, full bulkhead,
+ * concurrency limit), a malformed body and the other 4xx answers are final. Counted in audition.upstream.retries by
+ * outcome retried, exhausted, over-budget or past-deadline.
+ */
+
+@Component
+public class UpstreamRetry {
+
+    static final String RETRIES_METRIC = "audition.upstream.retries";
+
+    // At most BURST retries are saved up, the budget starts full so the first calls after startup can be retried
+    private static final int BURST = 10;
+    // Keeps initial-backoff * 2^(n-1) within a long
+    private static final int MAX_DOUBLINGS = 20;
+
+    private final boolean enabled;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long defaultTimeoutNanos;
+    private final CallBudget budget;
+    private final Counter retried;
+    private final Counter exhausted;
+    private final Counter overBudget;
+    private final Counter pastDeadline;
+
+    public UpstreamRetry(final AuditionApiProperties apiConfig, final MeterRegistry meterRegistry) {
+        final AuditionApiProperties.Retry config = apiConfig.retry();
+        this.enabled = config.enabled();
+        this.maxAttempts = config.maxAttempts();
+        this.initialBackoffNanos = config.initialBackoff().toNanos();
+        this.maxBackoffNanos = config.maxBackoff().toNanos();
+        this.defaultTimeoutNanos = apiConfig.async().timeout().toNanos();
+        this.budget = new CallBudget(config.budget(), BURST, true);
+        this.retried = counter(meterRegistry, "retried", "Upstream calls retried");
+        this.exhausted = counter(meterRegistry, "exhausted", "Upstream calls failed after their last attempt");
+        this.overBudget = counter(meterRegistry, "over-budget",
+            "Upstream calls not retried as the retry budget was spent");
+        this.pastDeadline = counter(meterRegistry, "past-deadline",
+            "Upstream calls not retried as the backoff would end past the deadline of the request");
+    }
+
+    private static Counter counter(final MeterRegistry meterRegistry, final String outcome, final String description) {
+        return Counter.builder(RETRIES_METRIC)
+            .tag("outcome", outcome)
+            .description(description)
+            .register(meterRegistry);
+    }
+
+    // Blocking call with its retries, the backoff is slept on the calling thread
+    public <T> T execute(final Supplier<T> call) {
+        final long deadlineNanos = deadlineNanos();
+        recordCall();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.get();
+            } catch (final RuntimeException failure) {
+                final long backoffNanos = backoffNanos(attempt, failure, deadlineNanos);
+                if (backoffNanos < 0) {
+                    throw failure;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.sleep(backoffNanos);
+                } catch (final InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw failure;
+                }
+            }
+        }
+    }
+
+    // Deadline of a call started now, the one of the request or else the default timeout from now
+    long deadlineNanos() {
+        final long deadlineNanos = RequestDeadline.nanos();
+        return deadlineNanos == RequestDeadline.NONE ? System.nanoTime() + defaultTimeoutNanos : deadlineNanos;
+    }
+
+    // Every first attempt earns its share of the retry budget
+    void recordCall() {
+        if (enabled) {
+            budget.earn();
+        }
+    }
+
+    // Backoff before the attempt after the given one failed, -1 when the failure is final
+    long backoffNanos(final int attempt, final Throwable failure, final long deadlineNanos) {
+        if (!enabled || !isRetryable(UpstreamGuards.unwrap(failure))) {
+            return -1;
+        }
+        if (attempt >= maxAttempts) {
+            exhausted.increment();
+            return -1;
+        }
+        final long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, MAX_DOUBLINGS));
+        final long backoffNanos = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        // NONE is no point in time, the difference to it overflows whenever nanoTime is negative
+        if (deadlineNanos != RequestDeadline.NONE && deadlineNanos - System.nanoTime() <= backoffNanos) {
+            pastDeadline.increment();
+            return -1;
+        }
+        if (!budget.trySpend()) {
+            overBudget.increment();
+            return -1;
+        }
+        retried.increment();
+        return backoffNanos;
+    }
+
+    static boolean isRetryable(final Throwable failure) {
+        final Throwable cause = failure instanceof ResourceAccessException ? failure.getCause() : failure;
+        return cause instanceof IOException && !(cause instanceof JsonProcessingException)
+            || cause instanceof HttpServerErrorException
+            || cause instanceof HttpClientErrorException.TooManyRequests;
+    }
+}
@@ -0,0 +1,68 @@
+package com.audition.interceptor;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+
+/*
+ * Response wrapper which lets the logging interceptor look at the first bytes of a streamed body.
+ * Only the peeked prefix is buffered, the rest of the body is still read straight from the socket by the caller.
+ */
+
+class BodyPrefixClientHttpResponse implements ClientHttpResponse {
+
+    private final ClientHttpResponse delegate;
+    private final int maxPrefixBytes;
+    private BufferedInputStream body;
+
+    BodyPrefixClientHttpResponse(final ClientHttpResponse delegate, final int maxPrefixBytes) {
+        this.delegate = delegate;
+        this.maxPrefixBytes = maxPrefixBytes;
+    }
+
+    // Reads up to maxPrefixBytes + 1 bytes and rewinds, so a result longer than maxPrefixBytes means a truncated body.
+    byte[] peekPrefix() throws IOException {
+        final BufferedInputStream stream = (BufferedInputStream) getBody();
+        stream.mark(maxPrefixBytes + 1);
+        final byte[] prefix = stream.readNBytes(maxPrefixBytes + 1);
+        stream.reset();
+        return prefix;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+        if (body == null) {
+            body = new BufferedInputStream(delegate.getBody(), maxPrefixBytes + 1);
+        }
+        return body;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+        return delegate.getStatusCode();
+    }
+
+    @Override
+    @Deprecated
+    public int getRawStatusCode() throws IOException {
+        return delegate.getStatusCode().value();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+        return delegate.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
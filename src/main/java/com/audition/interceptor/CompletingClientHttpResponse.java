@@ -0,0 +1,124 @@
+package com.audition.interceptor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+
+/*
+ * Response wrapper which tells an interceptor when the call is over: once the body has been read to its end, or failed
+ * to be read, or at the latest when the response is closed. The guards and the concurrency limit are held until then,
+ * as the body is still streamed from the upstream connection after the status is in.
+ */
+
+class CompletingClientHttpResponse implements ClientHttpResponse {
+
+    private final ClientHttpResponse delegate;
+    private final HttpStatusCode status;
+    private final Consumer<HttpStatusCode> completed;
+    private final Consumer<IOException> failed;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private InputStream body;
+
+    CompletingClientHttpResponse(final ClientHttpResponse delegate, final HttpStatusCode status,
+        final Consumer<HttpStatusCode> completed, final Consumer<IOException> failed) {
+        this.delegate = delegate;
+        this.status = status;
+        this.completed = completed;
+        this.failed = failed;
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+        if (body == null) {
+            try {
+                body = new CompletingInputStream(delegate.getBody());
+            } catch (final IOException exception) {
+                fail(exception);
+                throw exception;
+            }
+        }
+        return body;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+        return delegate.getStatusCode();
+    }
+
+    @Override
+    @Deprecated
+    public int getRawStatusCode() throws IOException {
+        return delegate.getStatusCode().value();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+        return delegate.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public void close() {
+        try {
+            delegate.close();
+        } finally {
+            complete();
+        }
+    }
+
+    private void complete() {
+        if (done.compareAndSet(false, true)) {
+            completed.accept(status);
+        }
+    }
+
+    private void fail(final IOException exception) {
+        if (done.compareAndSet(false, true)) {
+            failed.accept(exception);
+        }
+    }
+
+    private final class CompletingInputStream extends FilterInputStream {
+
+        private CompletingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                final int value = super.read();
+                if (value < 0) {
+                    complete();
+                }
+                return value;
+            } catch (final IOException exception) {
+                fail(exception);
+                throw exception;
+            }
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            try {
+                final int count = super.read(buffer, offset, length);
+                if (count < 0) {
+                    complete();
+                }
+                return count;
+            } catch (final IOException exception) {
+                fail(exception);
+                throw exception;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.audition.interceptor;
+
+import com.audition.integration.AdaptiveConcurrencyLimiter;
+import java.io.IOException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/*
+ * Runs every RestTemplate call through the adaptive concurrency limit of the upstream, see AdaptiveConcurrencyLimiter.
+ * A call past the limit throws its 503 SystemException without being sent. The round trip ends once its body has
+ * been read or the response is closed, so a call still streaming its body keeps its permit.
+ */
+
+@RequiredArgsConstructor
+public class ConcurrencyLimitInterceptor implements ClientHttpRequestInterceptor {
+
+    final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Override
+    public ClientHttpResponse intercept(final HttpRequest request, final byte[] body,
+        final ClientHttpRequestExecution execution) throws IOException {
+        final AdaptiveConcurrencyLimiter.Permit permit = concurrencyLimiter.acquire();
+        final ClientHttpResponse response;
+        final HttpStatusCode status;
+        try {
+            response = execution.execute(request, body);
+            status = response.getStatusCode();
+        } catch (final IOException | RuntimeException exception) {
+            permit.complete(exception);
+            throw exception;
+        }
+        return new CompletingClientHttpResponse(response, status, permit::complete, permit::complete);
+    }
+}
@@ -23,6 +23,9 @@ public class RestClientLogInterceptor implements ClientHttpRequestInterceptor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RestClientLogInterceptor.class);
 
+    // Only this much of a response body is buffered for the debug log, the rest is streamed to the caller untouched.
+    public static final int MAX_LOGGED_BODY_BYTES = 2048;
+
     final AuditionLogger auditionLogger;
     final ObjectMapper objectMapper;
 
@@ -58,13 +61,15 @@ public class RestClientLogInterceptor implements ClientHttpRequestInterceptor {
             .append("\nHeaders   :").append(response.getHeaders());
 
         if (LOGGER.isDebugEnabled()) {
-            final byte[] responseBody = response.getBody().readAllBytes();
+            final BodyPrefixClientHttpResponse peekableResponse = new BodyPrefixClientHttpResponse(response,
+                MAX_LOGGED_BODY_BYTES);
+            final byte[] bodyPrefix = peekableResponse.peekPrefix();
             auditionLogger.debug(LOGGER, responseInfo.append("\n    Body: ")
-                .append(getSafeResponseBodyAsString(responseBody)).toString());
-        } else {
-            auditionLogger.info(LOGGER, responseInfo.toString());
+                .append(getSafeResponseBodyAsString(bodyPrefix)).toString());
+            return peekableResponse;
         }
 
+        auditionLogger.info(LOGGER, responseInfo.toString());
         return response;
     }
 
@@ -73,6 +78,16 @@ public class RestClientLogInterceptor implements ClientHttpRequestInterceptor {
             return "<empty>";
         }
 
+        // Body is longer than the logged prefix, a partial JSON cannot be parsed so it is logged as it is. The cut backs
+        // off to the start of a UTF-8 character, so a character split by the limit is left out instead of garbled.
+        if (responseBody.length > MAX_LOGGED_BODY_BYTES) {
+            int end = MAX_LOGGED_BODY_BYTES;
+            while (end > 0 && (responseBody[end] & 0xC0) == 0x80) {
+                end--;
+            }
+            return new String(responseBody, 0, end, StandardCharsets.UTF_8) + "...(truncated)";
+        }
+
         try {
             return objectMapper.readValue(responseBody, Object.class).toString();
         } catch (IOException e) {
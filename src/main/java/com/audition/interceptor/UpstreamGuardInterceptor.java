@@ -0,0 +1,38 @@
+package com.audition.interceptor;
+
+import com.audition.integration.UpstreamGuards;
+import java.io.IOException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+/*
+ * Runs every RestTemplate call through the circuit breaker and bulkhead of its upstream endpoint, see UpstreamGuards.
+ * A rejected call throws its 503 SystemException without being sent. The call is complete once its body has been read
+ * or the response is closed, as the body is streamed to the caller after the status is in.
+ */
+
+@RequiredArgsConstructor
+public class UpstreamGuardInterceptor implements ClientHttpRequestInterceptor {
+
+    final UpstreamGuards upstreamGuards;
+
+    @Override
+    public ClientHttpResponse intercept(final HttpRequest request, final byte[] body,
+        final ClientHttpRequestExecution execution) throws IOException {
+        final UpstreamGuards.Call call = upstreamGuards.acquire(request.getURI());
+        final ClientHttpResponse response;
+        final HttpStatusCode status;
+        try {
+            response = execution.execute(request, body);
+            status = response.getStatusCode();
+        } catch (final IOException | RuntimeException exception) {
+            call.complete(exception);
+            throw exception;
+        }
+        return new CompletingClientHttpResponse(response, status, call::complete, call::complete);
+    }
+}
@@ -1,13 +1,25 @@
 package com.audition.service;
 
+import com.audition.cache.CommentsIndexStore;
+import com.audition.cache.PostSnapshot;
+import com.audition.cache.PostSnapshotStore;
+import com.audition.common.concurrent.FutureUtils;
+import com.audition.common.exception.SystemException;
+import com.audition.filter.PostFilter;
 import com.audition.integration.AuditionIntegrationClient;
+import com.audition.integration.JsonPassthrough;
 import com.audition.model.AuditionComment;
 import com.audition.model.AuditionPost;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 /*
@@ -21,31 +33,135 @@ public class AuditionService {
 
     final AuditionIntegrationClient auditionIntegrationClient;
 
-    // Method to fetch all the POSTs without any conditions
+    final PostSnapshotStore postSnapshotStore;
+
+    final CommentsIndexStore commentsIndexStore;
+
+    // Method to fetch all the POSTs without any conditions, served from the in-memory snapshot when it is enabled. The
+    // snapshot lists them by id, without it they come in the upstream order.
     public List<AuditionPost> getPosts() {
+        if (postSnapshotStore.isEnabled()) {
+            return postSnapshotStore.current().posts();
+        }
         return auditionIntegrationClient.getPosts();
     }
 
-    // Method to fetch all the POSTs with page and no.of records for each page.
+    // Method to fetch all the POSTs with page and no.of records for each page. Without a loaded snapshot the page is
+    // cut by the upstream when push-down is enabled, so only that page is downloaded.
     public List<AuditionPost> getPosts(final int page, final int size) {
+        if (isPushedDown()) {
+            return page <= 0 || size <= 0 ? Collections.emptyList()
+                : auditionIntegrationClient.getPostsPage(page, size);
+        }
         return getPaginatedPosts(getPosts(), page, size);
     }
 
     // Method to fetch all the POSTs with a filter string which will be checked with respective
-    // of title or body of all the posts.
-    public List<AuditionPost> getPostsWithFilter(final String filter, final int page, final int size) {
-        final List<AuditionPost> allPosts = auditionIntegrationClient.getPosts();
-
-        if (filter != null && !filter.isBlank()) {
-            return getPaginatedPosts(allPosts.stream()
-                .filter(post -> post.getTitle().toLowerCase(Locale.ROOT)
-                    .contains(filter.toLowerCase(Locale.ROOT))
-                    ||
-                    post.getBody().toLowerCase(Locale.ROOT).contains(filter.toLowerCase(Locale.ROOT)))
+    // of title or body of all the posts, see PostFilter for the two syntaxes. The filter is answered from the snapshot
+    // index when the snapshot is enabled.
+    public List<AuditionPost> getPostsWithFilter(final PostFilter postFilter, final int page, final int size) {
+        if (isBlank(postFilter)) {
+            return getPosts(page, size);
+        }
+
+        if (isPushedDown()) {
+            // Only the posts containing the most selective required term are downloaded. The upstream search also
+            // matches the other fields of a post, the filter decides. Sorted by id as the snapshot is.
+            final List<AuditionPost> candidates = postFilter.requiredTerms().stream()
+                .max(Comparator.comparingInt(String::length))
+                .map(auditionIntegrationClient::searchPosts)
+                .orElseGet(auditionIntegrationClient::getPosts);
+            return getPaginatedPosts(candidates.stream()
+                .filter(postFilter::matches)
+                .sorted(Comparator.comparingInt(AuditionPost::getId))
                 .collect(Collectors.toList()), page, size);
         }
+        if (postSnapshotStore.isEnabled()) {
+            return getPaginatedPosts(postSnapshotStore.current().index().search(postFilter), page, size);
+        }
+        return getPaginatedPosts(auditionIntegrationClient.getPosts().stream()
+            .filter(postFilter::matches)
+            .collect(Collectors.toList()), page, size);
+    }
+
+    // Snapshot the /posts pages are cut from, null while they are pushed down to the upstream or there is no snapshot
+    public PostSnapshot getServingSnapshot() {
+        if (!postSnapshotStore.isEnabled() || isPushedDown()) {
+            return null;
+        }
+        return postSnapshotStore.current();
+    }
+
+    // Method to fetch one page of the given snapshot, filtered when a filter is given. The same snapshot always gives
+    // the same page, which is what lets the rendered pages be cached by snapshot version.
+    public List<AuditionPost> getPostsWithFilter(final PostSnapshot snapshot, final PostFilter filter, final int page,
+        final int size) {
+        if (isBlank(filter)) {
+            return getPaginatedPosts(snapshot.posts(), page, size);
+        }
+        return getPaginatedPosts(snapshot.index().search(filter), page, size);
+    }
 
-        return getPaginatedPosts(allPosts, page, size);
+    private static boolean isBlank(final PostFilter filter) {
+        return filter == null || filter.text().isBlank();
+    }
+
+    // The upstream answers the paging and filter only while no snapshot can, a cold snapshot is being loaded meanwhile
+    private boolean isPushedDown() {
+        return auditionIntegrationClient.isPushDownEnabled()
+            && (!postSnapshotStore.isEnabled() || postSnapshotStore.peek() == null);
+    }
+
+    // Method to fetch one page of POSTs after the given cursor (null or empty for the first page), optionally filtered.
+    // Pages are cut by post id from the snapshot the first page was served from, so a refresh between two calls does
+    // not shift the pages. A cursor whose snapshot is no longer kept is rejected with 410 Gone. Every page resumes with
+    // a binary search, over the posts matching the filter as the snapshot store keeps them.
+    public PostPage getPostsPage(final String cursor, final PostFilter filter, final int size) {
+        if (!postSnapshotStore.isEnabled()) {
+            throw new SystemException("Cursor paging needs the post snapshot, audition.api.snapshot.enabled is false.",
+                "Bad Request", HttpStatus.BAD_REQUEST.value());
+        }
+        final boolean filtered = !isBlank(filter);
+        final long filterDigest = PostCursor.digest(filter);
+
+        final PostSnapshot snapshot;
+        final int afterId;
+        if (cursor == null || cursor.isEmpty()) {
+            snapshot = postSnapshotStore.current();
+            afterId = Integer.MIN_VALUE;
+        } else {
+            final PostCursor position = PostCursor.decode(cursor);
+            if (position.filterDigest() != filterDigest) {
+                throw new SystemException("The cursor was issued for another filter, send the same filter as on the "
+                    + "first page.", "Bad Request", HttpStatus.BAD_REQUEST.value());
+            }
+            snapshot = postSnapshotStore.find(position.version()).orElseThrow(() -> new SystemException(
+                "The posts this cursor was paging through have been replaced, restart without a cursor.",
+                "Cursor Expired", HttpStatus.GONE.value()));
+            afterId = position.lastId();
+        }
+
+        final List<AuditionPost> posts = filtered ? postSnapshotStore.matching(snapshot, filter) : snapshot.posts();
+        final int from = firstIndexAfter(posts, afterId);
+        final int to = Math.min(from + size, posts.size());
+        final String nextCursor = to < posts.size()
+            ? new PostCursor(snapshot.version(), posts.get(to - 1).getId(), filterDigest).encode() : null;
+        return new PostPage(posts.subList(from, to), nextCursor);
+    }
+
+    // Binary search for the first post with an id greater than afterId, the posts are ordered by id
+    private static int firstIndexAfter(final List<AuditionPost> posts, final int afterId) {
+        int low = 0;
+        int high = posts.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (posts.get(middle).getId() <= afterId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
     }
 
     // Method to fetch the post details without comments for a particular postId
@@ -63,6 +179,61 @@ public class AuditionService {
         return auditionIntegrationClient.getCommentsByPostId(postId);
     }
 
+    // Method to fetch the comments of several posts at once, post after post in the order of the ids, read from the
+    // bulk comments index instead of one upstream call per post
+    public List<AuditionComment> getCommentsByPostIds(final Collection<Long> postIds) {
+        return commentsIndexStore.current().forPosts(postIds.stream().distinct().toList());
+    }
+
+    // Non-blocking variants of the three methods above, no thread is held while the upstream calls are pending.
+    public CompletableFuture<AuditionPost> getPostByIdAsync(final long postId) {
+        return auditionIntegrationClient.getPostByIdAsync(postId);
+    }
+
+    public CompletableFuture<AuditionPost> getPostWithCommentsAsync(final long postId) {
+        return auditionIntegrationClient.getPostWithCommentsAsync(postId);
+    }
+
+    public CompletableFuture<List<AuditionComment>> getCommentsByPostIdAsync(final long postId) {
+        return auditionIntegrationClient.getCommentsByPostIdAsync(postId);
+    }
+
+    // Whether the post and comments lookups are answered with the upstream JSON as received, the two methods below
+    public boolean isPassthroughEnabled() {
+        return auditionIntegrationClient.isPassthroughEnabled();
+    }
+
+    public CompletableFuture<JsonPassthrough> getPostByIdJsonAsync(final long postId) {
+        return auditionIntegrationClient.getPostByIdJsonAsync(postId);
+    }
+
+    public CompletableFuture<JsonPassthrough> getCommentsByPostIdJsonAsync(final long postId) {
+        return auditionIntegrationClient.getCommentsByPostIdJsonAsync(postId);
+    }
+
+    // Method to fetch the posts of several ids at once, in the order of the ids. Ids without a post are left out.
+    // The lookups are made together, so the client can batch them into a single upstream call.
+    public CompletableFuture<List<AuditionPost>> getPostsByIdsAsync(final Collection<Long> postIds) {
+        final List<CompletableFuture<AuditionPost>> lookups = postIds.stream()
+            .distinct()
+            .map(postId -> {
+                final CompletableFuture<AuditionPost> lookup = auditionIntegrationClient.getPostByIdAsync(postId);
+                return FutureUtils.cancelling(lookup.exceptionally(AuditionService::skipNotFound), lookup);
+            })
+            .toList();
+        final CompletableFuture<?>[] pending = lookups.toArray(new CompletableFuture<?>[0]);
+        return FutureUtils.cancelling(CompletableFuture.allOf(pending)
+            .thenApply(done -> lookups.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList()), pending);
+    }
+
+    private static AuditionPost skipNotFound(final Throwable failure) {
+        final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        if (cause instanceof SystemException exception && exception.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+            return null;
+        }
+        throw failure instanceof CompletionException completion ? completion : new CompletionException(cause);
+    }
+
     // Method to slice down the list based on given size.
     public List<AuditionPost> getPaginatedPosts(final List<AuditionPost> posts, final int page, final int size) {
         if (posts == null || posts.isEmpty() || size <= 0 || page <= 0) {
@@ -0,0 +1,59 @@
+package com.audition.service;
+
+import com.audition.common.exception.SystemException;
+import com.audition.filter.PostFilter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import org.springframework.http.HttpStatus;
+
+/*
+ * Opaque keyset cursor of the /posts paging: the snapshot version the paging started on, the id of the last post
+ * returned and a 64-bit digest of the filter, so a cursor is only accepted for the query it was issued for.
+ */
+
+record PostCursor(long version, int lastId, long filterDigest) {
+
+    private static final String SEPARATOR = ":";
+
+    // First 8 bytes of the SHA-256 of the filter and its mode, 0 without a filter. Unlike String.hashCode no two
+    // filters a client is likely to send share it.
+    static long digest(final PostFilter filter) {
+        if (filter == null || filter.text().isBlank()) {
+            return 0;
+        }
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256")
+                .digest(filter.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(hash).getLong();
+        } catch (final NoSuchAlgorithmException exception) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    String encode() {
+        final String raw = version + SEPARATOR + lastId + SEPARATOR + filterDigest;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static PostCursor decode(final String token) {
+        try {
+            final String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            final String[] parts = raw.split(SEPARATOR, -1);
+            if (parts.length != 3) {
+                throw invalid();
+            }
+            return new PostCursor(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+        } catch (final IllegalArgumentException exception) {
+            throw invalid();
+        }
+    }
+
+    private static SystemException invalid() {
+        return new SystemException("The cursor is not valid, use the X-Next-Cursor header of the previous page.",
+            "Bad Request", HttpStatus.BAD_REQUEST.value());
+    }
+}
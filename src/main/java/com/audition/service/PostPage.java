@@ -0,0 +1,12 @@
+package com.audition.service;
+
+import com.audition.model.AuditionPost;
+import java.util.List;
+
+/*
+ * One page of the keyset paging, nextCursor is null on the last page
+ */
+
+public record PostPage(List<AuditionPost> posts, String nextCursor) {
+
+}
@@ -1,31 +1,57 @@
 package com.audition.web;
 
+import com.audition.cache.PostSnapshot;
+import com.audition.cache.PostsResponseCache;
+import com.audition.common.deadline.RequestDeadline;
 import com.audition.common.exception.SystemException;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.ExecutorConfiguration;
+import com.audition.filter.PostFilter;
+import com.audition.integration.JsonPassthrough;
 import com.audition.model.AuditionComment;
 import com.audition.model.AuditionPost;
 import com.audition.service.AuditionService;
+import com.audition.service.PostPage;
 import com.audition.web.annotations.StandardErrorResponses;
 import com.audition.web.dto.PostIdParam;
+import com.audition.web.dto.PostIdsRequest;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.headers.Header;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 @RestController
 @Validated
@@ -33,16 +59,36 @@ import org.springframework.web.bind.annotation.RestController;
 public class AuditionController {
 
     private final transient AuditionService auditionService;
+    private final transient AuditionApiProperties.Async asyncConfig;
+    private final transient PostsResponseCache postsResponseCache;
+    private final transient Executor upstreamExecutor;
     private static final String HTTP_200_OK = "200";
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
-    public AuditionController(final AuditionService auditionService) {
+    // Keys of audition.api.async.timeouts
+    static final String POSTS = "posts";
+    static final String POST_BY_ID = "post-by-id";
+    static final String POST_WITH_COMMENTS = "post-with-comments";
+    static final String COMMENTS = "comments";
+    static final String POSTS_BY_IDS = "posts-by-ids";
+    static final String COMMENTS_BY_POST_IDS = "comments-by-post-ids";
+
+    public AuditionController(final AuditionService auditionService, final AuditionApiProperties apiConfig,
+        final PostsResponseCache postsResponseCache,
+        @Qualifier(ExecutorConfiguration.UPSTREAM_EXECUTOR) final Executor upstreamExecutor) {
         this.auditionService = auditionService;
+        this.asyncConfig = apiConfig.async();
+        this.postsResponseCache = postsResponseCache;
+        this.upstreamExecutor = upstreamExecutor;
     }
 
     /* GET API to fetch posts using a filter
-     * filter -> string to filter the posts with this string in title or body
+     * filter -> string to filter the posts with this string in title or body, or a query like a OR "b c" NOT d
+     * mode -> plain (default) takes the filter as one substring, boolean reads it as a query
      * page -> which page a consumer want to view the results.
      * size -> total no.of records for a page/request
+     * cursor -> keyset paging instead of page, empty for the first page then the X-Next-Cursor header of the last one
+     * Pages cut from the post snapshot are written from PostsResponseCache, gzipped when the client accepts it.
      */
     @Operation(
         summary = "Get all Posts", description = "Fetches all the posts with data filter(optional)"
@@ -51,17 +97,28 @@ public class AuditionController {
     @ApiResponses(value = {
         @ApiResponse(
             responseCode = HTTP_200_OK, description = "Successfully retrieved posts",
+            headers = @Header(name = NEXT_CURSOR_HEADER,
+                description = "Cursor of the next page when paging with 'cursor', missing on the last page"),
             content = @Content(
                 mediaType = MediaType.APPLICATION_JSON_VALUE,
                 array = @ArraySchema(schema = @Schema(implementation = AuditionPost.class))
             )
-        )
+        ),
+        @ApiResponse(responseCode = "410", description = "The snapshot the cursor was paging through has expired",
+            content = @Content(schema = @Schema(implementation = ProblemDetail.class))),
+        @ApiResponse(responseCode = "504", description = "The upstream API did not answer in time",
+            content = @Content(schema = @Schema(implementation = ProblemDetail.class)))
     })
     @RequestMapping(value = "/posts", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public @ResponseBody List<AuditionPost> getPosts(
-        @Parameter(description = "Filter posts by title or body", example = "motivation")
+    public DeferredResult<ResponseEntity<?>> getPosts(
+        @Parameter(description = "Filter posts by title or body. With mode=boolean supports AND, OR, NOT and "
+            + "\"quoted phrases\"", example = "motivation")
         @RequestParam(value = "filter", required = false) final String filter,
 
+        @Parameter(description = "How the filter is read: plain (one substring) or boolean (a query)",
+            example = "plain")
+        @RequestParam(value = "mode", defaultValue = "plain") final String mode,
+
         @Parameter(description = "Starting page number of filtered posts", example = "1")
         @RequestParam(defaultValue = "1")
         @Positive(message = "'page' value should be positive integer value(>0)") final int page,
@@ -69,18 +126,101 @@ public class AuditionController {
         @Parameter(description = "Maximum number of records to be returned per page", example = "10")
         @RequestParam(defaultValue = "10")
         @Max(value = 25, message = "'size' value should not exceed 25")
-        @Positive(message = "'size' value should be positive integer value") final int size
+        @Positive(message = "'size' value should be positive integer value") final int size,
+
+        @Parameter(description = "Keyset paging, used instead of 'page'. Empty for the first page, then the "
+            + NEXT_CURSOR_HEADER + " header of the previous page")
+        @RequestParam(value = "cursor", required = false) final String cursor,
+
+        @Parameter(hidden = true)
+        @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) final String acceptEncoding
     ) {
-        if (filter != null) {
-            if (filter.isBlank()) {
-                // Raise an exception as filter shouldn't be blank
-                throw new SystemException("Filter must not be blank when provided.", "Bad Request",
-                    HttpStatus.BAD_REQUEST.value());
+        if (filter != null && filter.isBlank()) {
+            // Raise an exception as filter shouldn't be blank
+            throw new SystemException("Filter must not be blank when provided.", "Bad Request",
+                HttpStatus.BAD_REQUEST.value());
+        }
+        final PostFilter postFilter = filter == null ? null : PostFilter.compile(filter, PostFilter.Mode.of(mode));
+        return deferredBlocking(POSTS, () -> posts(postFilter, page, size, cursor, acceptEncoding));
+    }
+
+    // A cold snapshot or a pushed-down page waits for the upstream, hence the call off the Tomcat thread
+    private ResponseEntity<?> posts(final PostFilter postFilter, final int page, final int size, final String cursor,
+        final String acceptEncoding) {
+        if (cursor != null) {
+            final PostPage postPage = auditionService.getPostsPage(cursor, postFilter, size);
+            final ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (postPage.nextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, postPage.nextCursor());
             }
-            return auditionService.getPostsWithFilter(filter, page, size);
+            return response.body(postPage.posts());
+        }
+        final PostSnapshot snapshot = postsResponseCache.isEnabled() ? auditionService.getServingSnapshot() : null;
+        if (snapshot != null) {
+            return rendered(postsResponseCache.get(snapshot.version(), postFilter, page, size,
+                () -> auditionService.getPostsWithFilter(snapshot, postFilter, page, size)), acceptEncoding);
+        }
+        if (postFilter != null) {
+            return ResponseEntity.ok(auditionService.getPostsWithFilter(postFilter, page, size));
         }
-        return auditionService.getPosts(page, size);
+        return ResponseEntity.ok(auditionService.getPosts(page, size));
+    }
+
 
+    /* GET API to fetch several posts by id in one call
+     * ids -> comma separated post ids, the posts come back in the same order and unknown ids are left out
+     */
+    @Operation(
+        summary = "Get Posts by ids", description = "Fetches the posts of up to " + PostIdsRequest.MAX_IDS + " ids at once"
+    )
+    @StandardErrorResponses
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = HTTP_200_OK, description = "Successfully retrieved posts",
+            content = @Content(
+                mediaType = MediaType.APPLICATION_JSON_VALUE,
+                array = @ArraySchema(schema = @Schema(implementation = AuditionPost.class))
+            )
+        ),
+        @ApiResponse(responseCode = "504", description = "The upstream API did not answer in time",
+            content = @Content(schema = @Schema(implementation = ProblemDetail.class)))
+    })
+    @RequestMapping(value = "/posts", params = "ids", method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public @ResponseBody DeferredResult<List<AuditionPost>> getPostsByIds(
+        @Parameter(description = "Comma separated post ids", example = "1,2,3")
+        @RequestParam("ids")
+        @NotEmpty(message = "'ids' must not be empty")
+        @Size(max = PostIdsRequest.MAX_IDS, message = "'ids' must not hold more than " + PostIdsRequest.MAX_IDS
+            + " values") final List<@NotNull(message = "'ids' must not hold empty values")
+        @Positive(message = "'ids' must be greater than 0") Long> ids
+    ) {
+        return deferred(POSTS_BY_IDS, () -> auditionService.getPostsByIdsAsync(ids));
+    }
+
+    /* POST variant of the batch lookup for long id lists, body {"ids": [1, 2, 3]}
+     */
+    @Operation(
+        summary = "Get Posts by ids (POST)", description = "Same as GET /posts?ids= with the ids in the request body"
+    )
+    @StandardErrorResponses
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = HTTP_200_OK, description = "Successfully retrieved posts",
+            content = @Content(
+                mediaType = MediaType.APPLICATION_JSON_VALUE,
+                array = @ArraySchema(schema = @Schema(implementation = AuditionPost.class))
+            )
+        ),
+        @ApiResponse(responseCode = "504", description = "The upstream API did not answer in time",
+            content = @Content(schema = @Schema(implementation = ProblemDetail.class)))
+    })
+    @RequestMapping(value = "/posts/batch", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public @ResponseBody DeferredResult<List<AuditionPost>> getPostsByIdsInBody(
+        @Valid @RequestBody final PostIdsRequest request
+    ) {
+        return deferred(POSTS_BY_IDS, () -> auditionService.getPostsByIdsAsync(request.ids()));
     }
 
 
@@ -97,13 +237,18 @@ public class AuditionController {
             content = @Content(
                 mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = AuditionPost.class)
             )
-        )
+        ),
+        @ApiResponse(responseCode = "504", description = "The upstream API did not answer in time",
+            content = @Content(schema = @Schema(implementation = ProblemDetail.class)))
     })
     @RequestMapping(value = "/posts/{postId}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public @ResponseBody AuditionPost getPostsById(
+    public @ResponseBody DeferredResult<?> getPostsById(
         final PostIdParam postIdParam
     ) {
-        return auditionService.getPostById(postIdParam.postId());
+        if (auditionService.isPassthroughEnabled()) {
+            return deferred(POST_BY_ID, () -> auditionService.getPostByIdJsonAsync(postIdParam.postId()));
+        }
+        return deferred(POST_BY_ID, () -> auditionService.getPostByIdAsync(postIdParam.postId()));
     }
 
 
@@ -121,13 +266,15 @@ public class AuditionController {
             content = @Content(
                 mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = AuditionPost.class)
             )
-        )
+        ),
+        @ApiResponse(responseCode = "504", description = "The upstream API did not answer in time",
+            content = @Content(schema = @Schema(implementation = ProblemDetail.class)))
     })
     @RequestMapping(value = "/posts/{postId}/comments", method = RequestMethod.GET,
         produces = MediaType.APPLICATION_JSON_VALUE)
-    public @ResponseBody AuditionPost getPostWithComments(
+    public @ResponseBody DeferredResult<AuditionPost> getPostWithComments(
         final PostIdParam postIdParam) {
-        return auditionService.getPostWithComments(postIdParam.postId());
+        return deferred(POST_WITH_COMMENTS, () -> auditionService.getPostWithCommentsAsync(postIdParam.postId()));
     }
 
     /* GET API to fetch only post's comments as a list for a given postId
@@ -143,15 +290,111 @@ public class AuditionController {
             content = @Content(
                 mediaType = MediaType.APPLICATION_JSON_VALUE, schema = @Schema(implementation = AuditionPost.class)
             )
-        )
+        ),
+        @ApiResponse(responseCode = "504", description = "The upstream API did not answer in time",
+            content = @Content(schema = @Schema(implementation = ProblemDetail.class)))
     })
     @RequestMapping(value = "/comments", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public @ResponseBody List<AuditionComment> getCommentsForPost(
+    public @ResponseBody DeferredResult<?> getCommentsForPost(
         @Parameter(description = "Unique identifier of the post", required = true)
         @NotNull(message = "postId is required")
         @Positive(message = "postId must be greater than 0")
         @RequestParam("postId") final Long postId) {
-        return auditionService.getCommentsByPostId(postId);
+        if (auditionService.isPassthroughEnabled()) {
+            return deferred(COMMENTS, () -> auditionService.getCommentsByPostIdJsonAsync(postId));
+        }
+        return deferred(COMMENTS, () -> auditionService.getCommentsByPostIdAsync(postId));
+    }
+
+    /* GET API to fetch the comments of several posts in one call
+     * postIds -> comma separated post ids, the comments come back post after post in the same order
+     */
+    @Operation(
+        summary = "GET comments for several Posts", description = "Fetches the comments of up to "
+        + PostIdsRequest.MAX_IDS + " posts at once, from one cached download of all the comments"
+    )
+    @StandardErrorResponses
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = HTTP_200_OK, description = "Successfully retrieved comments",
+            content = @Content(
+                mediaType = MediaType.APPLICATION_JSON_VALUE,
+                array = @ArraySchema(schema = @Schema(implementation = AuditionComment.class))
+            )
+        ),
+        @ApiResponse(responseCode = "504", description = "The upstream API did not answer in time",
+            content = @Content(schema = @Schema(implementation = ProblemDetail.class)))
+    })
+    @RequestMapping(value = "/comments", params = "postIds", method = RequestMethod.GET,
+        produces = MediaType.APPLICATION_JSON_VALUE)
+    public @ResponseBody DeferredResult<List<AuditionComment>> getCommentsForPosts(
+        @Parameter(description = "Comma separated post ids", example = "1,2,3")
+        @RequestParam("postIds")
+        @NotEmpty(message = "'postIds' must not be empty")
+        @Size(max = PostIdsRequest.MAX_IDS, message = "'postIds' must not hold more than " + PostIdsRequest.MAX_IDS
+            + " values") final List<@NotNull(message = "'postIds' must not hold empty values")
+        @Positive(message = "'postIds' must be greater than 0") Long> postIds
+    ) {
+        // The comments index may still be loading its download of all the comments
+        return deferredBlocking(COMMENTS_BY_POST_IDS, () -> auditionService.getCommentsByPostIds(postIds));
+    }
+
+    // The cached bytes are written as they are, without going through Jackson again
+    private static ResponseEntity<byte[]> rendered(final PostsResponseCache.RenderedPage page,
+        final String acceptEncoding) {
+        final ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (page.gzip() != null && acceptsGzip(acceptEncoding)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(page.gzip());
+        }
+        return response.body(page.json());
+    }
+
+    // gzip listed in Accept-Encoding without a q=0 weight
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final String coding : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            final String[] parts = coding.split(";");
+            if ("gzip".equals(parts[0].trim())) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    // The Tomcat thread is released while the upstream calls are pending, the response is written once the future
+    // completes. Failures go through ExceptionControllerAdvice as for a blocking call, and an endpoint that has not
+    // answered within its audition.api.async timeout gets a 504 ProblemDetail. The calls are started with that
+    // timeout as their deadline, so no retry is scheduled past it.
+    private <T> DeferredResult<T> deferred(final String endpoint, final Supplier<CompletableFuture<T>> calls) {
+        final Duration timeout = asyncConfig.timeoutFor(endpoint);
+        final CompletableFuture<T> future = RequestDeadline.within(timeout, calls);
+        final DeferredResult<T> result = new DeferredResult<>(timeout.toMillis(), () -> new SystemException(
+            "The upstream API did not answer within " + timeout.toMillis() + " ms.", "Gateway Timeout",
+            HttpStatus.GATEWAY_TIMEOUT.value()));
+        // Nothing waits for a timed out call anymore, cancelling it reaches down to the upstream exchanges, see
+        // FutureUtils.cancelling, unless another request still shares them
+        result.onCompletion(() -> future.cancel(false));
+        future.whenComplete((value, failure) -> {
+            if (failure == null) {
+                // A passthrough nobody writes out anymore is closed, which aborts its upstream exchange
+                if (!result.setResult(value) && value instanceof JsonPassthrough passthrough) {
+                    passthrough.close();
+                }
+            } else {
+                result.setErrorResult(failure instanceof CompletionException ? failure.getCause() : failure);
+            }
+        });
+        return result;
+    }
+
+    // Blocking service calls run on the upstream executor, which hands the trace context and the deadline over to
+    // them, and are answered like the non-blocking ones. A call past its timeout is left to end on its own.
+    private <T> DeferredResult<T> deferredBlocking(final String endpoint, final Supplier<T> call) {
+        return deferred(endpoint, () -> CompletableFuture.supplyAsync(call, upstreamExecutor));
     }
 
 }
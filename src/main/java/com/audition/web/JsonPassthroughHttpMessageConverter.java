@@ -0,0 +1,48 @@
+package com.audition.web;
+
+import com.audition.integration.JsonPassthrough;
+import java.io.IOException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+
+/*
+ * Writes a JsonPassthrough to the servlet output while its upstream body is still arriving, see JsonPassthrough.
+ * The dispatch thread is held for as long as the copy takes, the upstream side of it is bounded by the read timeout
+ * of the async client. Never reads, a passthrough only comes from the upstream.
+ */
+
+public class JsonPassthroughHttpMessageConverter extends AbstractHttpMessageConverter<JsonPassthrough> {
+
+    public JsonPassthroughHttpMessageConverter() {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    }
+
+    @Override
+    protected boolean supports(final Class<?> clazz) {
+        return JsonPassthrough.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(final Class<?> clazz, final MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected JsonPassthrough readInternal(final Class<? extends JsonPassthrough> clazz,
+        final HttpInputMessage inputMessage) {
+        throw new UnsupportedOperationException("A JsonPassthrough is only written");
+    }
+
+    // Closing after a failed copy aborts the upstream exchange, after a complete one it does nothing
+    @Override
+    protected void writeInternal(final JsonPassthrough passthrough, final HttpOutputMessage outputMessage)
+        throws IOException {
+        try {
+            passthrough.writeTo(outputMessage.getBody());
+        } finally {
+            passthrough.close();
+        }
+    }
+}
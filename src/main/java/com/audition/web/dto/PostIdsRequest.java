@@ -0,0 +1,22 @@
+package com.audition.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+/*
+    Request body of the batch post lookup, the POST variant of GET /posts?ids=1,2,3 for long id lists.
+ */
+
+public record PostIdsRequest(
+    @Schema(description = "Unique identifiers of the posts", example = "[1, 2, 3]")
+    @NotEmpty(message = "ids must not be empty")
+    @Size(max = PostIdsRequest.MAX_IDS, message = "ids must not hold more than " + PostIdsRequest.MAX_IDS + " values")
+    List<@NotNull(message = "ids must not hold null") @Positive(message = "ids must be greater than 0") Long> ids
+) {
+
+    public static final int MAX_IDS = 100;
+}
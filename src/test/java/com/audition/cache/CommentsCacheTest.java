@@ -0,0 +1,93 @@
+package com.audition.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.model.AuditionComment;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+/*
+ * Test class for the weighted comments cache and its metrics
+ */
+
+class CommentsCacheTest {
+
+    private final transient SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final transient AtomicInteger loads = new AtomicInteger();
+
+    private CommentsCache cache(final boolean enabled, final DataSize maxSize) {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withCommentsCache(new AuditionApiProperties.CommentsCache(enabled, maxSize, Duration.ofMinutes(1)));
+        return new CommentsCache(properties, registry);
+    }
+
+    private List<AuditionComment> load(final long postId) {
+        loads.incrementAndGet();
+        final AuditionComment comment = new AuditionComment();
+        comment.setPostId((int) postId);
+        comment.setName("name");
+        comment.setEmail("someone@example.com");
+        comment.setBody("x".repeat(1000));
+        return List.of(comment);
+    }
+
+    private double gets(final String result) {
+        return registry.get("cache.gets").tag("cache", CommentsCache.CACHE_NAME).tag("result", result)
+            .functionCounter().count();
+    }
+
+    @Test
+    void testSecondReadIsAHit() {
+        final CommentsCache cache = cache(true, DataSize.ofMegabytes(1));
+        final List<AuditionComment> first = cache.get(1, this::load);
+        assertSame(first, cache.get(1, this::load));
+        assertEquals(1, loads.get());
+        assertEquals(1, gets("hit"));
+        assertEquals(1, gets("miss"));
+    }
+
+    @Test
+    void testAsyncReadSharesTheCache() {
+        final CommentsCache cache = cache(true, DataSize.ofMegabytes(1));
+        final List<AuditionComment> first = cache.getAsync(1, id -> CompletableFuture.completedFuture(load(id))).join();
+        assertSame(first, cache.get(1, this::load));
+        assertSame(first, cache.getAsync(1, id -> CompletableFuture.completedFuture(load(id))).join());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testWeightIsEstimatedFromContent() {
+        final int small = CommentsCache.estimateBytes(List.of(new AuditionComment()));
+        final int large = CommentsCache.estimateBytes(load(1));
+        assertTrue(large - small >= 1000);
+    }
+
+    @Test
+    void testEntriesAreEvictedByByteBudget() {
+        final CommentsCache cache = cache(true, DataSize.ofKilobytes(5));
+        for (long postId = 1; postId <= 20; postId++) {
+            cache.get(postId, this::load);
+        }
+        cache.cleanUp();
+        assertTrue(cache.weightedSize() <= DataSize.ofKilobytes(5).toBytes());
+        assertTrue(registry.get("cache.evictions").tag("cache", CommentsCache.CACHE_NAME)
+            .functionCounter().count() > 0);
+    }
+
+    @Test
+    void testDisabledCacheAlwaysLoads() {
+        final CommentsCache cache = cache(false, DataSize.ofMegabytes(1));
+        cache.get(1, this::load);
+        cache.get(1, this::load);
+        assertEquals(2, loads.get());
+    }
+}
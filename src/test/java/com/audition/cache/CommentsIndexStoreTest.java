@@ -0,0 +1,57 @@
+package com.audition.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.audition.common.logging.AuditionLogger;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.integration.AuditionIntegrationClient;
+import com.audition.model.AuditionComment;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the comments index over one bulk download
+ */
+
+class CommentsIndexStoreTest {
+
+    private transient AuditionIntegrationClient client;
+    private transient SimpleMeterRegistry registry;
+    private transient CommentsIndexStore store;
+
+    @BeforeEach
+    void setUp() {
+        client = mock(AuditionIntegrationClient.class);
+        registry = new SimpleMeterRegistry();
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults();
+        store = new CommentsIndexStore(client, properties, new AuditionLogger(), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stopRefresh();
+    }
+
+    @Test
+    void testIndexIsDownloadedOnceWithinTtl() {
+        final AuditionComment comment = new AuditionComment();
+        comment.setPostId(1);
+        when(client.getComments()).thenReturn(List.of(comment));
+
+        final CommentsIndex index = store.current();
+        assertSame(index, store.current());
+        assertEquals(List.of(comment), index.forPost(1));
+        verify(client, times(1)).getComments();
+        assertTrue(registry.get("audition.snapshot.age").tag("name", "comments").gauge().value() < 60);
+    }
+}
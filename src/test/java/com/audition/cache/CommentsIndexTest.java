@@ -0,0 +1,71 @@
+package com.audition.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.model.AuditionComment;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the comments grouped by postId
+ */
+
+class CommentsIndexTest {
+
+    private static AuditionComment comment(final int postId, final int id) {
+        final AuditionComment comment = new AuditionComment();
+        comment.setPostId(postId);
+        comment.setId(id);
+        return comment;
+    }
+
+    private static List<Integer> ids(final List<AuditionComment> comments) {
+        return comments.stream().map(AuditionComment::getId).toList();
+    }
+
+    @Test
+    void testDensePostIdsKeepUpstreamOrderWithinAPost() {
+        final CommentsIndex index = CommentsIndex.build(List.of(comment(2, 10), comment(1, 1), comment(2, 4),
+            comment(4, 7), comment(1, 3)));
+        assertEquals(5, index.size());
+        assertEquals(List.of(1, 3), ids(index.forPost(1)));
+        assertEquals(List.of(10, 4), ids(index.forPost(2)));
+        assertEquals(0, index.countFor(3));
+        assertTrue(index.forPost(0).isEmpty());
+        assertTrue(index.forPost(5).isEmpty());
+        assertEquals(List.of(7, 1, 3), ids(index.forPosts(List.of(4L, 3L, 1L))));
+    }
+
+    // Far apart postIds are looked up by binary search instead of a mostly empty offsets array
+    @Test
+    void testSparsePostIds() {
+        final List<AuditionComment> comments = new ArrayList<>();
+        comments.add(comment(1_000_000, 2));
+        comments.add(comment(5, 1));
+        comments.add(comment(1_000_000, 3));
+        final CommentsIndex index = CommentsIndex.build(comments);
+        assertEquals(List.of(2, 3), ids(index.forPost(1_000_000)));
+        assertEquals(List.of(1), ids(index.forPost(5)));
+        assertEquals(0, index.countFor(6));
+        assertEquals(0, index.countFor(Long.MAX_VALUE));
+        assertEquals(List.of(2, 3, 1), ids(index.forPosts(List.of(1_000_000L, 7L, 5L))));
+    }
+
+    @Test
+    void testEmptyIndex() {
+        final CommentsIndex index = CommentsIndex.build(List.of());
+        assertEquals(0, index.size());
+        assertTrue(index.forPost(1).isEmpty());
+        assertTrue(index.forPosts(List.of(1L, 2L)).isEmpty());
+    }
+
+    @Test
+    void testListsAreReadOnly() {
+        final CommentsIndex index = CommentsIndex.build(List.of(comment(1, 1)));
+        assertThrows(UnsupportedOperationException.class, () -> index.forPost(1).clear());
+        assertThrows(UnsupportedOperationException.class, () -> index.forPosts(List.of(1L)).set(0, null));
+    }
+}
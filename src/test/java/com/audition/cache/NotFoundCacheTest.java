@@ -0,0 +1,56 @@
+package com.audition.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the negative cache of missing post ids and its metrics
+ */
+
+class NotFoundCacheTest {
+
+    private final transient SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private NotFoundCache cache(final boolean enabled, final Duration ttl) {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withNegativeCache(new AuditionApiProperties.NegativeCache(enabled, 100, ttl));
+        return new NotFoundCache(properties, registry);
+    }
+
+    private double gets(final String result) {
+        return registry.get("cache.gets").tag("cache", NotFoundCache.CACHE_NAME).tag("result", result)
+            .functionCounter().count();
+    }
+
+    @Test
+    void testRecordedIdIsMissing() {
+        final NotFoundCache cache = cache(true, Duration.ofMinutes(1));
+        assertFalse(cache.isMissing(1));
+        cache.recordMissing(1);
+        assertTrue(cache.isMissing(1));
+        assertFalse(cache.isMissing(2));
+        assertEquals(1, gets("hit"));
+        assertEquals(2, gets("miss"));
+    }
+
+    @Test
+    void testExpiredIdIsLookedUpAgain() {
+        final NotFoundCache cache = cache(true, Duration.ZERO);
+        cache.recordMissing(1);
+        assertFalse(cache.isMissing(1));
+    }
+
+    @Test
+    void testDisabledCacheKeepsNothing() {
+        final NotFoundCache cache = cache(false, Duration.ofMinutes(1));
+        cache.recordMissing(1);
+        assertFalse(cache.isMissing(1));
+    }
+}
@@ -0,0 +1,121 @@
+package com.audition.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.model.AuditionPost;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the trigram filter index, every answer is compared with the plain contains scan it replaces
+ */
+
+class PostSearchIndexTest {
+
+    private static final String[] WORDS = {"qui", "est", "esse", "dolor", "Quia", "NESCIUNT", "sunt", "aut", "é"};
+
+    private final transient Random random = new Random(42);
+
+    private static AuditionPost post(final int id, final String title, final String body) {
+        final AuditionPost post = new AuditionPost();
+        post.setId(id);
+        post.setTitle(title);
+        post.setBody(body);
+        return post;
+    }
+
+    private String text(final int words) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextBoolean() ? " " : "");
+        }
+        return text.toString();
+    }
+
+    private List<AuditionPost> randomPosts(final int count) {
+        final List<AuditionPost> posts = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            posts.add(post(id, text(3), text(12)));
+        }
+        return posts;
+    }
+
+    private static List<AuditionPost> scan(final List<AuditionPost> posts, final String filter) {
+        final String needle = filter.toLowerCase(Locale.ROOT);
+        return posts.stream()
+            .filter(post -> post.getTitle().toLowerCase(Locale.ROOT).contains(needle)
+                || post.getBody().toLowerCase(Locale.ROOT).contains(needle))
+            .toList();
+    }
+
+    private void assertSameAsScan(final PostSearchIndex index, final List<AuditionPost> posts) {
+        for (int i = 0; i < 200; i++) {
+            final String source = text(2);
+            final int start = random.nextInt(source.length());
+            final String filter = source.substring(start, Math.min(source.length(), start + 1 + random.nextInt(8)));
+            // Upper-casing only the first letter, a whole upper-case OR or NOT would be read as an operator
+            final String query = random.nextBoolean()
+                ? filter.substring(0, 1).toUpperCase(Locale.ROOT) + filter.substring(1) : filter;
+            assertEquals(scan(posts, query), index.search(query), "filter '" + query + "'");
+        }
+    }
+
+    @Test
+    void testSearchMatchesFullScan() {
+        final List<AuditionPost> posts = randomPosts(300);
+        assertSameAsScan(PostSearchIndex.build(posts), posts);
+    }
+
+    @Test
+    void testBlankFilterReturnsAllInOrder() {
+        final List<AuditionPost> posts = randomPosts(10);
+        assertEquals(posts, PostSearchIndex.build(posts).search(" "));
+        assertEquals(posts, PostSearchIndex.build(posts).search((String) null));
+    }
+
+    @Test
+    void testFilterDoesNotSpanTitleAndBody() {
+        final List<AuditionPost> posts = List.of(post(1, "abc", "def"));
+        assertTrue(PostSearchIndex.build(posts).search("cde").isEmpty());
+        assertEquals(1, PostSearchIndex.build(posts).search("BC").size());
+    }
+
+    @Test
+    void testIncrementalUpdateMatchesFullScan() {
+        final List<AuditionPost> posts = randomPosts(400);
+        PostSearchIndex index = PostSearchIndex.build(posts);
+        for (int round = 0; round < 5; round++) {
+            posts.set(random.nextInt(posts.size()), post(random.nextInt(400) + 1000 * (round + 1), text(3), text(12)));
+            final int changed = random.nextInt(posts.size());
+            posts.set(changed, post(posts.get(changed).getId(), text(3), text(12)));
+            posts.remove(random.nextInt(posts.size()));
+            index = index.update(posts);
+            assertEquals(posts.size(), index.size());
+            assertSameAsScan(index, posts);
+        }
+    }
+
+    @Test
+    void testBooleanFilterMatchesFullScan() {
+        final List<AuditionPost> posts = randomPosts(300);
+        final PostSearchIndex index = PostSearchIndex.build(posts);
+        final List<AuditionPost> expected = posts.stream()
+            .filter(post -> (post.getTitle() + "\n" + post.getBody()).toLowerCase(Locale.ROOT).contains("dolor")
+                && !post.getBody().toLowerCase(Locale.ROOT).contains("quia")
+                && !post.getTitle().toLowerCase(Locale.ROOT).contains("quia"))
+            .toList();
+        assertEquals(expected, index.search("Dolor NOT quia"));
+    }
+
+    @Test
+    void testDuplicateIdsStillAnswerExactly() {
+        final List<AuditionPost> posts = List.of(post(1, "first", "body"), post(1, "second", "body"));
+        final PostSearchIndex index = PostSearchIndex.build(posts);
+        assertEquals(2, index.search("body").size());
+        assertEquals(1, index.update(posts).search("second").size());
+    }
+}
@@ -0,0 +1,117 @@
+package com.audition.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.audition.common.logging.AuditionLogger;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.filter.PostFilter;
+import com.audition.integration.AuditionIntegrationClient;
+import com.audition.model.AuditionPost;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the versioned post snapshot
+ */
+
+class PostSnapshotStoreTest {
+
+    private transient AuditionIntegrationClient client;
+    private transient PostSnapshotStore store;
+
+    @BeforeEach
+    void setUp() {
+        client = mock(AuditionIntegrationClient.class);
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withSnapshot(new AuditionApiProperties.Snapshot(true, null, null, null, null));
+        store = new PostSnapshotStore(client, properties, new AuditionLogger(), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stopRefresh();
+    }
+
+    private static AuditionPost post(final int id, final String title) {
+        final AuditionPost post = new AuditionPost();
+        post.setId(id);
+        post.setTitle(title);
+        return post;
+    }
+
+    // The /posts pages cut from the snapshot list the posts by id, whatever order the upstream sent them in
+    @Test
+    void testSnapshotIsSortedById() {
+        when(client.getPosts()).thenReturn(List.of(post(3, "ca"), post(1, "a"), post(2, "ba")));
+        assertNull(store.peek());
+        final PostSnapshot snapshot = store.current();
+        assertEquals(1, snapshot.version());
+        assertEquals(List.of(1, 2, 3), snapshot.posts().stream().map(AuditionPost::getId).toList());
+        assertEquals(List.of(1, 2, 3), snapshot.index().search("a").stream().map(AuditionPost::getId).toList());
+        assertTrue(store.isEnabled());
+    }
+
+    // Every request gets the same snapshot posts, neither a request nor the upstream's objects can change them
+    @Test
+    void testSnapshotPostsAreReadOnlyCopies() {
+        final AuditionPost upstream = post(1, "a");
+        when(client.getPosts()).thenReturn(List.of(upstream));
+        final AuditionPost served = store.current().posts().get(0);
+        assertEquals(upstream, served);
+
+        upstream.setTitle("changed");
+        assertEquals("a", served.getTitle());
+        assertThrows(UnsupportedOperationException.class, () -> served.setTitle("changed"));
+    }
+
+    @Test
+    void testVersionOnlyChangesWithContent() {
+        when(client.getPosts()).thenReturn(List.of(post(1, "a")));
+        final PostSnapshot first = store.current();
+        store.refreshNow();
+        assertSame(first, store.peek());
+
+        when(client.getPosts()).thenReturn(List.of(post(1, "changed")));
+        store.refreshNow();
+        assertEquals(2, store.peek().version());
+    }
+
+    @Test
+    void testReplacedSnapshotIsKeptForCursors() {
+        when(client.getPosts()).thenReturn(List.of(post(1, "a")));
+        final PostSnapshot first = store.current();
+        when(client.getPosts()).thenReturn(List.of(post(1, "changed")));
+        store.refreshNow();
+
+        assertSame(first, store.find(1).orElseThrow());
+        assertEquals(2, store.find(2).orElseThrow().version());
+        assertTrue(store.find(3).isEmpty());
+    }
+
+    // The cursor pages of one filter share one search, a new snapshot version searches again
+    @Test
+    void testMatchesAreKeptPerVersionAndFilter() {
+        when(client.getPosts()).thenReturn(List.of(post(1, "abc"), post(2, "xyz")));
+        final PostSnapshot first = store.current();
+        final List<AuditionPost> matches = store.matching(first, PostFilter.compile("abc"));
+        assertEquals(List.of(1), matches.stream().map(AuditionPost::getId).toList());
+        assertSame(matches, store.matching(first, PostFilter.compile("abc")));
+        assertEquals(List.of(2), store.matching(first, PostFilter.compile("xyz")).stream().map(AuditionPost::getId)
+            .toList());
+
+        when(client.getPosts()).thenReturn(List.of(post(1, "abc"), post(3, "abcd")));
+        store.refreshNow();
+        assertEquals(List.of(1, 3), store.matching(store.current(), PostFilter.compile("abc")).stream()
+            .map(AuditionPost::getId).toList());
+    }
+}
@@ -0,0 +1,113 @@
+package com.audition.cache;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.filter.PostFilter;
+import com.audition.model.AuditionPost;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+/*
+ * Test class for the rendered /posts pages cache
+ */
+
+class PostsResponseCacheTest {
+
+    private final transient ObjectMapper objectMapper = new ObjectMapper();
+    private final transient SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final transient AtomicInteger renders = new AtomicInteger();
+
+    private PostsResponseCache cache(final DataSize maxSize, final DataSize gzipMinSize) {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withResponseCache(new AuditionApiProperties.ResponseCache(true, maxSize, gzipMinSize));
+        return new PostsResponseCache(properties, objectMapper, registry);
+    }
+
+    private List<AuditionPost> posts(final int count) {
+        renders.incrementAndGet();
+        final List<AuditionPost> posts = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            final AuditionPost post = new AuditionPost();
+            post.setId(id);
+            post.setTitle("title " + id);
+            post.setBody("body ".repeat(20));
+            posts.add(post);
+        }
+        return posts;
+    }
+
+    @Test
+    void testPageIsRenderedOncePerSnapshotVersion() throws IOException {
+        final PostsResponseCache cache = cache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(1));
+        final PostsResponseCache.RenderedPage first = cache.get(1, PostFilter.compile("body"), 1, 10, () -> posts(10));
+        assertSame(first, cache.get(1, PostFilter.compile("body"), 1, 10, () -> posts(10)));
+        assertEquals(1, renders.get());
+        assertArrayEquals(objectMapper.writeValueAsBytes(posts(10)), first.json());
+
+        cache.get(1, PostFilter.compile("body"), 2, 10, () -> posts(10));
+        cache.get(1, null, 1, 10, () -> posts(10));
+        assertEquals(4, renders.get());
+    }
+
+    // Asking for a newer snapshot version drops every page of the older ones
+    @Test
+    void testNewerSnapshotVersionDropsTheOlderPages() {
+        final PostsResponseCache cache = cache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(1));
+        cache.get(1, null, 1, 10, () -> posts(10));
+        cache.get(1, null, 2, 10, () -> posts(10));
+        cache.get(2, null, 1, 10, () -> posts(10));
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+    }
+
+    // A request still rendering an older snapshot gets its page, without putting it back into the cache
+    @Test
+    void testOlderSnapshotVersionIsNotCached() throws IOException {
+        final PostsResponseCache cache = cache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(1));
+        cache.get(2, null, 1, 10, () -> posts(10));
+        final PostsResponseCache.RenderedPage stale = cache.get(1, null, 1, 10, () -> posts(10));
+        cache.get(1, null, 1, 10, () -> posts(10));
+        cache.cleanUp();
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(posts(10)), stale.json());
+        assertEquals(1, cache.size());
+        assertEquals(4, renders.get());
+    }
+
+    @Test
+    void testOnlyLargePagesAreGzipped() throws IOException {
+        final PostsResponseCache cache = cache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(1));
+        assertNull(cache.get(1, null, 1, 1, () -> posts(1)).gzip());
+
+        final PostsResponseCache.RenderedPage large = cache.get(1, null, 1, 25, () -> posts(25));
+        assertNotNull(large.gzip());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(large.gzip()))) {
+            assertArrayEquals(large.json(), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testSizeIsABudgetInBytes() {
+        final PostsResponseCache cache = cache(DataSize.ofKilobytes(8), DataSize.ofMegabytes(1));
+        for (int page = 1; page <= 20; page++) {
+            cache.get(1, null, page, 10, () -> posts(10));
+        }
+        cache.cleanUp();
+        assertTrue(cache.size() < 20);
+    }
+}
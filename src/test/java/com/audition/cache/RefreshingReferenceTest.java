@@ -0,0 +1,107 @@
+package com.audition.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.audition.common.exception.SystemException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the stale-while-revalidate reference, time is driven by a fake clock
+ * and background refreshes run on the calling thread.
+ */
+
+class RefreshingReferenceTest {
+
+    private static final Duration TTL = Duration.ofSeconds(30);
+    private static final Duration MAX_STALENESS = Duration.ofMinutes(5);
+
+    private final transient AtomicLong clock = new AtomicLong();
+    private final transient AtomicInteger loads = new AtomicInteger();
+    private final transient List<RuntimeException> failures = new ArrayList<>();
+    private transient boolean failLoads;
+    private transient RefreshingReference<String> reference;
+
+    @BeforeEach
+    void setUp() {
+        reference = new RefreshingReference<>(previous -> {
+            if (failLoads) {
+                throw new SystemException("upstream down", 503);
+            }
+            return "v" + loads.incrementAndGet();
+        }, TTL, MAX_STALENESS, Runnable::run, failures::add, clock::get);
+    }
+
+    private void advance(final Duration duration) {
+        clock.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void testFirstReadLoadsOnce() {
+        assertNull(reference.peek());
+        assertEquals("v1", reference.get());
+        assertEquals("v1", reference.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testReadAfterTtlTriggersRefresh() {
+        reference.get();
+        advance(TTL.plusSeconds(1));
+        reference.get();
+        assertEquals(2, loads.get());
+        assertEquals("v2", reference.peek());
+        assertEquals(Duration.ZERO, reference.age());
+    }
+
+    @Test
+    void testStaleValueServedWhileRefreshFails() {
+        reference.get();
+        advance(TTL.plusSeconds(1));
+        failLoads = true;
+        assertEquals("v1", reference.get());
+        assertEquals(1, failures.size());
+    }
+
+    @Test
+    void testValueOlderThanMaxStalenessIsNotServed() {
+        reference.get();
+        advance(MAX_STALENESS.plusSeconds(1));
+        failLoads = true;
+        assertThrows(SystemException.class, reference::get);
+
+        failLoads = false;
+        assertEquals("v2", reference.get());
+    }
+
+    @Test
+    void testScheduledRefreshFailureKeepsValue() {
+        reference.get();
+        failLoads = true;
+        reference.refresh();
+        assertEquals("v1", reference.peek());
+        assertEquals(1, failures.size());
+    }
+
+    @Test
+    void testLoaderGetsPreviousValue() {
+        final List<String> seen = new ArrayList<>();
+        final RefreshingReference<String> chained = new RefreshingReference<>(previous -> {
+            seen.add(previous);
+            return previous == null ? "first" : previous + "+next";
+        }, TTL, MAX_STALENESS, Runnable::run, failures::add, clock::get);
+        chained.get();
+        chained.refresh();
+        assertSame(null, seen.get(0));
+        assertEquals("first", seen.get(1));
+        assertEquals("first+next", chained.peek());
+    }
+}
@@ -0,0 +1,17 @@
+package com.audition.configuration;
+
+/*
+ * AuditionApiProperties for the tests and the benchmarks: http://base with the /posts and /comments paths, every other
+ * section at its defaults. A test replaces the sections it is about with the withers of the record.
+ */
+
+public final class AuditionApiPropertiesFixtures {
+
+    private AuditionApiPropertiesFixtures() {
+    }
+
+    public static AuditionApiProperties defaults() {
+        return AuditionApiProperties.defaults("http://base", new AuditionApiProperties.Posts("/posts"),
+            new AuditionApiProperties.Comments("/comments"));
+    }
+}
@@ -1,5 +1,6 @@
 package com.audition.configuration;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -7,6 +8,7 @@ import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
 import jakarta.validation.ValidatorFactory;
+import java.time.Duration;
 import java.util.Set;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -36,7 +38,7 @@ class AuditionApiPropertiesTest {
     void testValidProperties() {
         final AuditionApiProperties.Posts posts = new AuditionApiProperties.Posts(POSTS_PATH);
         final AuditionApiProperties.Comments comments = new AuditionApiProperties.Comments(COMMENTS_PATH);
-        final AuditionApiProperties props = new AuditionApiProperties(BASE_URL, posts, comments);
+        final AuditionApiProperties props = AuditionApiProperties.defaults(BASE_URL, posts, comments);
         final Set<ConstraintViolation<AuditionApiProperties>> violations = validator.validate(props);
         assertTrue(violations.isEmpty());
     }
@@ -46,7 +48,7 @@ class AuditionApiPropertiesTest {
     void testMissingBaseUrl() {
         final AuditionApiProperties.Posts posts = new AuditionApiProperties.Posts(POSTS_PATH);
         final AuditionApiProperties.Comments comments = new AuditionApiProperties.Comments(COMMENTS_PATH);
-        final AuditionApiProperties props = new AuditionApiProperties(null, posts, comments);
+        final AuditionApiProperties props = AuditionApiProperties.defaults(null, posts, comments);
         final Set<ConstraintViolation<AuditionApiProperties>> violations = validator.validate(props);
         assertFalse(violations.isEmpty());
         assertTrue(violations.stream().anyMatch(
@@ -56,7 +58,7 @@ class AuditionApiPropertiesTest {
     @Test
     void testMissingPosts() {
         final AuditionApiProperties.Comments comments = new AuditionApiProperties.Comments(COMMENTS_PATH);
-        final AuditionApiProperties props = new AuditionApiProperties(BASE_URL, null, comments);
+        final AuditionApiProperties props = AuditionApiProperties.defaults(BASE_URL, null, comments);
         final Set<ConstraintViolation<AuditionApiProperties>> violations = validator.validate(props);
         assertFalse(violations.isEmpty());
         assertTrue(violations.stream().anyMatch(
@@ -66,7 +68,7 @@ class AuditionApiPropertiesTest {
     @Test
     void testMissingComments() {
         final AuditionApiProperties.Posts posts = new AuditionApiProperties.Posts(POSTS_PATH);
-        final AuditionApiProperties props = new AuditionApiProperties(BASE_URL, posts, null);
+        final AuditionApiProperties props = AuditionApiProperties.defaults(BASE_URL, posts, null);
         final Set<ConstraintViolation<AuditionApiProperties>> violations = validator.validate(props);
         assertFalse(violations.isEmpty());
         assertTrue(violations.stream().anyMatch(
@@ -77,7 +79,7 @@ class AuditionApiPropertiesTest {
     void testMissingPostsPath() {
         final AuditionApiProperties.Posts posts = new AuditionApiProperties.Posts("");
         final AuditionApiProperties.Comments comments = new AuditionApiProperties.Comments(COMMENTS_PATH);
-        final AuditionApiProperties props = new AuditionApiProperties(BASE_URL, posts, comments);
+        final AuditionApiProperties props = AuditionApiProperties.defaults(BASE_URL, posts, comments);
         final Set<ConstraintViolation<AuditionApiProperties>> violations = validator.validate(props);
         assertFalse(violations.isEmpty());
         assertTrue(violations.stream().anyMatch(
@@ -88,10 +90,63 @@ class AuditionApiPropertiesTest {
     void testMissingCommentsPath() {
         final AuditionApiProperties.Posts posts = new AuditionApiProperties.Posts(POSTS_PATH);
         final AuditionApiProperties.Comments comments = new AuditionApiProperties.Comments("");
-        final AuditionApiProperties props = new AuditionApiProperties(BASE_URL, posts, comments);
+        final AuditionApiProperties props = AuditionApiProperties.defaults(BASE_URL, posts, comments);
         final Set<ConstraintViolation<AuditionApiProperties>> violations = validator.validate(props);
         assertFalse(violations.isEmpty());
         assertTrue(violations.stream().anyMatch(
             v -> v.getPropertyPath().toString().contains("comments.path")));
     }
-} 
\ No newline at end of file
+
+    // Optional sections are defaulted when they are not configured
+    @Test
+    void testOptionalSectionsDefaulted() {
+        final AuditionApiProperties props = AuditionApiProperties.defaults(BASE_URL,
+            new AuditionApiProperties.Posts(POSTS_PATH), new AuditionApiProperties.Comments(COMMENTS_PATH));
+        assertEquals(Duration.ofSeconds(2), props.connection().connectTimeout());
+        assertEquals(Duration.ofSeconds(5), props.connection().readTimeout());
+        assertEquals(Duration.ofSeconds(1), props.connection().poolAcquireTimeout());
+        assertEquals(50, props.pool().maxTotal());
+        assertEquals(20, props.pool().maxPerRoute());
+        assertEquals(Duration.ofSeconds(30), props.pool().keepAlive());
+    }
+
+    // The features changing what the API answers or how it calls the upstream are off until enabled
+    @Test
+    void testFeaturesAreOffByDefault() {
+        final AuditionApiProperties props = AuditionApiPropertiesFixtures.defaults();
+        assertFalse(props.snapshot().enabled());
+        assertFalse(props.commentsCache().enabled());
+        assertFalse(props.batch().enabled());
+        assertFalse(props.pushDown().enabled());
+        assertFalse(props.embed().enabled());
+        assertFalse(props.negativeCache().enabled());
+        assertFalse(props.responseCache().enabled());
+        assertFalse(props.passthrough().enabled());
+        assertFalse(props.circuitBreaker().enabled());
+        assertFalse(props.bulkhead().enabled());
+        assertFalse(props.concurrencyLimit().enabled());
+        assertFalse(props.hedging().enabled());
+        assertFalse(props.retry().enabled());
+        assertFalse(props.execution().virtualThreads());
+    }
+
+    @Test
+    void testWitherReplacesOneSection() {
+        final AuditionApiProperties props = AuditionApiPropertiesFixtures.defaults()
+            .withRetry(new AuditionApiProperties.Retry(true, 5, null, null, null));
+        assertTrue(props.retry().enabled());
+        assertEquals(5, props.retry().maxAttempts());
+        assertEquals(Duration.ofMillis(50), props.retry().initialBackoff());
+        assertEquals("http://base", props.baseUrl());
+        assertFalse(props.hedging().enabled());
+    }
+
+    @Test
+    void testInvalidPoolSize() {
+        final AuditionApiProperties props = AuditionApiPropertiesFixtures.defaults()
+            .withPool(new AuditionApiProperties.Pool(0, 5, null));
+        final Set<ConstraintViolation<AuditionApiProperties>> violations = validator.validate(props);
+        assertTrue(violations.stream().anyMatch(
+            v -> v.getPropertyPath().toString().contains("pool.maxTotal")));
+    }
+}
@@ -0,0 +1,118 @@
+package com.audition.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.audition.common.deadline.RequestDeadline;
+import io.micrometer.context.ContextRegistry;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.coyote.ProtocolHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/*
+ * Test class for the bounded upstream executor and the context it hands over to the worker threads
+ */
+
+class ExecutorConfigurationTest {
+
+    private static final String CONTEXT_KEY = "executor-test";
+    private static final ThreadLocal<String> CONTEXT = new ThreadLocal<>();
+
+    private transient ThreadPoolTaskExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        ContextRegistry.getInstance().registerThreadLocalAccessor(CONTEXT_KEY, CONTEXT::get, CONTEXT::set,
+            CONTEXT::remove);
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withExecution(new AuditionApiProperties.Execution(3, 7, false));
+        executor = (ThreadPoolTaskExecutor) new ExecutorConfiguration(properties).upstreamExecutor();
+        executor.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+        ContextRegistry.getInstance().removeThreadLocalAccessor(CONTEXT_KEY);
+        CONTEXT.remove();
+    }
+
+    @Test
+    void testExecutorIsBounded() {
+        assertEquals(3, executor.getMaxPoolSize());
+        assertEquals(7, executor.getQueueCapacity());
+    }
+
+    @Test
+    void testContextIsPropagatedToWorkerThread() throws Exception {
+        CONTEXT.set("trace-123");
+        final String seenByWorker = CompletableFuture.supplyAsync(CONTEXT::get, executor).get(5, TimeUnit.SECONDS);
+        assertEquals("trace-123", seenByWorker);
+    }
+
+    // The blocking calls a request hands to the executor keep its deadline for their retries
+    @Test
+    void testRequestDeadlineIsPropagatedToWorkerThread() throws Exception {
+        final long deadline = RequestDeadline.within(Duration.ofSeconds(5), RequestDeadline::nanos);
+        final long seenByWorker = RequestDeadline.within(Duration.ofSeconds(5),
+            () -> CompletableFuture.supplyAsync(RequestDeadline::nanos, executor)).get(5, TimeUnit.SECONDS);
+        assertTrue(seenByWorker != RequestDeadline.NONE && seenByWorker - deadline >= 0);
+        assertEquals(RequestDeadline.NONE, CompletableFuture.supplyAsync(RequestDeadline::nanos, executor)
+            .get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testVirtualThreadModeRunsCallsOnVirtualThreads() throws Exception {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withExecution(new AuditionApiProperties.Execution(null, null, true));
+        final AsyncTaskExecutor virtualExecutor = new ExecutorConfiguration(properties).upstreamExecutor();
+        CONTEXT.set("trace-456");
+        final Thread worker = CompletableFuture.supplyAsync(Thread::currentThread, virtualExecutor)
+            .get(5, TimeUnit.SECONDS);
+        assertTrue(worker.isVirtual());
+        assertEquals("trace-456", CompletableFuture.supplyAsync(CONTEXT::get, virtualExecutor)
+            .get(5, TimeUnit.SECONDS));
+        ((DisposableBean) virtualExecutor).destroy();
+    }
+
+    // Closing the context waits for the call in flight instead of leaving it to a JVM on its way out
+    @Test
+    void testVirtualThreadExecutorDrainsOnDestroy() throws Exception {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withExecution(new AuditionApiProperties.Execution(null, null, true));
+        final AsyncTaskExecutor virtualExecutor = new ExecutorConfiguration(properties).upstreamExecutor();
+        final CompletableFuture<Void> call = CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }, virtualExecutor);
+
+        ((DisposableBean) virtualExecutor).destroy();
+        assertTrue(call.isDone());
+        assertFalse(call.isCompletedExceptionally());
+    }
+
+    // Tomcat runs the requests on the executor bean, which the context closes
+    @Test
+    void testRequestExecutorIsTheClosableBean() {
+        final ExecutorConfiguration configuration = new ExecutorConfiguration(AuditionApiPropertiesFixtures.defaults());
+        final ProtocolHandler protocolHandler = mock(ProtocolHandler.class);
+        try (ExecutorService requestExecutor = configuration.virtualThreadRequestExecutorService()) {
+            configuration.virtualThreadRequestExecutor(requestExecutor).customize(protocolHandler);
+            verify(protocolHandler).setExecutor(requestExecutor);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.audition.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the pooled upstream HTTP clients and their pool metrics
+ */
+
+class HttpClientConfigurationTest {
+
+    private static final String POOL_MAX = "audition.upstream.pool.max";
+
+    private transient PoolingHttpClientConnectionManager connectionManager;
+    private transient PoolingAsyncClientConnectionManager asyncConnectionManager;
+    private transient HttpClientConfiguration config;
+
+    @BeforeEach
+    void setUp() {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withConnection(new AuditionApiProperties.Connection(Duration.ofMillis(500), Duration.ofSeconds(1),
+                Duration.ofMillis(200)))
+            .withPool(new AuditionApiProperties.Pool(8, 4, Duration.ofSeconds(10), 25))
+            .withAsync(new AuditionApiProperties.Async(1, null, null));
+        config = new HttpClientConfiguration(properties);
+        connectionManager = config.upstreamConnectionManager();
+        asyncConnectionManager = config.upstreamAsyncConnectionManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionManager.close();
+        asyncConnectionManager.close();
+    }
+
+    // The two pools split max-total and max-per-route, async-share percent going to the non-blocking one
+    @Test
+    void testConnectionManagersSplitPoolLimits() {
+        assertEquals(6, connectionManager.getMaxTotal());
+        assertEquals(3, connectionManager.getDefaultMaxPerRoute());
+        assertEquals(2, asyncConnectionManager.getMaxTotal());
+        assertEquals(1, asyncConnectionManager.getDefaultMaxPerRoute());
+    }
+
+    @Test
+    void testEveryPoolGetsAConnection() {
+        final AuditionApiProperties.Pool pool = new AuditionApiProperties.Pool(1, 1, null, 99);
+        assertEquals(1, pool.asyncPart(1));
+        assertEquals(1, pool.blockingPart(1));
+        assertEquals(20, pool.asyncPart(20) + pool.blockingPart(20));
+    }
+
+    @Test
+    void testHttpClientIsCreated() throws Exception {
+        try (CloseableHttpClient client = config.upstreamHttpClient(connectionManager)) {
+            assertNotNull(client);
+        }
+    }
+
+    @Test
+    void testPoolMetricsAreRegistered() {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        config.upstreamConnectionPoolMetrics(connectionManager, asyncConnectionManager).bindTo(registry);
+
+        assertEquals(6, registry.get(POOL_MAX).tag(HttpClientConfiguration.POOL_TAG, "blocking").gauge().value());
+        assertEquals(2, registry.get(POOL_MAX).tag(HttpClientConfiguration.POOL_TAG, "async").gauge().value());
+        assertEquals(0, registry.get("audition.upstream.pool.leased").tag(HttpClientConfiguration.POOL_TAG, "async")
+            .gauge().value());
+        assertEquals(0, registry.get("audition.upstream.pool.pending").tag(HttpClientConfiguration.POOL_TAG,
+            "blocking").gauge().value());
+        assertEquals(0, registry.get("audition.upstream.pool.saturation").tag(HttpClientConfiguration.POOL_TAG,
+            "blocking").gauge().value());
+    }
+}
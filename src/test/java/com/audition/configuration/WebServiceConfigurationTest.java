@@ -2,17 +2,25 @@ package com.audition.configuration;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.audition.common.logging.AuditionLogger;
+import com.audition.integration.AdaptiveConcurrencyLimiter;
+import com.audition.integration.UpstreamGuards;
+import com.audition.web.JsonPassthroughHttpMessageConverter;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.client.RestTemplate;
 
@@ -50,9 +58,22 @@ class WebServiceConfigurationTest {
         assertNotNull(converter.getObjectMapper());
     }
 
+    @Test
+    void testPassthroughConverterComesBeforeJackson() {
+        final List<HttpMessageConverter<?>> converters = new ArrayList<>(List.of(
+            config.mappingJackson2HttpMessageConverter()));
+        config.extendMessageConverters(converters);
+        assertInstanceOf(JsonPassthroughHttpMessageConverter.class, converters.get(0));
+    }
+
     @Test
     void testRestTemplateConfiguration() {
-        final RestTemplate restTemplate = config.restTemplate();
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults();
+        final HttpClientConfiguration httpClientConfiguration = new HttpClientConfiguration(properties);
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final RestTemplate restTemplate = config.restTemplate(
+            httpClientConfiguration.upstreamHttpClient(httpClientConfiguration.upstreamConnectionManager()),
+            new UpstreamGuards(properties, registry), new AdaptiveConcurrencyLimiter(properties, registry));
         assertNotNull(restTemplate);
         assertFalse(restTemplate.getInterceptors().isEmpty());
         assertTrue(restTemplate.getMessageConverters().stream()
@@ -0,0 +1,116 @@
+package com.audition.filter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.common.exception.SystemException;
+import com.audition.model.AuditionPost;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the compiled /posts filter, its allocation is measured by PostFilterBenchmark
+ */
+
+class PostFilterTest {
+
+    private static AuditionPost post(final String title, final String body) {
+        final AuditionPost post = new AuditionPost();
+        post.setTitle(title);
+        post.setBody(body);
+        return post;
+    }
+
+    private static boolean matches(final String filter, final String title, final String body) {
+        return matches(filter, PostFilter.Mode.PLAIN, title, body);
+    }
+
+    private static boolean query(final String query, final String title, final String body) {
+        return matches(query, PostFilter.Mode.BOOLEAN, title, body);
+    }
+
+    private static boolean matches(final String filter, final PostFilter.Mode mode, final String title,
+        final String body) {
+        final PostFilter compiled = PostFilter.compile(filter, mode);
+        final boolean raw = compiled.matches(post(title, body));
+        assertEquals(raw, compiled.matchesLowerCase(title.toLowerCase(Locale.ROOT), body.toLowerCase(Locale.ROOT)),
+            "raw and lower-cased matching disagree for '" + filter + "'");
+        return raw;
+    }
+
+    @Test
+    void testPlainFilterIsOneSubstring() {
+        assertTrue(matches("Quick Brown", "the quick brown fox", ""));
+        assertFalse(matches("quick fox", "the quick brown fox", ""));
+        assertTrue(matches("cats and dogs", "", "Cats and Dogs"));
+        assertTrue(matches("FOX", "", "the quick brown fox"));
+    }
+
+    // Chars String.toLowerCase folds otherwise than one by one, or which only match ignoring case upper-cased
+    @Test
+    void testRawMatchFoldsLikeTheIndex() {
+        assertFalse(matches("istanbul", "\u0130stanbul", ""));
+        assertTrue(matches("\u0130stanbul", "\u0130STANBUL", ""));
+        assertFalse(matches("sun", "\u017Fun", ""));
+        assertTrue(matches("\u03C3\u03BF\u03C6", "\u03A3\u039F\u03A6\u0399\u0391", ""));
+        assertTrue(matches("\uD801\uDC28", "\uD801\uDC00", ""));
+        assertTrue(matches("k", "\u212A", ""));
+    }
+
+    // Without mode=boolean operators and quotes are part of the substring
+    @Test
+    void testPlainFilterHasNoOperators() {
+        assertTrue(matches("Cats AND Dogs", "", "cats and dogs"));
+        assertFalse(matches("cats AND dogs", "", "cats, dogs"));
+        assertTrue(matches("say \"NOT\"", "they say \"not\" often", ""));
+        assertFalse(matches("NOT cat", "the quick brown fox", ""));
+        assertEquals(Set.of("\"open"), PostFilter.compile("\"open").requiredTerms());
+    }
+
+    @Test
+    void testModeIsPartOfTheFilter() {
+        assertEquals(PostFilter.compile("a OR b"), PostFilter.compile("a OR b", PostFilter.Mode.PLAIN));
+        assertFalse(PostFilter.compile("a OR b").equals(PostFilter.compile("a OR b", PostFilter.Mode.BOOLEAN)));
+        assertEquals(PostFilter.Mode.BOOLEAN, PostFilter.Mode.of("Boolean"));
+        assertEquals(400, assertThrows(SystemException.class, () -> PostFilter.Mode.of("regex")).getStatusCode());
+    }
+
+    @Test
+    void testBooleanOperators() {
+        assertTrue(query("quick AND fox", "the quick brown fox", ""));
+        assertTrue(query("\"brown fox\" quick", "the quick brown fox", ""));
+        assertTrue(query("cat OR fox", "the quick brown fox", ""));
+        assertFalse(query("quick NOT fox", "the quick brown fox", ""));
+        assertTrue(query("NOT cat", "the quick brown fox", ""));
+        assertTrue(query("cat OR quick NOT dog", "the quick brown fox", ""));
+        assertTrue(query("\"quick brown\"", "the QUICK BROWN fox", ""));
+    }
+
+    @Test
+    void testTermsMatchTitleOrBody() {
+        assertTrue(query("title AND body", "a title", "a body"));
+        assertFalse(query("\"title a\"", "a title", "a body"));
+    }
+
+    @Test
+    void testInvalidSyntaxIsBadRequest() {
+        for (final String filter : List.of("fox AND", "OR fox", "\"open", "fox OR OR cat", "NOT")) {
+            final SystemException exception = assertThrows(SystemException.class,
+                () -> PostFilter.compile(filter, PostFilter.Mode.BOOLEAN));
+            assertEquals(400, exception.getStatusCode());
+        }
+    }
+
+    @Test
+    void testRequiredTerms() {
+        assertEquals(Set.of("quick fox"), PostFilter.compile("Quick Fox").requiredTerms());
+        assertEquals(Set.of("quick", "fox"), PostFilter.compile("quick AND fox NOT dog", PostFilter.Mode.BOOLEAN)
+            .requiredTerms());
+        assertEquals(Set.of("fox"), PostFilter.compile("quick fox OR fox", PostFilter.Mode.BOOLEAN).requiredTerms());
+        assertTrue(PostFilter.compile("NOT dog", PostFilter.Mode.BOOLEAN).requiredTerms().isEmpty());
+    }
+}
@@ -0,0 +1,105 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.common.exception.SystemException;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+/*
+ * Test class for the adaptive limit of the calls in flight to the upstream
+ */
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long RTT = Duration.ofMillis(20).toNanos();
+
+    private final transient SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    // Between 2 and 40 calls, 150% round trip tolerance, 50% smoothing, 90% backoff
+    private AdaptiveConcurrencyLimiter limiter(final int initialLimit) {
+        return new AdaptiveConcurrencyLimiter(AuditionApiPropertiesFixtures.defaults()
+            .withConcurrencyLimit(new AuditionApiProperties.ConcurrencyLimit(true, initialLimit, 2, 40, 150, 50, 100,
+                90)), registry);
+    }
+
+    private static void samples(final AdaptiveConcurrencyLimiter limiter, final int count, final long rttNanos) {
+        for (int i = 0; i < count; i++) {
+            limiter.update(rttNanos, limiter.limit(), false);
+        }
+    }
+
+    @Test
+    void testCallsPastTheLimitAreRejectedWith503() {
+        final AdaptiveConcurrencyLimiter limiter = limiter(2);
+        final AdaptiveConcurrencyLimiter.Permit first = limiter.acquire();
+        limiter.acquire();
+        assertEquals(503, assertThrows(SystemException.class, limiter::acquire).getStatusCode());
+        assertEquals(1, registry.get(AdaptiveConcurrencyLimiter.REJECTED_METRIC).counter().count());
+        assertEquals(2, registry.get(AdaptiveConcurrencyLimiter.INFLIGHT_METRIC).gauge().value());
+
+        first.complete(HttpStatus.OK);
+        limiter.acquire();
+    }
+
+    @Test
+    void testSteadyRoundTripsGrowTheLimitUpToItsMax() {
+        final AdaptiveConcurrencyLimiter limiter = limiter(10);
+        samples(limiter, 5, RTT);
+        assertTrue(limiter.limit() > 10);
+        samples(limiter, 100, RTT);
+        assertEquals(40, limiter.limit());
+        assertEquals(40, registry.get(AdaptiveConcurrencyLimiter.LIMIT_METRIC).gauge().value());
+    }
+
+    // Round trips within the tolerance keep the limit, slower ones bring it down, by half at most per step
+    @Test
+    void testRisingRoundTripsShrinkTheLimit() {
+        final AdaptiveConcurrencyLimiter limiter = limiter(40);
+        samples(limiter, 100, RTT);
+        samples(limiter, 1, RTT * 3 / 2);
+        assertEquals(40, limiter.limit());
+
+        samples(limiter, 5, RTT * 4);
+        assertTrue(limiter.limit() < 30);
+        samples(limiter, 100, RTT * 20);
+        assertTrue(limiter.limit() >= 2);
+    }
+
+    @Test
+    void testFailuresBackOffDownToTheMinimum() {
+        final AdaptiveConcurrencyLimiter limiter = limiter(20);
+        limiter.update(RTT, 20, true);
+        assertEquals(18, limiter.limit());
+        for (int i = 0; i < 50; i++) {
+            limiter.acquire().complete(HttpStatus.BAD_GATEWAY);
+        }
+        assertEquals(2, limiter.limit());
+    }
+
+    // A limit the calls leave half unused is kept as it is
+    @Test
+    void testUnusedLimitDoesNotGrow() {
+        final AdaptiveConcurrencyLimiter limiter = limiter(20);
+        for (int i = 0; i < 50; i++) {
+            limiter.update(RTT, 5, false);
+        }
+        assertEquals(20, limiter.limit());
+    }
+
+    @Test
+    void testCallsNeverSentGiveTheirPermitBack() {
+        final AdaptiveConcurrencyLimiter limiter = limiter(20);
+        limiter.acquire().complete(new CancellationException());
+        limiter.acquire().complete(new SystemException("open", "Service Unavailable", 503));
+        assertEquals(0, limiter.inflight());
+        assertEquals(20, limiter.limit());
+    }
+}
@@ -2,23 +2,50 @@ package com.audition.integration;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.contains;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.audition.cache.CommentsCache;
+import com.audition.cache.NotFoundCache;
+import com.audition.common.exception.SystemException;
 import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.configuration.ExecutorConfiguration;
 import com.audition.model.AuditionComment;
 import com.audition.model.AuditionPost;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
 /*
@@ -28,28 +55,81 @@ import org.springframework.web.client.RestTemplate;
 
 class AuditionIntegrationClientTest {
 
+    private static final String CONTEXT_KEY = "integration-client-test";
+    private static final ThreadLocal<String> CONTEXT = new ThreadLocal<>();
+
     private transient RestTemplate restTemplate;
+    private transient UpstreamAsyncClient asyncClient;
+    private transient PostBatchLoader postBatchLoader;
     private transient AuditionIntegrationClient client;
+    private transient ThreadPoolTaskExecutor executor;
+    private transient SimpleMeterRegistry registry;
+    private transient AuditionApiProperties properties;
 
     @BeforeEach
     void setUp() {
         restTemplate = mock(RestTemplate.class);
-        final AuditionApiProperties.Posts postsConfig = new AuditionApiProperties.Posts("/posts");
-        final AuditionApiProperties.Comments commentsConfig = new AuditionApiProperties.Comments("/comments");
-        final AuditionApiProperties apiProperties = new AuditionApiProperties("http://base", postsConfig,
-            commentsConfig);
-        client = new AuditionIntegrationClient(restTemplate, apiProperties);
+        asyncClient = mock(UpstreamAsyncClient.class);
+        postBatchLoader = mock(PostBatchLoader.class);
+        // The comments cache, the negative cache and push-down are on, batching and embedding only where a test says so
+        properties = AuditionApiPropertiesFixtures.defaults()
+            .withCommentsCache(new AuditionApiProperties.CommentsCache(true, null, null))
+            .withNegativeCache(new AuditionApiProperties.NegativeCache(true, null, null))
+            .withPushDown(new AuditionApiProperties.PushDown(true))
+            .withExecution(new AuditionApiProperties.Execution(2, 10, false));
+        ContextRegistry.getInstance().registerThreadLocalAccessor(CONTEXT_KEY, CONTEXT::get, CONTEXT::set,
+            CONTEXT::remove);
+        executor = (ThreadPoolTaskExecutor) new ExecutorConfiguration(properties).upstreamExecutor();
+        executor.initialize();
+        registry = new SimpleMeterRegistry();
+        client = clientWith(properties);
+    }
+
+    private AuditionIntegrationClient clientWith(final AuditionApiProperties apiProperties) {
+        return new AuditionIntegrationClient(restTemplate, apiProperties, new StreamingJsonReader(new ObjectMapper()),
+            executor, new RequestCoalescer(registry), new CommentsCache(apiProperties, registry), asyncClient,
+            postBatchLoader, new CommentsEmbedding(apiProperties, registry),
+            new NotFoundCache(apiProperties, registry), new UpstreamRetry(apiProperties, registry));
+    }
+
+    // Typed stand-ins for the extractor argument of RestTemplate.execute, a raw class matcher is an unchecked call
+    private static ResponseExtractor<List<AuditionPost>> postsExtractor() {
+        return any();
+    }
+
+    private static ResponseExtractor<List<AuditionComment>> commentsExtractor() {
+        return any();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+        ContextRegistry.getInstance().removeThreadLocalAccessor(CONTEXT_KEY);
+        CONTEXT.remove();
     }
 
     @Test
     void testGetPosts() {
-        final AuditionPost[] posts = {new AuditionPost(), new AuditionPost()};
-        when(restTemplate.getForEntity(anyString(), eq(AuditionPost[].class)))
-            .thenReturn(new ResponseEntity<>(posts, HttpStatus.OK));
+        final List<AuditionPost> posts = List.of(new AuditionPost(), new AuditionPost());
+        when(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class),
+            postsExtractor())).thenReturn(posts);
         final List<AuditionPost> result = client.getPosts();
         assertEquals(2, result.size());
     }
 
+    // The query is encoded once here, the URI overload keeps the RestTemplate from encoding it again
+    @Test
+    void testPushDownQueries() {
+        final List<AuditionPost> posts = List.of(new AuditionPost());
+        when(restTemplate.execute(eq(URI.create("http://base/posts?_sort=id&_page=2&_limit=10")), eq(HttpMethod.GET),
+            any(RequestCallback.class), postsExtractor())).thenReturn(posts);
+        when(restTemplate.execute(eq(URI.create("http://base/posts?q=rerum+est%26qui%25")),
+            eq(HttpMethod.GET), any(RequestCallback.class), postsExtractor())).thenReturn(posts);
+        assertEquals(1, client.getPostsPage(2, 10).size());
+        assertEquals(1, client.searchPosts("rerum est&qui%").size());
+        assertTrue(client.isPushDownEnabled());
+    }
+
     @Test
     void testGetPostByIdSuccess() {
         final AuditionPost post = new AuditionPost();
@@ -69,10 +149,10 @@ class AuditionIntegrationClientTest {
     @Test
     void testGetPostWithComments() {
         final AuditionPost post = new AuditionPost();
-        final AuditionComment[] comments = {new AuditionComment()};
+        final List<AuditionComment> comments = List.of(new AuditionComment());
         when(restTemplate.getForObject(anyString(), eq(AuditionPost.class))).thenReturn(post);
-        when(restTemplate.getForEntity(contains("/comments"), eq(AuditionComment[].class)))
-            .thenReturn(new ResponseEntity<>(comments, HttpStatus.OK));
+        when(restTemplate.execute(contains("/comments"), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor())).thenReturn(comments);
         final AuditionPost result = client.getPostWithComments(1L);
         assertNotNull(result);
         assertNotNull(result.getComments());
@@ -81,10 +161,330 @@ class AuditionIntegrationClientTest {
 
     @Test
     void testGetCommentsByPostId() {
-        final AuditionComment[] comments = {new AuditionComment(), new AuditionComment()};
-        when(restTemplate.getForEntity(anyString(), eq(AuditionComment[].class)))
-            .thenReturn(new ResponseEntity<>(comments, HttpStatus.OK));
+        final List<AuditionComment> comments = List.of(new AuditionComment(), new AuditionComment());
+        when(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor())).thenReturn(comments);
         final List<AuditionComment> result = client.getCommentsByPostId(1L);
         assertEquals(2, result.size());
     }
-} 
\ No newline at end of file
+
+    // The comments of a post come from the cache after the first call, whichever method loaded them
+    @Test
+    void testCommentsAreCachedByPostId() {
+        when(restTemplate.getForObject(anyString(), eq(AuditionPost.class))).thenReturn(new AuditionPost());
+        when(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor())).thenReturn(List.of(new AuditionComment()));
+        client.getCommentsByPostId(1L);
+        assertEquals(1, client.getPostWithComments(1L).getComments().size());
+        client.getCommentsByPostId(1L);
+        verify(restTemplate, times(1)).execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor());
+    }
+
+    // The comments already loaded when the post turns out missing are dropped, the next lookup asks the upstream again
+    @Test
+    void testCommentsOfAMissingPostAreNotCached() throws InterruptedException {
+        final CountDownLatch commentsStarted = new CountDownLatch(1);
+        when(restTemplate.getForObject(anyString(), eq(AuditionPost.class))).thenAnswer(invocation -> {
+            commentsStarted.await(5, TimeUnit.SECONDS);
+            throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+        });
+        when(restTemplate.execute(contains("/comments"), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor())).thenAnswer(invocation -> {
+                commentsStarted.countDown();
+                return List.of(new AuditionComment());
+            });
+
+        assertEquals(404, assertThrows(SystemException.class, () -> client.getPostWithComments(1L)).getStatusCode());
+        executor.getThreadPoolExecutor().shutdown();
+        assertTrue(executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS));
+        client.getCommentsByPostId(1L);
+        verify(restTemplate, times(2)).execute(contains("/comments"), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor());
+    }
+
+    // Each upstream call waits for the other one to start, this only completes when both run at the same time
+    @Test
+    void testGetPostWithCommentsCallsUpstreamInParallel() {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        when(restTemplate.getForObject(anyString(), eq(AuditionPost.class))).thenAnswer(invocation -> {
+            bothStarted.countDown();
+            bothStarted.await(5, TimeUnit.SECONDS);
+            return new AuditionPost();
+        });
+        when(restTemplate.execute(contains("/comments"), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor())).thenAnswer(invocation -> {
+                bothStarted.countDown();
+                bothStarted.await(5, TimeUnit.SECONDS);
+                return List.of(new AuditionComment());
+            });
+
+        final AuditionPost result = client.getPostWithComments(1L);
+        assertEquals(0, bothStarted.getCount());
+        assertEquals(1, result.getComments().size());
+    }
+
+    // The upstream calls run on the worker threads with the trace context of the request thread
+    @Test
+    void testParallelCallsSeeTheContextOfTheCaller() {
+        final List<String> seen = new CopyOnWriteArrayList<>();
+        when(restTemplate.getForObject(anyString(), eq(AuditionPost.class))).thenAnswer(invocation -> {
+            seen.add(Thread.currentThread().getName() + "=" + CONTEXT.get());
+            return new AuditionPost();
+        });
+        when(restTemplate.execute(contains("/comments"), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor())).thenAnswer(invocation -> {
+                seen.add(Thread.currentThread().getName() + "=" + CONTEXT.get());
+                return List.of(new AuditionComment());
+            });
+        CONTEXT.set("trace-123");
+
+        client.getPostWithComments(1L);
+        assertEquals(2, seen.size());
+        assertTrue(seen.stream().allMatch(value -> value.startsWith("upstream-") && value.endsWith("=trace-123")),
+            seen::toString);
+    }
+
+    @Test
+    void testGetPostWithCommentsNotFound() {
+        when(restTemplate.getForObject(anyString(), eq(AuditionPost.class))).thenReturn(new AuditionPost());
+        when(restTemplate.execute(contains("/comments"), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor())).thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+        final SystemException ex = assertThrows(SystemException.class, () -> client.getPostWithComments(1L));
+        assertEquals(404, ex.getStatusCode());
+        assertTrue(ex.getMessage().contains("Cannot find a Post and its comments with id 1"));
+    }
+
+    @Test
+    void testGetPostByIdAsyncNotFound() {
+        when(asyncClient.get("http://base/posts/1", AuditionPost.class)).thenReturn(
+            CompletableFuture.failedFuture(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null,
+                null, null)));
+        final CompletionException ex = assertThrows(CompletionException.class,
+            () -> client.getPostByIdAsync(1L).join());
+        final SystemException cause = (SystemException) ex.getCause();
+        assertEquals(404, cause.getStatusCode());
+        assertEquals("Cannot find a Post with id 1", cause.getMessage());
+    }
+
+    // A post the upstream answered 404 for is reported missing again without another upstream call
+    @Test
+    void testRepeatedNotFoundIsAnsweredFromNegativeCache() {
+        when(restTemplate.getForObject(anyString(), eq(AuditionPost.class)))
+            .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+        assertThrows(SystemException.class, () -> client.getPostById(1L));
+        final SystemException ex = assertThrows(SystemException.class, () -> client.getPostWithComments(1L));
+
+        assertEquals(404, ex.getStatusCode());
+        assertEquals(0, ex.getStackTrace().length);
+        verify(restTemplate, times(1)).getForObject(anyString(), eq(AuditionPost.class));
+        verify(restTemplate, never()).execute(anyString(), eq(HttpMethod.GET), any(RequestCallback.class),
+            commentsExtractor());
+    }
+
+    // Each caller gets its own upstream body to read, so two lookups of the same comments make two calls
+    @Test
+    void testPassthroughLookupsAreNotBatchedNorShared() {
+        final JsonPassthrough post = new JsonPassthrough(new JsonFactory(), InputStream.nullInputStream());
+        final JsonPassthrough comments = new JsonPassthrough(new JsonFactory(), InputStream.nullInputStream());
+        when(asyncClient.getJson("http://base/posts/1")).thenReturn(CompletableFuture.completedFuture(post));
+        when(asyncClient.getJson("http://base/comments?postId=1"))
+            .thenReturn(CompletableFuture.completedFuture(comments));
+        when(asyncClient.getJson("http://base/posts/2")).thenReturn(
+            CompletableFuture.failedFuture(new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+
+        assertSame(post, client.getPostByIdJsonAsync(1L).join());
+        assertSame(comments, client.getCommentsByPostIdJsonAsync(1L).join());
+        assertSame(comments, client.getCommentsByPostIdJsonAsync(1L).join());
+        verify(asyncClient, times(2)).getJson("http://base/comments?postId=1");
+        verify(postBatchLoader, never()).load(anyLong());
+
+        final CompletionException ex = assertThrows(CompletionException.class,
+            () -> client.getPostByIdJsonAsync(2L).join());
+        assertEquals("Cannot find a Post with id 2", ex.getCause().getMessage());
+        assertThrows(CompletionException.class, () -> client.getPostByIdJsonAsync(2L).join());
+        verify(asyncClient, times(1)).getJson("http://base/posts/2");
+    }
+
+    @Test
+    void testRepeatedAsyncNotFoundIsAnsweredFromNegativeCache() {
+        when(asyncClient.get("http://base/posts/1", AuditionPost.class)).thenReturn(
+            CompletableFuture.failedFuture(new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+        assertThrows(CompletionException.class, () -> client.getPostByIdAsync(1L).join());
+        final CompletionException ex = assertThrows(CompletionException.class,
+            () -> client.getPostByIdAsync(1L).join());
+
+        assertEquals(404, ((SystemException) ex.getCause()).getStatusCode());
+        verify(asyncClient, times(1)).get("http://base/posts/1", AuditionPost.class);
+        assertThrows(CompletionException.class, () -> client.getPostWithCommentsAsync(1L).join());
+        verify(asyncClient, never()).getList(anyString(), eq(AuditionComment.class));
+    }
+
+    @Test
+    void testGetPostWithCommentsAsync() {
+        when(asyncClient.get("http://base/posts/1", AuditionPost.class))
+            .thenReturn(CompletableFuture.completedFuture(new AuditionPost()));
+        when(asyncClient.getList("http://base/posts/1/comments", AuditionComment.class))
+            .thenReturn(CompletableFuture.completedFuture(List.of(new AuditionComment())));
+        assertEquals(1, client.getPostWithCommentsAsync(1L).join().getComments().size());
+    }
+
+    // The calls complete on another thread, standing in for an I/O thread, which has no trace context of its own
+    @Test
+    void testAsyncContinuationsSeeTheContextOfTheCaller() throws Exception {
+        final CompletableFuture<AuditionPost> post = new CompletableFuture<>();
+        final CompletableFuture<List<AuditionComment>> comments = new CompletableFuture<>();
+        when(asyncClient.get("http://base/posts/1", AuditionPost.class)).thenReturn(post);
+        when(asyncClient.getList("http://base/posts/1/comments", AuditionComment.class)).thenReturn(comments);
+        final CompletableFuture<AuditionPost> missingPost = new CompletableFuture<>();
+        when(asyncClient.get("http://base/posts/2", AuditionPost.class)).thenReturn(missingPost);
+        when(asyncClient.getList("http://base/posts/2/comments", AuditionComment.class)).thenReturn(comments);
+        CONTEXT.set("trace-456");
+        final CompletableFuture<String> seen = client.getPostWithCommentsAsync(1L).thenApply(result -> CONTEXT.get());
+        final CompletableFuture<String> seenOnFailure = client.getPostWithCommentsAsync(2L)
+            .handle((result, failure) -> CONTEXT.get());
+        CONTEXT.remove();
+
+        final Thread ioThread = new Thread(() -> {
+            comments.complete(List.of(new AuditionComment()));
+            post.complete(new AuditionPost());
+            missingPost.completeExceptionally(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+        });
+        ioThread.start();
+        ioThread.join(5000);
+        assertEquals("trace-456", seen.get(5, TimeUnit.SECONDS));
+        assertEquals("trace-456", seenOnFailure.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testGetPostWithCommentsAsyncNotFound() {
+        when(asyncClient.get("http://base/posts/1", AuditionPost.class))
+            .thenReturn(CompletableFuture.completedFuture(new AuditionPost()));
+        when(asyncClient.getList("http://base/posts/1/comments", AuditionComment.class)).thenReturn(
+            CompletableFuture.failedFuture(new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+        final CompletionException ex = assertThrows(CompletionException.class,
+            () -> client.getPostWithCommentsAsync(1L).join());
+        assertEquals("Cannot find a Post and its comments with id 1", ex.getCause().getMessage());
+    }
+
+    // The comments answered for a post the upstream does not have are dropped, the next lookup asks again
+    @Test
+    void testAsyncCommentsOfAMissingPostAreNotCached() {
+        when(asyncClient.get("http://base/posts/1", AuditionPost.class)).thenReturn(CompletableFuture.failedFuture(
+            HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null)));
+        when(asyncClient.getList("http://base/posts/1/comments", AuditionComment.class))
+            .thenReturn(CompletableFuture.completedFuture(List.of(new AuditionComment())));
+        when(asyncClient.getList("http://base/comments?postId=1", AuditionComment.class))
+            .thenReturn(CompletableFuture.completedFuture(List.of(new AuditionComment())));
+
+        assertThrows(CompletionException.class, () -> client.getPostWithCommentsAsync(1L).join());
+        client.getCommentsByPostIdAsync(1L).join();
+        verify(asyncClient).getList("http://base/comments?postId=1", AuditionComment.class);
+    }
+
+    // Other client errors keep their status, server errors are passed on unchanged as in the blocking calls
+    @Test
+    void testAsyncErrorsAreMappedLikeBlockingCalls() {
+        when(asyncClient.get("http://base/posts/1", AuditionPost.class)).thenReturn(
+            CompletableFuture.failedFuture(new HttpClientErrorException(HttpStatus.FORBIDDEN)));
+        when(asyncClient.get("http://base/posts/2", AuditionPost.class)).thenReturn(
+            CompletableFuture.failedFuture(new HttpServerErrorException(HttpStatus.BAD_GATEWAY)));
+        final CompletionException forbidden = assertThrows(CompletionException.class,
+            () -> client.getPostByIdAsync(1L).join());
+        assertEquals(403, ((SystemException) forbidden.getCause()).getStatusCode());
+        final CompletionException badGateway = assertThrows(CompletionException.class,
+            () -> client.getPostByIdAsync(2L).join());
+        assertTrue(badGateway.getCause() instanceof HttpServerErrorException);
+    }
+
+    @Test
+    void testGetCommentsByPostIdAsyncIsCached() {
+        when(asyncClient.getList("http://base/comments?postId=1", AuditionComment.class))
+            .thenReturn(CompletableFuture.completedFuture(List.of(new AuditionComment())));
+        when(asyncClient.getList("http://base/posts", AuditionPost.class))
+            .thenReturn(CompletableFuture.completedFuture(List.of(new AuditionPost())));
+        assertEquals(1, client.getCommentsByPostIdAsync(1L).join().size());
+        assertEquals(1, client.getCommentsByPostIdAsync(1L).join().size());
+        assertEquals(1, client.getPostsAsync().join().size());
+        verify(asyncClient, times(1)).getList("http://base/comments?postId=1", AuditionComment.class);
+    }
+
+    @Test
+    void testGetPostByIdAsyncIsBatchedWhenEnabled() {
+        final AuditionIntegrationClient batchingClient = clientWith(properties
+            .withBatch(new AuditionApiProperties.Batch(true, null, null)));
+        when(postBatchLoader.load(3L)).thenReturn(CompletableFuture.failedFuture(
+            new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+
+        final CompletionException ex = assertThrows(CompletionException.class,
+            () -> batchingClient.getPostByIdAsync(3L).join());
+        assertEquals("Cannot find a Post with id 3", ex.getCause().getMessage());
+        verify(asyncClient, never()).get(anyString(), eq(AuditionPost.class));
+    }
+
+    @Test
+    void testGetPostByIdAsyncIsFetchedAloneWhenBatchIsDisabled() {
+        final AuditionIntegrationClient singleClient = clientWith(properties
+            .withBatch(new AuditionApiProperties.Batch(false, null, null)));
+        final AuditionPost post = new AuditionPost();
+        when(asyncClient.get("http://base/posts/3", AuditionPost.class))
+            .thenReturn(CompletableFuture.completedFuture(post));
+
+        assertSame(post, singleClient.getPostByIdAsync(3L).join());
+        verify(postBatchLoader, never()).load(anyLong());
+    }
+
+    @Test
+    void testGetPostWithCommentsAsyncInOneCall() {
+        final AuditionIntegrationClient embeddingClient = clientWith(properties
+            .withEmbed(new AuditionApiProperties.Embed(true, null))
+            .withBatch(new AuditionApiProperties.Batch(true, null, null)));
+        final AuditionPost post = new AuditionPost();
+        post.setComments(List.of(new AuditionComment()));
+        when(asyncClient.get("http://base/posts/1?_embed=comments", AuditionPost.class))
+            .thenReturn(CompletableFuture.completedFuture(post));
+        when(postBatchLoader.load(1L)).thenReturn(CompletableFuture.completedFuture(new AuditionPost()));
+
+        assertEquals(1, embeddingClient.getPostWithCommentsAsync(1L).join().getComments().size());
+        // The embedded comments went into the cache, only the post is fetched the second time
+        assertEquals(1, embeddingClient.getPostWithCommentsAsync(1L).join().getComments().size());
+        verify(asyncClient, times(1)).get("http://base/posts/1?_embed=comments", AuditionPost.class);
+        verify(asyncClient, never()).getList(anyString(), eq(AuditionComment.class));
+        assertEquals(1, registry.get(CommentsEmbedding.PATH_METRIC).tag("path", "embed").counter().count());
+        assertEquals(1, registry.get(CommentsEmbedding.PATH_METRIC).tag("path", "two-calls").counter().count());
+    }
+
+    // An upstream ignoring _embed gets the comments asked for separately, and two calls from then on
+    @Test
+    void testGetPostWithCommentsAsyncFallsBackWithoutEmbedSupport() {
+        final AuditionIntegrationClient embeddingClient = clientWith(properties
+            .withEmbed(new AuditionApiProperties.Embed(true, null))
+            .withBatch(new AuditionApiProperties.Batch(true, null, null))
+            .withCommentsCache(new AuditionApiProperties.CommentsCache(false, null, null)));
+        when(asyncClient.get("http://base/posts/1?_embed=comments", AuditionPost.class))
+            .thenReturn(CompletableFuture.completedFuture(new AuditionPost()));
+        when(asyncClient.getList("http://base/posts/1/comments", AuditionComment.class))
+            .thenReturn(CompletableFuture.completedFuture(List.of(new AuditionComment())));
+        when(postBatchLoader.load(1L)).thenReturn(CompletableFuture.completedFuture(new AuditionPost()));
+
+        assertEquals(1, embeddingClient.getPostWithCommentsAsync(1L).join().getComments().size());
+        assertEquals(1, embeddingClient.getPostWithCommentsAsync(1L).join().getComments().size());
+        verify(asyncClient, times(1)).get("http://base/posts/1?_embed=comments", AuditionPost.class);
+        assertEquals(1, registry.get(CommentsEmbedding.PATH_METRIC).tag("path", "embed-fallback").counter().count());
+        assertEquals(1, registry.get(CommentsEmbedding.PATH_METRIC).tag("path", "two-calls").counter().count());
+    }
+
+    // A timed out request gives up the comments call started once the post came back without them
+    @Test
+    void testCancelledEmbedFallbackCancelsTheCommentsCall() {
+        final AuditionIntegrationClient embeddingClient = clientWith(properties
+            .withEmbed(new AuditionApiProperties.Embed(true, null)));
+        final CompletableFuture<List<AuditionComment>> fallback = new CompletableFuture<>();
+        when(asyncClient.get("http://base/posts/1?_embed=comments", AuditionPost.class))
+            .thenReturn(CompletableFuture.completedFuture(new AuditionPost()));
+        when(asyncClient.getList("http://base/posts/1/comments", AuditionComment.class)).thenReturn(fallback);
+
+        embeddingClient.getPostWithCommentsAsync(1L).cancel(false);
+        assertTrue(fallback.isCancelled());
+    }
+}
@@ -0,0 +1,132 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import com.audition.configuration.AuditionApiProperties;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the count based circuit breaker states
+ */
+
+class CircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(5).toNanos();
+
+    // Window of 10 calls, judged from 4 calls on, 50% failures or 50% slow calls open it, 2 trial calls
+    private static CircuitBreaker breaker(final Duration openDuration) {
+        return new CircuitBreaker(new AuditionApiProperties.CircuitBreaker(true, 10, 4, 50, Duration.ofSeconds(1),
+            50, openDuration, 2));
+    }
+
+    private static long acquire(final CircuitBreaker breaker) {
+        final long permit = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.REJECTED, permit);
+        return permit;
+    }
+
+    private static void calls(final CircuitBreaker breaker, final int count, final long durationNanos,
+        final boolean failure) {
+        for (int i = 0; i < count; i++) {
+            breaker.record(acquire(breaker), durationNanos, failure);
+        }
+    }
+
+    @Test
+    void testOpensOnFailureRateOnceMinimumCallsAreIn() {
+        final CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        calls(breaker, 3, FAST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        calls(breaker, 1, FAST, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+    }
+
+    // 6 failures in 15 calls stay under 50%, but 5 of them are in the last 10
+    @Test
+    void testOldOutcomesLeaveTheWindow() {
+        final CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        calls(breaker, 3, FAST, false);
+        calls(breaker, 1, FAST, true);
+        calls(breaker, 6, FAST, false);
+        calls(breaker, 4, FAST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        calls(breaker, 1, FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void testOpensOnSlowCallRate() {
+        final CircuitBreaker breaker = breaker(Duration.ofMinutes(1));
+        calls(breaker, 2, FAST, false);
+        calls(breaker, 2, SLOW, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    void testHalfOpenTrialsCloseTheCircuit() {
+        final CircuitBreaker breaker = breaker(Duration.ZERO);
+        calls(breaker, 4, FAST, true);
+        final long first = acquire(breaker);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        final long second = acquire(breaker);
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        breaker.record(first, FAST, false);
+        breaker.record(second, FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void testFailedHalfOpenTrialsOpenItAgain() throws InterruptedException {
+        final CircuitBreaker breaker = breaker(Duration.ofMillis(200));
+        calls(breaker, 4, FAST, true);
+        Thread.sleep(250);
+        calls(breaker, 1, FAST, false);
+        calls(breaker, 1, FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+    }
+
+    // No call comes while the circuit is open, its state still reads half-open once open-duration has passed
+    @Test
+    void testOpenCircuitReadsHalfOpenWithoutCalls() throws InterruptedException {
+        final CircuitBreaker breaker = breaker(Duration.ofMillis(200));
+        calls(breaker, 4, FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        Thread.sleep(250);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        acquire(breaker);
+    }
+
+    @Test
+    void testReleasedTrialPermitIsGivenBack() {
+        final CircuitBreaker breaker = breaker(Duration.ZERO);
+        calls(breaker, 4, FAST, true);
+        acquire(breaker);
+        final long trial = acquire(breaker);
+        breaker.release(trial);
+        acquire(breaker);
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+    }
+
+    // Calls sent while the circuit was closed finish after it went half-open, they are no trials of it
+    @Test
+    void testCallsFromAnEarlierStateAreIgnored() {
+        final CircuitBreaker breaker = breaker(Duration.ZERO);
+        final long sentWhileClosed = acquire(breaker);
+        final long cancelledWhileClosed = acquire(breaker);
+        calls(breaker, 4, FAST, true);
+        final long trial = acquire(breaker);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        breaker.release(cancelledWhileClosed);
+        acquire(breaker);
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        breaker.record(sentWhileClosed, FAST, false);
+        breaker.record(trial, FAST, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    }
+}
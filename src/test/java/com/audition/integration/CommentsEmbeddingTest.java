@@ -0,0 +1,44 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for switching between the embed call and the two calls for a post with its comments
+ */
+
+class CommentsEmbeddingTest {
+
+    private static CommentsEmbedding embedding(final boolean enabled, final Duration probeInterval) {
+        return new CommentsEmbedding(AuditionApiPropertiesFixtures.defaults()
+            .withEmbed(new AuditionApiProperties.Embed(enabled, probeInterval)), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testUnsupportedEmbeddingWaitsForTheProbeInterval() {
+        final CommentsEmbedding embedding = embedding(true, Duration.ofMinutes(10));
+        assertTrue(embedding.isAvailable());
+        embedding.recordUnsupported();
+        assertFalse(embedding.isAvailable());
+        embedding.recordEmbedded();
+        assertTrue(embedding.isAvailable());
+    }
+
+    @Test
+    void testEmbeddingIsProbedAgainAfterTheInterval() {
+        final CommentsEmbedding embedding = embedding(true, Duration.ZERO);
+        embedding.recordUnsupported();
+        assertTrue(embedding.isAvailable());
+    }
+
+    @Test
+    void testDisabled() {
+        assertFalse(embedding(false, null).isAvailable());
+    }
+}
@@ -0,0 +1,152 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.model.AuditionPost;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+/*
+ * Test class for merging the post lookups made within one window into one upstream call
+ */
+
+class PostBatchLoaderTest {
+
+    private transient UpstreamAsyncClient asyncClient;
+    private transient SimpleMeterRegistry registry;
+    private transient CompletableFuture<List<AuditionPost>> upstream;
+
+    @BeforeEach
+    void setUp() {
+        asyncClient = mock(UpstreamAsyncClient.class);
+        registry = new SimpleMeterRegistry();
+        upstream = new CompletableFuture<>();
+        when(asyncClient.getList(anyString(), eq(AuditionPost.class))).thenReturn(upstream);
+    }
+
+    private PostBatchLoader loader(final Duration window, final int maxSize) {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withBatch(new AuditionApiProperties.Batch(true, window, maxSize));
+        return new PostBatchLoader(properties, asyncClient, registry, Runnable::run);
+    }
+
+    private static AuditionPost post(final int id) {
+        final AuditionPost post = new AuditionPost();
+        post.setId(id);
+        post.setTitle("title " + id);
+        return post;
+    }
+
+    @Test
+    void testLookupsInOneWindowShareOneCall() {
+        final PostBatchLoader loader = loader(Duration.ofMillis(20), 50);
+        final CompletableFuture<AuditionPost> first = loader.load(1);
+        final CompletableFuture<AuditionPost> second = loader.load(2);
+        final CompletableFuture<AuditionPost> again = loader.load(1);
+
+        verify(asyncClient, timeout(1000)).getList("http://base/posts?id=1&id=2", AuditionPost.class);
+        upstream.complete(List.of(post(2), post(1)));
+
+        assertEquals("title 1", first.join().getTitle());
+        assertEquals("title 2", second.join().getTitle());
+        assertEquals(1, again.join().getId());
+        assertNotSame(first.join(), again.join());
+        assertEquals(2, registry.get(PostBatchLoader.BATCH_SIZE_METRIC).summary().totalAmount());
+    }
+
+    // A full batch leaves at once, the window timer of that batch must not flush the next one early
+    @Test
+    void testFullBatchIsSentWithoutWaiting() {
+        final PostBatchLoader loader = loader(Duration.ofMinutes(1), 2);
+        loader.load(1);
+        loader.load(2);
+        verify(asyncClient).getList("http://base/posts?id=1&id=2", AuditionPost.class);
+    }
+
+    @Test
+    void testMissingIdFailsWithNotFound() {
+        final PostBatchLoader loader = loader(Duration.ofMinutes(1), 2);
+        final CompletableFuture<AuditionPost> missing = loader.load(7);
+        final CompletableFuture<AuditionPost> found = loader.load(8);
+        upstream.complete(List.of(post(8)));
+        final CompletionException ex = assertThrows(CompletionException.class, missing::join);
+        assertEquals(HttpStatus.NOT_FOUND, assertInstanceOf(HttpClientErrorException.class, ex.getCause())
+            .getStatusCode());
+        assertEquals(8, found.join().getId());
+    }
+
+    // Alone in its window a lookup gets the upstream's own answer for /posts/{id}, its 404 included
+    @Test
+    void testLoneLookupAsksForThePost() {
+        final HttpClientErrorException notFound = HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found",
+            null, null, null);
+        when(asyncClient.get("http://base/posts/7", AuditionPost.class))
+            .thenReturn(CompletableFuture.failedFuture(notFound));
+        when(asyncClient.get("http://base/posts/1", AuditionPost.class))
+            .thenReturn(CompletableFuture.completedFuture(post(1)));
+        final PostBatchLoader loader = loader(Duration.ZERO, 50);
+
+        assertSame(notFound, assertThrows(CompletionException.class, () -> loader.load(7).join()).getCause());
+        assertEquals("title 1", loader.load(1).join().getTitle());
+        verify(asyncClient, never()).getList(anyString(), eq(AuditionPost.class));
+    }
+
+    @Test
+    void testUpstreamFailureReachesEveryCaller() {
+        final PostBatchLoader loader = loader(Duration.ofMillis(20), 50);
+        final CompletableFuture<AuditionPost> first = loader.load(1);
+        final CompletableFuture<AuditionPost> second = loader.load(2);
+        final HttpServerErrorException failure = new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+        upstream.completeExceptionally(failure);
+
+        assertSame(failure, assertThrows(CompletionException.class, first::join).getCause());
+        assertSame(failure, assertThrows(CompletionException.class, second::join).getCause());
+    }
+
+    @Test
+    void testBatchCallIsCancelledWithItsLastCaller() {
+        final PostBatchLoader loader = loader(Duration.ofMinutes(1), 2);
+        final CompletableFuture<AuditionPost> first = loader.load(1);
+        final CompletableFuture<AuditionPost> second = loader.load(2);
+        first.cancel(false);
+        assertFalse(upstream.isCancelled());
+        second.cancel(false);
+        assertTrue(upstream.isCancelled());
+    }
+
+    // A call that could not even be started fails the whole batch instead of leaving it pending
+    @Test
+    void testSynchronousFailureReachesEveryCaller() {
+        final IllegalStateException failure = new IllegalStateException("client closed");
+        when(asyncClient.getList(anyString(), eq(AuditionPost.class))).thenThrow(failure);
+        final PostBatchLoader loader = loader(Duration.ofMinutes(1), 2);
+        final CompletableFuture<AuditionPost> first = loader.load(1);
+        final CompletableFuture<AuditionPost> second = loader.load(2);
+
+        assertSame(failure, assertThrows(CompletionException.class, first::join).getCause());
+        assertSame(failure, assertThrows(CompletionException.class, second::join).getCause());
+    }
+}
@@ -0,0 +1,167 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.common.exception.SystemException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for sharing one in-flight upstream call between concurrent callers
+ */
+
+class RequestCoalescerTest {
+
+    private static final String KEY = "http://base/posts";
+    private static final int FOLLOWERS = 3;
+
+    private transient SimpleMeterRegistry registry;
+    private transient RequestCoalescer coalescer;
+    private transient ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        coalescer = new RequestCoalescer(registry);
+        executor = Executors.newFixedThreadPool(FOLLOWERS + 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private double calls(final String result) {
+        return registry.get(RequestCoalescer.CALLS_METRIC).tag("result", result).counter().count();
+    }
+
+    // The leader's call only finishes once every follower has joined it, so there must be exactly one upstream call
+    @Test
+    void testConcurrentCallersShareOneCall() throws Exception {
+        final AtomicInteger upstreamCalls = new AtomicInteger();
+        final CountDownLatch leaderStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> result = List.of("post");
+
+        final CompletableFuture<List<String>> leader = CompletableFuture.supplyAsync(
+            () -> coalescer.execute(KEY, () -> {
+                upstreamCalls.incrementAndGet();
+                leaderStarted.countDown();
+                await(release);
+                return result;
+            }), executor);
+        leaderStarted.await(5, TimeUnit.SECONDS);
+
+        final List<CompletableFuture<List<String>>> followers = List.of(
+            CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, List::<String>of), executor),
+            CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, List::<String>of), executor),
+            CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, List::<String>of), executor));
+        while (calls("coalesced") < FOLLOWERS) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertSame(result, leader.get(5, TimeUnit.SECONDS));
+        for (final CompletableFuture<List<String>> follower : followers) {
+            assertSame(result, follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(1, calls("issued"));
+    }
+
+    @Test
+    void testExceptionIsSharedWithFollowers() throws Exception {
+        final CountDownLatch leaderStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final SystemException failure = new SystemException("upstream failed", 500);
+
+        final CompletableFuture<Object> leader = CompletableFuture.supplyAsync(
+            () -> coalescer.execute(KEY, () -> {
+                leaderStarted.countDown();
+                await(release);
+                throw failure;
+            }), executor);
+        leaderStarted.await(5, TimeUnit.SECONDS);
+        final CompletableFuture<Object> follower = CompletableFuture.supplyAsync(
+            () -> coalescer.execute(KEY, Object::new), executor);
+        while (calls("coalesced") < 1) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        final CompletionException leaderFailure = assertThrows(CompletionException.class, leader::join);
+        final CompletionException followerFailure = assertThrows(CompletionException.class, follower::join);
+        assertSame(failure, leaderFailure.getCause());
+        assertSame(failure, followerFailure.getCause());
+    }
+
+    // Nothing is cached, a call made after the previous one finished goes upstream again
+    @Test
+    void testSequentialCallsAreNotCoalesced() {
+        assertEquals("first", coalescer.execute(KEY, () -> "first"));
+        assertEquals("second", coalescer.execute(KEY, () -> "second"));
+        assertEquals(2, calls("issued"));
+        assertEquals(0, calls("coalesced"));
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Async callers join the pending future, the key is free again once it completes
+    @Test
+    void testAsyncCallersShareOneCall() {
+        final CompletableFuture<List<String>> upstream = new CompletableFuture<>();
+        final AtomicInteger upstreamCalls = new AtomicInteger();
+        final CompletableFuture<List<String>> leader = coalescer.executeAsync(KEY, () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream;
+        });
+        final CompletableFuture<List<String>> follower = coalescer.executeAsync(KEY, () -> {
+            upstreamCalls.incrementAndGet();
+            return upstream;
+        });
+        follower.cancel(false);
+        upstream.complete(List.of("post"));
+
+        assertEquals(List.of("post"), leader.join());
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(1, calls("coalesced"));
+        coalescer.executeAsync(KEY, () -> CompletableFuture.completedFuture(List.of())).join();
+        assertEquals(2, calls("issued"));
+    }
+
+    // One caller giving up leaves the shared call to the others, the last one cancels it
+    @Test
+    void testAsyncCallIsCancelledWithItsLastCaller() {
+        final CompletableFuture<List<String>> upstream = new CompletableFuture<>();
+        final CompletableFuture<List<String>> leader = coalescer.executeAsync(KEY, () -> upstream);
+        final CompletableFuture<List<String>> follower = coalescer.executeAsync(KEY, () -> upstream);
+        leader.cancel(false);
+        assertFalse(upstream.isCancelled());
+        follower.cancel(false);
+        assertTrue(upstream.isCancelled());
+
+        assertEquals(List.of(), coalescer.executeAsync(KEY, () -> CompletableFuture.completedFuture(List.of()))
+            .join());
+        assertEquals(2, calls("issued"));
+    }
+}
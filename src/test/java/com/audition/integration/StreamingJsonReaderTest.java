@@ -0,0 +1,57 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.common.logging.AuditionLogger;
+import com.audition.configuration.WebServiceConfiguration;
+import com.audition.model.AuditionPost;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for reading the upstream JSON arrays element by element
+ */
+
+class StreamingJsonReaderTest {
+
+    private final transient StreamingJsonReader reader = new StreamingJsonReader(
+        new WebServiceConfiguration(new AuditionLogger()).objectMapper());
+
+    private static InputStream json(final String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testReadListParsesEveryElement() throws IOException {
+        final List<AuditionPost> posts = reader.readList(
+            json("[{\"id\":1,\"title\":\"one\"},null,{\"id\":2,\"title\":\"two\",\"unknown\":true}]"),
+            AuditionPost.class);
+        assertEquals(2, posts.size());
+        assertEquals("one", posts.get(0).getTitle());
+        assertEquals(2, posts.get(1).getId());
+    }
+
+    @Test
+    void testReadListOfEmptyArray() throws IOException {
+        assertTrue(reader.readList(json("[]"), AuditionPost.class).isEmpty());
+    }
+
+    @Test
+    void testForEachHandsOverElementsInOrder() throws IOException {
+        final List<Integer> ids = new ArrayList<>();
+        reader.forEach(json("[{\"id\":3},{\"id\":1},{\"id\":2}]"), AuditionPost.class, post -> ids.add(post.getId()));
+        assertEquals(List.of(3, 1, 2), ids);
+    }
+
+    @Test
+    void testNonArrayBodyIsRejected() {
+        assertThrows(IOException.class, () -> reader.readList(json("{\"id\":1}"), AuditionPost.class));
+    }
+}
@@ -0,0 +1,328 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.configuration.HttpClientConfiguration;
+import com.audition.model.AuditionPost;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.UnknownContentTypeException;
+
+/*
+ * Test class for the non-blocking upstream client against a local HTTP server
+ */
+
+class UpstreamAsyncClientTest {
+
+    private static final String POSTS = "[{\"id\":1,\"userId\":7,\"title\":\"first\",\"body\":\"one\"},null,"
+        + "{\"id\":2,\"userId\":7,\"title\":\"second\",\"body\":\"two\",\"comments\":[{\"id\":5}]}]";
+
+    private static final String PASSTHROUGH_POST = "{\"userId\": 7, \"id\": 1, \"title\": \"first\","
+        + " \"body\": \"one\", \"tags\": [\"new\", null]}";
+
+    private static final String LARGE_COMMENTS = "[" + "{\"id\":1,\"postId\":1,\"body\":\"comment\"},".repeat(3000)
+        + "{\"id\":2}]";
+
+    private final transient SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private transient HttpServer server;
+    private transient CloseableHttpAsyncClient httpClient;
+    private transient UpstreamAsyncClient client;
+    private transient String baseUrl;
+    private final transient AtomicInteger slowCalls = new AtomicInteger();
+    private final transient AtomicInteger flakyCalls = new AtomicInteger();
+    private final transient CountDownLatch release = new CountDownLatch(1);
+    private final transient ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private final transient ExecutorService clientExecutor = Executors.newCachedThreadPool();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        // The body is flushed a few bytes at a time so the parser sees elements split across chunks
+        server.createContext("/posts", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                final byte[] bytes = POSTS.getBytes(StandardCharsets.UTF_8);
+                for (int offset = 0; offset < bytes.length; offset += 7) {
+                    body.write(bytes, offset, Math.min(7, bytes.length - offset));
+                    body.flush();
+                }
+            }
+        });
+        server.createContext("/posts/1", exchange -> send(exchange, 200, "{\"id\":1,\"title\":\"first\"}"));
+        server.createContext("/posts/404", exchange -> send(exchange, 404, "{}"));
+        server.createContext("/posts/503", exchange -> send(exchange, 503, ""));
+        server.createContext("/broken", exchange -> send(exchange, 200, "[{\"id\":1},{\"id\":"));
+        server.createContext("/object", exchange -> send(exchange, 200, "{\"id\":1}"));
+        server.createContext("/json/post", exchange -> send(exchange, "application/json", PASSTHROUGH_POST));
+        server.createContext("/json/empty", exchange -> send(exchange, "application/json;charset=UTF-8",
+            "{\"id\":1,\"title\":\"\",\"body\":null,\"comments\":[]}"));
+        server.createContext("/json/comments", exchange -> send(exchange, "application/json", "[]"));
+        // Chunked, so the body length is only known at its end
+        server.createContext("/json/chunked", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(LARGE_COMMENTS.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/json/html", exchange -> send(exchange, "text/html", "<html></html>"));
+        // The first call hangs until released, the ones after it answer at once
+        server.createContext("/slow", exchange -> {
+            if (slowCalls.getAndIncrement() == 0) {
+                awaitRelease();
+            }
+            send(exchange, 200, "{\"id\":1,\"title\":\"hedged\"}");
+        });
+        // A 503 on the first call, the retry gets the post
+        server.createContext("/flaky", exchange -> {
+            if (flakyCalls.getAndIncrement() == 0) {
+                send(exchange, 503, "");
+            } else {
+                send(exchange, 200, "{\"id\":1,\"title\":\"retried\"}");
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults().withBaseUrl(baseUrl)
+            .withConcurrencyLimit(new AuditionApiProperties.ConcurrencyLimit(true, null, null, null, null, null, null,
+                null))
+            .withRetry(new AuditionApiProperties.Retry(true, null, null, null, null));
+        final HttpClientConfiguration httpClientConfiguration = new HttpClientConfiguration(properties);
+        httpClient = httpClientConfiguration.upstreamAsyncHttpClient(
+            httpClientConfiguration.upstreamAsyncConnectionManager());
+        client = new UpstreamAsyncClient(httpClient, new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_EMPTY), new UpstreamGuards(properties, registry),
+            new AdaptiveConcurrencyLimiter(properties, registry), new UpstreamHedging(properties, registry),
+            new UpstreamRetry(properties, registry), clientExecutor);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        httpClient.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        clientExecutor.shutdownNow();
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void send(final com.sun.net.httpserver.HttpExchange exchange, final int status, final String body)
+        throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void send(final com.sun.net.httpserver.HttpExchange exchange, final String contentType,
+        final String body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        send(exchange, 200, body);
+    }
+
+    private static String written(final JsonPassthrough passthrough) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        passthrough.writeTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testGetListStreamsArrayElements() {
+        final List<AuditionPost> posts = client.getList(baseUrl + "/posts", AuditionPost.class).join();
+        assertEquals(2, posts.size());
+        assertEquals("first", posts.get(0).getTitle());
+        assertEquals(2, posts.get(1).getId());
+        assertEquals(1, posts.get(1).getComments().size());
+    }
+
+    @Test
+    void testGetSingleObject() {
+        assertEquals("first", client.get(baseUrl + "/posts/1", AuditionPost.class).join().getTitle());
+    }
+
+    @Test
+    void testErrorStatusesMatchRestTemplate() {
+        final CompletionException notFound = assertThrows(CompletionException.class,
+            () -> client.get(baseUrl + "/posts/404", AuditionPost.class).join());
+        final HttpClientErrorException clientError = assertInstanceOf(HttpClientErrorException.class,
+            notFound.getCause());
+        assertEquals(404, clientError.getStatusCode().value());
+        assertEquals("404 Not Found: \"{}\"", clientError.getMessage());
+
+        final CompletionException unavailable = assertThrows(CompletionException.class,
+            () -> client.get(baseUrl + "/posts/503", AuditionPost.class).join());
+        assertEquals("503 Service Unavailable: [no body]", assertInstanceOf(HttpServerErrorException.class,
+            unavailable.getCause()).getMessage());
+    }
+
+    @Test
+    void testMalformedBodyIsResourceAccessError() {
+        final CompletionException truncated = assertThrows(CompletionException.class,
+            () -> client.getList(baseUrl + "/broken", AuditionPost.class).join());
+        assertInstanceOf(ResourceAccessException.class, truncated.getCause());
+
+        final CompletionException notArray = assertThrows(CompletionException.class,
+            () -> client.getList(baseUrl + "/object", AuditionPost.class).join());
+        assertTrue(notArray.getCause().getMessage().contains("Expected a JSON array of AuditionPost"));
+    }
+
+    // Token by token, the whitespace between them is not kept. The large body is several times the buffer size.
+    @Test
+    void testGetJsonStreamsTheUpstreamJson() throws IOException {
+        assertEquals("{\"userId\":7,\"id\":1,\"title\":\"first\",\"body\":\"one\",\"tags\":[\"new\",null]}",
+            written(client.getJson(baseUrl + "/json/post").join()));
+        assertEquals("[]", written(client.getJson(baseUrl + "/json/comments").join()));
+        assertEquals(LARGE_COMMENTS, written(client.getJson(baseUrl + "/json/chunked").join()));
+    }
+
+    // Fields the NON_EMPTY inclusion leaves out of a bound post are left out of the stream as well
+    @Test
+    void testGetJsonLeavesEmptyFieldsOut() throws IOException {
+        assertEquals("{\"id\":1}", written(client.getJson(baseUrl + "/json/empty").join()));
+    }
+
+    @Test
+    void testGetJsonChecksStatusAndContentType() {
+        final CompletionException notFound = assertThrows(CompletionException.class,
+            () -> client.getJson(baseUrl + "/posts/404").join());
+        assertEquals(404, assertInstanceOf(HttpClientErrorException.class, notFound.getCause())
+            .getStatusCode().value());
+
+        final CompletionException html = assertThrows(CompletionException.class,
+            () -> client.getJson(baseUrl + "/json/html").join());
+        assertInstanceOf(UnknownContentTypeException.class, html.getCause());
+    }
+
+    @Test
+    void testConnectionFailureIsResourceAccessError() {
+        server.stop(0);
+        final CompletionException refused = assertThrows(CompletionException.class,
+            () -> client.getList(baseUrl + "/posts", AuditionPost.class).join());
+        assertInstanceOf(ResourceAccessException.class, refused.getCause());
+    }
+
+    // Once the posts endpoint has its latencies, a call hanging past them is answered by its hedge
+    @Test
+    void testSlowCallIsAnsweredByItsHedge() throws Exception {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults().withBaseUrl(baseUrl)
+            .withHedging(new AuditionApiProperties.Hedging(true, 95, 20, 100, Duration.ofMillis(50)));
+        final UpstreamHedging hedging = new UpstreamHedging(properties, registry);
+        for (int i = 0; i < 20; i++) {
+            hedging.record(UpstreamGuards.POSTS, Duration.ofMillis(1).toNanos());
+        }
+        final UpstreamAsyncClient hedgingClient = new UpstreamAsyncClient(httpClient, new ObjectMapper(),
+            new UpstreamGuards(properties, registry), new AdaptiveConcurrencyLimiter(properties, registry), hedging,
+            new UpstreamRetry(properties, registry), clientExecutor);
+
+        // Answered well before the first call is released
+        assertEquals("hedged", hedgingClient.get(baseUrl + "/slow", AuditionPost.class)
+            .get(2, TimeUnit.SECONDS).getTitle());
+        assertEquals(2, slowCalls.get());
+        assertEquals(1, registry.get(UpstreamHedging.HEDGES_METRIC).tag("endpoint", UpstreamGuards.POSTS)
+            .tag("outcome", "sent").counter().count());
+    }
+
+    // A call given up by its caller got no answer, so it leaves the latencies of its endpoint as they are
+    @Test
+    void testCancelledCallRecordsNoLatency() {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults().withBaseUrl(baseUrl)
+            .withHedging(new AuditionApiProperties.Hedging(true, 95, 2, 100, Duration.ofMillis(50)));
+        final UpstreamHedging hedging = new UpstreamHedging(properties, registry);
+        final UpstreamAsyncClient hedgingClient = new UpstreamAsyncClient(httpClient, new ObjectMapper(),
+            new UpstreamGuards(properties, registry), new AdaptiveConcurrencyLimiter(properties, registry), hedging,
+            new UpstreamRetry(properties, registry), clientExecutor);
+
+        final CompletableFuture<AuditionPost> call = hedgingClient.get(baseUrl + "/slow", AuditionPost.class);
+        while (slowCalls.get() == 0) {
+            Thread.onSpinWait();
+        }
+        call.cancel(false);
+        assertEquals(-1, hedging.hedgeDelayNanos(UpstreamGuards.POSTS));
+    }
+
+    // A batch query takes longer than a single post, its latencies are kept apart so they never stretch the post delay
+    @Test
+    void testBatchCallsDoNotFeedTheSinglePostWindow() {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults().withBaseUrl(baseUrl)
+            .withHedging(new AuditionApiProperties.Hedging(true, 95, 2, 100, Duration.ofMillis(50)));
+        final UpstreamHedging hedging = new UpstreamHedging(properties, registry);
+        final UpstreamAsyncClient hedgingClient = new UpstreamAsyncClient(httpClient, new ObjectMapper(),
+            new UpstreamGuards(properties, registry), new AdaptiveConcurrencyLimiter(properties, registry), hedging,
+            new UpstreamRetry(properties, registry), clientExecutor);
+
+        for (int i = 0; i < 2; i++) {
+            hedgingClient.getList(baseUrl + "/posts?id=1&id=2", AuditionPost.class).join();
+        }
+        assertEquals(-1, hedging.hedgeDelayNanos(UpstreamGuards.POST));
+        assertTrue(hedging.hedgeDelayNanos(UpstreamGuards.POSTS_BATCH) >= 0);
+    }
+
+    @Test
+    void testTransientFailureIsRetried() {
+        assertEquals("retried", client.get(baseUrl + "/flaky", AuditionPost.class).join().getTitle());
+        assertEquals(2, flakyCalls.get());
+        assertEquals(1, registry.get(UpstreamRetry.RETRIES_METRIC).tag("outcome", "retried").counter().count());
+    }
+
+    // Cancelling the future of a call aborts its exchange, the permit is given back without waiting for an answer
+    @Test
+    void testCancelledCallAbortsTheExchange() {
+        final CompletableFuture<AuditionPost> call = client.get(baseUrl + "/slow", AuditionPost.class);
+        while (slowCalls.get() == 0) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1, registry.get(AdaptiveConcurrencyLimiter.INFLIGHT_METRIC).gauge().value());
+        call.cancel(false);
+        assertEquals(0, registry.get(AdaptiveConcurrencyLimiter.INFLIGHT_METRIC).gauge().value());
+    }
+
+    // A call the client refuses to start fails its future and gives its permit back instead of leaking it
+    @Test
+    void testCallNotStartedReleasesItsPermit() throws IOException {
+        httpClient.close();
+        final CompletionException refused = assertThrows(CompletionException.class,
+            () -> client.get(baseUrl + "/posts/1", AuditionPost.class).join());
+        assertInstanceOf(IllegalStateException.class, refused.getCause());
+        assertEquals(0, registry.get(AdaptiveConcurrencyLimiter.INFLIGHT_METRIC).gauge().value());
+    }
+}
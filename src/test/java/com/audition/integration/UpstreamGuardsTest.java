@@ -0,0 +1,124 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.audition.common.exception.SystemException;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+/*
+ * Test class for the circuit breakers and bulkheads of the upstream endpoints
+ */
+
+class UpstreamGuardsTest {
+
+    private static final URI COMMENTS_URI = URI.create("http://base/comments?postId=1");
+    private static final URI POST_URI = URI.create("http://base/posts/1");
+
+    private final transient SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    // Opens after 2 calls at 50% failures, at most 2 calls of an endpoint in flight
+    private UpstreamGuards guards() {
+        return new UpstreamGuards(AuditionApiPropertiesFixtures.defaults()
+            .withCircuitBreaker(new AuditionApiProperties.CircuitBreaker(true, 10, 2, 50, null, null,
+                Duration.ofMinutes(1), null))
+            .withBulkhead(new AuditionApiProperties.Bulkhead(true, 2)), registry);
+    }
+
+    private double calls(final String endpoint, final String outcome) {
+        return registry.get(UpstreamGuards.CALLS_METRIC).tag("endpoint", endpoint).tag("outcome", outcome)
+            .counter().count();
+    }
+
+    @Test
+    void testEndpointOfUpstreamUrls() {
+        final UpstreamGuards guards = guards();
+        assertEquals(UpstreamGuards.POSTS, guards.endpointOf(URI.create("http://base/posts")));
+        assertEquals(UpstreamGuards.POSTS, guards.endpointOf(URI.create("http://base/posts?_sort=id&_page=1")));
+        assertEquals(UpstreamGuards.POST, guards.endpointOf(POST_URI));
+        assertEquals(UpstreamGuards.POSTS_BATCH, guards.endpointOf(URI.create("http://base/posts?id=1&id=2")));
+        assertEquals(UpstreamGuards.POST, guards.endpointOf(URI.create("http://base/posts/1?_embed=comments")));
+        assertEquals(UpstreamGuards.COMMENTS, guards.endpointOf(URI.create("http://base/posts/1/comments")));
+        assertEquals(UpstreamGuards.COMMENTS, guards.endpointOf(COMMENTS_URI));
+    }
+
+    // Failing comments open their own circuit only, the post lookups go on
+    @Test
+    void testOpenCircuitFailsFastWith503() {
+        final UpstreamGuards guards = guards();
+        guards.acquire(COMMENTS_URI).complete(new ResourceAccessException("timeout"));
+        guards.acquire(COMMENTS_URI).complete(HttpStatus.BAD_GATEWAY);
+
+        final SystemException rejected = assertThrows(SystemException.class, () -> guards.acquire(COMMENTS_URI));
+        assertEquals(503, rejected.getStatusCode());
+        assertEquals(CircuitBreaker.State.OPEN, guards.stateOf(UpstreamGuards.COMMENTS));
+        assertEquals(2, registry.get(UpstreamGuards.STATE_METRIC).tag("endpoint", UpstreamGuards.COMMENTS)
+            .gauge().value());
+        assertEquals(1, calls(UpstreamGuards.COMMENTS, "circuit-open"));
+        assertEquals(2, calls(UpstreamGuards.COMMENTS, "failure"));
+        guards.acquire(POST_URI).complete(HttpStatus.OK);
+    }
+
+    @Test
+    void testClientErrorsAreHealthyAnswersButTooManyRequests() {
+        final UpstreamGuards guards = guards();
+        guards.acquire(POST_URI).complete(new CompletionException(new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+        guards.acquire(POST_URI).complete(HttpStatus.NOT_FOUND);
+        assertEquals(CircuitBreaker.State.CLOSED, guards.stateOf(UpstreamGuards.POST));
+        assertEquals(2, calls(UpstreamGuards.POST, "success"));
+
+        guards.acquire(POST_URI).complete(HttpStatus.TOO_MANY_REQUESTS);
+        assertEquals(1, calls(UpstreamGuards.POST, "failure"));
+    }
+
+    @Test
+    void testBulkheadLimitsTheCallsInFlightPerEndpoint() {
+        final UpstreamGuards guards = guards();
+        final UpstreamGuards.Call first = guards.acquire(COMMENTS_URI);
+        guards.acquire(COMMENTS_URI);
+        assertEquals(503, assertThrows(SystemException.class, () -> guards.acquire(COMMENTS_URI)).getStatusCode());
+        assertEquals(1, calls(UpstreamGuards.COMMENTS, "bulkhead-full"));
+        guards.acquire(POST_URI);
+
+        first.complete(new CancellationException());
+        guards.acquire(COMMENTS_URI);
+        assertEquals(0, calls(UpstreamGuards.COMMENTS, "success"));
+    }
+
+    // Unset, the bulkhead lets an endpoint take every connection of the route: 3 per route at 25% is 1 async and 2
+    // blocking, 1 per route still leaves each pool one connection
+    @Test
+    void testBulkheadDefaultsToTheRouteBudgetOfBothPools() {
+        final UpstreamGuards guards = new UpstreamGuards(AuditionApiPropertiesFixtures.defaults()
+            .withPool(new AuditionApiProperties.Pool(null, 3, null, 25))
+            .withBulkhead(new AuditionApiProperties.Bulkhead(true, null)), registry);
+        for (int i = 0; i < 3; i++) {
+            guards.acquire(COMMENTS_URI);
+        }
+        assertEquals(503, assertThrows(SystemException.class, () -> guards.acquire(COMMENTS_URI)).getStatusCode());
+        assertEquals(2, UpstreamGuards.routeBudget(new AuditionApiProperties.Pool(null, 1, null, null)));
+    }
+
+    // Without a breaker every call is let through whatever the outcomes, and none of them counts as a rejection
+    @Test
+    void testDisabledBreakerLetsEveryCallThrough() {
+        final UpstreamGuards guards = new UpstreamGuards(AuditionApiPropertiesFixtures.defaults(), registry);
+        for (int i = 0; i < 20; i++) {
+            guards.acquire(COMMENTS_URI).complete(HttpStatus.BAD_GATEWAY);
+        }
+        guards.acquire(COMMENTS_URI).complete(new CancellationException());
+        assertEquals(CircuitBreaker.State.CLOSED, guards.stateOf(UpstreamGuards.COMMENTS));
+        assertEquals(20, calls(UpstreamGuards.COMMENTS, "failure"));
+        assertEquals(0, calls(UpstreamGuards.COMMENTS, "circuit-open"));
+    }
+}
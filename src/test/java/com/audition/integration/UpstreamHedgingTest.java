@@ -0,0 +1,97 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Test class for the hedge delays and the hedge budget of the upstream endpoints
+ */
+
+class UpstreamHedgingTest {
+
+    private static final long MILLIS = Duration.ofMillis(1).toNanos();
+
+    private final transient SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private UpstreamHedging hedging(final boolean enabled, final int budget) {
+        return new UpstreamHedging(AuditionApiPropertiesFixtures.defaults()
+            .withHedging(new AuditionApiProperties.Hedging(enabled, 90, 20, budget, Duration.ofMillis(5))),
+            registry);
+    }
+
+    private double hedges(final String outcome) {
+        return registry.get(UpstreamHedging.HEDGES_METRIC).tag("endpoint", UpstreamGuards.POST)
+            .tag("outcome", outcome).counter().count();
+    }
+
+    // Latencies of 1 to 20 ms, the 90th percentile is 18 ms
+    @Test
+    void testDelayIsThePercentileLatencyOfTheEndpoint() {
+        final UpstreamHedging hedging = hedging(true, 5);
+        for (int latency = 1; latency <= 9; latency++) {
+            hedging.record(UpstreamGuards.POST, latency * MILLIS);
+        }
+        assertEquals(-1, hedging.hedgeDelayNanos(UpstreamGuards.POST));
+        for (int latency = 10; latency <= 20; latency++) {
+            hedging.record(UpstreamGuards.POST, latency * MILLIS);
+        }
+        assertEquals(18 * MILLIS, hedging.hedgeDelayNanos(UpstreamGuards.POST));
+        assertEquals(-1, hedging.hedgeDelayNanos(UpstreamGuards.COMMENTS));
+    }
+
+    @Test
+    void testDelayIsNeverBelowTheMinimum() {
+        final UpstreamHedging hedging = hedging(true, 5);
+        for (int i = 0; i < 20; i++) {
+            hedging.record(UpstreamGuards.POST, MILLIS);
+        }
+        assertEquals(5 * MILLIS, hedging.hedgeDelayNanos(UpstreamGuards.POST));
+    }
+
+    // At 5%, 20 calls earn one hedge
+    @Test
+    void testBudgetCapsTheHedges() {
+        final UpstreamHedging hedging = hedging(true, 5);
+        for (int i = 0; i < 19; i++) {
+            hedging.hedgeDelayNanos(UpstreamGuards.POST);
+        }
+        assertFalse(hedging.tryHedge(UpstreamGuards.POST));
+        hedging.hedgeDelayNanos(UpstreamGuards.POST);
+        assertTrue(hedging.tryHedge(UpstreamGuards.POST));
+        assertFalse(hedging.tryHedge(UpstreamGuards.POST));
+        hedging.won(UpstreamGuards.POST);
+
+        assertEquals(1, hedges("sent"));
+        assertEquals(1, hedges("won"));
+        assertEquals(2, hedges("over-budget"));
+    }
+
+    @Test
+    void testBudgetSavesUpToABurst() {
+        final UpstreamHedging hedging = hedging(true, 100);
+        for (int i = 0; i < 50; i++) {
+            hedging.hedgeDelayNanos(UpstreamGuards.POST);
+        }
+        int sent = 0;
+        while (hedging.tryHedge(UpstreamGuards.POST)) {
+            sent++;
+        }
+        assertEquals(10, sent);
+    }
+
+    @Test
+    void testDisabledNeverHedges() {
+        final UpstreamHedging hedging = hedging(false, 5);
+        for (int i = 0; i < 20; i++) {
+            hedging.record(UpstreamGuards.POST, MILLIS);
+        }
+        assertEquals(-1, hedging.hedgeDelayNanos(UpstreamGuards.POST));
+    }
+}
@@ -0,0 +1,145 @@
+package com.audition.integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.common.deadline.RequestDeadline;
+import com.audition.common.exception.SystemException;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.fasterxml.jackson.core.JsonParseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+/*
+ * Test class for the retries of the upstream calls, their budget and their deadline
+ */
+
+class UpstreamRetryTest {
+
+    private final transient SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final transient AtomicInteger attempts = new AtomicInteger();
+
+    // Backoffs of at most 1, 2 then 4 ms
+    private UpstreamRetry retry(final int maxAttempts, final int budget) {
+        return new UpstreamRetry(AuditionApiPropertiesFixtures.defaults()
+            .withRetry(new AuditionApiProperties.Retry(true, maxAttempts, Duration.ofMillis(1), Duration.ofMillis(4),
+                budget)), registry);
+    }
+
+    private double retries(final String outcome) {
+        return registry.get(UpstreamRetry.RETRIES_METRIC).tag("outcome", outcome).counter().count();
+    }
+
+    // Fails the first failures attempts with the given exception
+    private String flaky(final int failures, final RuntimeException failure) {
+        if (attempts.incrementAndGet() <= failures) {
+            throw failure;
+        }
+        return "answer";
+    }
+
+    @Test
+    void testTransientFailuresAreRetried() {
+        final UpstreamRetry retry = retry(3, 10);
+        assertEquals("answer", retry.execute(() -> flaky(2, new HttpServerErrorException(HttpStatus.BAD_GATEWAY))));
+        assertEquals(3, attempts.get());
+        assertEquals(2, retries("retried"));
+    }
+
+    @Test
+    void testLastAttemptFailureIsThrown() {
+        final UpstreamRetry retry = retry(3, 10);
+        final ResourceAccessException reset = new ResourceAccessException("I/O error", new SocketException("reset"));
+        assertThrows(ResourceAccessException.class, () -> retry.execute(() -> flaky(5, reset)));
+        assertEquals(3, attempts.get());
+        assertEquals(1, retries("exhausted"));
+    }
+
+    @Test
+    void testOnlyTransientFailuresAreRetryable() {
+        assertTrue(UpstreamRetry.isRetryable(new ResourceAccessException("I/O error", new IOException("closed"))));
+        assertTrue(UpstreamRetry.isRetryable(new SocketException("reset")));
+        assertTrue(UpstreamRetry.isRetryable(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE)));
+        assertTrue(UpstreamRetry.isRetryable(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "", null,
+            null, null)));
+        assertFalse(UpstreamRetry.isRetryable(new HttpClientErrorException(HttpStatus.NOT_FOUND)));
+        assertFalse(UpstreamRetry.isRetryable(new ResourceAccessException("I/O error",
+            new JsonParseException(null, "malformed"))));
+        assertFalse(UpstreamRetry.isRetryable(new SystemException("open", "Service Unavailable", 503)));
+    }
+
+    @Test
+    void testFinalFailureIsNotRetried() {
+        final UpstreamRetry retry = retry(3, 10);
+        assertThrows(HttpClientErrorException.class,
+            () -> retry.execute(() -> flaky(1, new HttpClientErrorException(HttpStatus.NOT_FOUND))));
+        assertEquals(1, attempts.get());
+    }
+
+    // The budget starts with 10 retries, at 10% every further one takes 10 calls to earn
+    @Test
+    void testBudgetCapsTheRetries() {
+        final UpstreamRetry retry = retry(2, 10);
+        final HttpServerErrorException failure = new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+        for (int i = 0; i < 15; i++) {
+            assertThrows(HttpServerErrorException.class, () -> retry.execute(() -> flaky(100, failure)));
+        }
+        assertEquals(11, retries("retried"));
+        assertEquals(4, retries("over-budget"));
+    }
+
+    @Test
+    void testNoRetryPastTheDeadline() {
+        final UpstreamRetry retry = retry(3, 10);
+        final HttpServerErrorException failure = new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+        assertThrows(HttpServerErrorException.class,
+            () -> RequestDeadline.within(Duration.ZERO, () -> retry.execute(() -> flaky(5, failure))));
+        assertEquals(1, attempts.get());
+        assertEquals(1, retries("past-deadline"));
+    }
+
+    // A blocking call made outside of a request deadline stops retrying at the default async timeout
+    @Test
+    void testNoRetryPastTheDefaultTimeout() {
+        final UpstreamRetry retry = new UpstreamRetry(AuditionApiPropertiesFixtures.defaults()
+            .withAsync(new AuditionApiProperties.Async(null, Duration.ZERO, null))
+            .withRetry(new AuditionApiProperties.Retry(true, 3, Duration.ofMillis(1), Duration.ofMillis(4), 10)),
+            registry);
+        final HttpServerErrorException failure = new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+        assertThrows(HttpServerErrorException.class, () -> retry.execute(() -> flaky(5, failure)));
+        assertEquals(1, attempts.get());
+        assertEquals(1, retries("past-deadline"));
+    }
+
+    // Whatever System.nanoTime is, a call without a deadline is retried
+    @Test
+    void testNoDeadlineIsNeverPast() {
+        final UpstreamRetry retry = retry(3, 10);
+        assertTrue(retry.backoffNanos(1, new HttpServerErrorException(HttpStatus.BAD_GATEWAY),
+            RequestDeadline.NONE) >= 0);
+        assertEquals(0, retries("past-deadline"));
+    }
+
+    // A nested call leaves the deadline of the enclosing one in place for the calls made after it
+    @Test
+    void testNestedDeadlineIsRestored() {
+        RequestDeadline.within(Duration.ofMinutes(1), () -> {
+            final long outer = RequestDeadline.nanos();
+            RequestDeadline.within(Duration.ZERO, RequestDeadline::nanos);
+            assertEquals(outer, RequestDeadline.nanos());
+            return outer;
+        });
+        assertEquals(RequestDeadline.NONE, RequestDeadline.nanos());
+    }
+}
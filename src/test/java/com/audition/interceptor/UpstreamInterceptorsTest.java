@@ -0,0 +1,101 @@
+package com.audition.interceptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.integration.AdaptiveConcurrencyLimiter;
+import com.audition.integration.UpstreamGuards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+/*
+ * Test class for holding the guards and the concurrency limit of a RestTemplate call until its body is in
+ */
+
+class UpstreamInterceptorsTest {
+
+    private static final String INFLIGHT_METRIC = "audition.upstream.limit.inflight";
+
+    private final transient SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private transient ClientHttpRequestExecution execution;
+    private transient ConcurrencyLimitInterceptor limitInterceptor;
+    private transient UpstreamGuardInterceptor guardInterceptor;
+
+    @BeforeEach
+    void setUp() {
+        final AuditionApiProperties properties = AuditionApiPropertiesFixtures.defaults()
+            .withConcurrencyLimit(new AuditionApiProperties.ConcurrencyLimit(true, null, null, null, null, null, null,
+                null));
+        limitInterceptor = new ConcurrencyLimitInterceptor(new AdaptiveConcurrencyLimiter(properties, registry));
+        guardInterceptor = new UpstreamGuardInterceptor(new UpstreamGuards(properties, registry));
+        execution = mock(ClientHttpRequestExecution.class);
+    }
+
+    private ClientHttpResponse execute(final InputStream body) throws IOException {
+        final MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, "http://base/posts");
+        when(execution.execute(any(), any())).thenReturn(new MockClientHttpResponse(body, HttpStatus.BAD_GATEWAY));
+        return limitInterceptor.intercept(request, new byte[0],
+            (inner, bytes) -> guardInterceptor.intercept(inner, bytes, execution));
+    }
+
+    private double inflight() {
+        return registry.get(INFLIGHT_METRIC).gauge().value();
+    }
+
+    private double failures() {
+        return registry.get("audition.upstream.guard.calls").tag("endpoint", "posts").tag("outcome", "failure")
+            .counter().count();
+    }
+
+    @Test
+    void testCallIsCompleteOnceItsBodyIsRead() throws IOException {
+        try (ClientHttpResponse response = execute(new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)))) {
+            assertEquals(1, inflight());
+            assertEquals(0, failures());
+            response.getBody().readAllBytes();
+            assertEquals(0, inflight());
+            assertEquals(1, failures());
+        }
+        assertEquals(1, failures());
+    }
+
+    @Test
+    void testUnreadCallIsCompleteOnClose() throws IOException {
+        final ClientHttpResponse response = execute(new ByteArrayInputStream(new byte[0]));
+        assertEquals(1, inflight());
+        response.close();
+        assertEquals(0, inflight());
+        assertEquals(1, failures());
+    }
+
+    @Test
+    void testBodyReadFailureCompletesTheCall() throws IOException {
+        final ClientHttpResponse response = execute(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+        assertThrows(IOException.class, () -> response.getBody().read());
+        assertEquals(0, inflight());
+        assertEquals(1, failures());
+        response.close();
+        assertEquals(1, failures());
+    }
+}
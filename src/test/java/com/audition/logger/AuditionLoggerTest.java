@@ -22,7 +22,7 @@ import org.springframework.http.ProblemDetail;
  * Most of the scenarios covered with all the required methods.
  */
 
-@SuppressWarnings("PMD.JUnitTestsShouldIncludeAssert")
+@SuppressWarnings("PMD.UnitTestShouldIncludeAssert")
 class AuditionLoggerTest {
 
     @Test
@@ -1,13 +1,17 @@
 package com.audition.logger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import ch.qos.logback.classic.Level;
 import com.audition.common.logging.AuditionLogger;
 import com.audition.interceptor.RestClientLogInterceptor;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -15,6 +19,8 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpHeaders;
@@ -22,6 +28,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpRequest;
 import org.springframework.http.client.ClientHttpRequestExecution;
 import org.springframework.http.client.ClientHttpResponse;
+import org.slf4j.LoggerFactory;
 
 /*
 Test class for RestClient logger interceptor
@@ -47,6 +54,68 @@ class RestClientLogInterceptorTest {
         response = mock(ClientHttpResponse.class);
     }
 
+    @AfterEach
+    void resetLogLevel() {
+        interceptorLogger().setLevel(null);
+    }
+
+    private static ch.qos.logback.classic.Logger interceptorLogger() {
+        return (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(RestClientLogInterceptor.class);
+    }
+
+    private void mockExchange(final byte[] responseBody) throws IOException {
+        when(request.getMethod()).thenReturn(HttpMethod.GET);
+        when(request.getURI()).thenReturn(URI.create("http://localhost/test"));
+        when(request.getHeaders()).thenReturn(new HttpHeaders());
+        when(execution.execute(any(), any())).thenReturn(response);
+        when(response.getStatusCode()).thenReturn(org.springframework.http.HttpStatus.OK);
+        when(response.getHeaders()).thenReturn(new HttpHeaders());
+        when(response.getBody()).thenReturn(new ByteArrayInputStream(responseBody));
+    }
+
+    // Debug logging peeks at the body, the caller must still get the complete body afterwards
+    @Test
+    void interceptDebugLoggingKeepsFullBodyReadable() throws IOException {
+        interceptorLogger().setLevel(Level.DEBUG);
+        final byte[] largeBody = new byte[RestClientLogInterceptor.MAX_LOGGED_BODY_BYTES * 3];
+        Arrays.fill(largeBody, (byte) 'a');
+        mockExchange(largeBody);
+
+        final ClientHttpResponse result = interceptor.intercept(request, new byte[0], execution);
+
+        assertArrayEquals(largeBody, result.getBody().readAllBytes());
+        verify(auditionLogger).debug(any(), argThat(message -> message.endsWith("...(truncated)")));
+    }
+
+    // A character cut by the byte limit is left out of the log rather than logged as a replacement character
+    @Test
+    void interceptDebugLoggingTruncatesOnCharacterBoundary() throws IOException {
+        interceptorLogger().setLevel(Level.DEBUG);
+        final String text = "a".repeat(RestClientLogInterceptor.MAX_LOGGED_BODY_BYTES - 1) + "\u00e9\u00e9";
+        final byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        mockExchange(body);
+
+        final ClientHttpResponse result = interceptor.intercept(request, new byte[0], execution);
+
+        assertArrayEquals(body, result.getBody().readAllBytes());
+        verify(auditionLogger).debug(any(), argThat(message -> message.endsWith("a...(truncated)")
+            && message.indexOf('\ufffd') < 0));
+    }
+
+    @Test
+    void interceptDebugLoggingParsesSmallBody() throws IOException {
+        interceptorLogger().setLevel(Level.DEBUG);
+        final byte[] smallBody = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+        mockExchange(smallBody);
+        when(objectMapper.readValue(any(byte[].class), any(Class.class))).thenReturn("parsed");
+
+        final ClientHttpResponse result = interceptor.intercept(request, new byte[0], execution);
+
+        assertArrayEquals(smallBody, result.getBody().readAllBytes());
+        verify(auditionLogger).debug(any(), argThat(message -> message.contains("parsed")));
+        assertTrue(result.getHeaders().isEmpty());
+    }
+
     @Test
     void interceptInfoLogging() throws IOException {
         when(request.getMethod()).thenReturn(HttpMethod.GET);
@@ -0,0 +1,157 @@
+package com.audition.logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import ch.qos.logback.classic.Level;
+import com.audition.common.logging.AuditionLogger;
+import com.audition.interceptor.RestClientLogInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+
+/*
+ * Checks that the logging interceptor path does not pin virtual threads: the upstream call and the body read block
+ * while the interceptor and the loggers are on the stack, any monitor held there would raise jdk.VirtualThreadPinned.
+ */
+
+@SuppressWarnings("PMD.CloseResource")
+class VirtualThreadPinningTest {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final long BLOCK_MILLIS = 5;
+
+    private final transient Object monitor = new Object();
+
+    @AfterEach
+    void resetLogLevel() {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(RestClientLogInterceptor.class)).setLevel(null);
+    }
+
+    // Runs the task on virtual threads and returns the pinning events JFR recorded meanwhile
+    private static List<RecordedEvent> pinnedEventsOf(final Callable task) throws Exception {
+        final List<RecordedEvent> events = new ArrayList<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.onEvent(PINNED_EVENT, event -> {
+                synchronized (events) {
+                    events.add(event);
+                }
+            });
+            recording.startAsync();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                final List<Future<Object>> results = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    results.add(executor.submit(task::call));
+                }
+                for (final Future<Object> result : results) {
+                    result.get(10, TimeUnit.SECONDS);
+                }
+            }
+            recording.stop();
+        }
+        return events;
+    }
+
+    @Test
+    void testDetectorSeesPinning() throws Exception {
+        final List<RecordedEvent> events = pinnedEventsOf(() -> {
+            synchronized (monitor) {
+                Thread.sleep(BLOCK_MILLIS);
+            }
+            return null;
+        });
+        assertTrue(events.size() > 0);
+    }
+
+    @Test
+    void testInterceptorPathDoesNotPin() throws Exception {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(RestClientLogInterceptor.class))
+            .setLevel(Level.DEBUG);
+        final RestClientLogInterceptor interceptor = new RestClientLogInterceptor(new AuditionLogger(),
+            new ObjectMapper());
+        final HttpRequest request = mock(HttpRequest.class);
+        when(request.getMethod()).thenReturn(HttpMethod.GET);
+        when(request.getURI()).thenReturn(URI.create("http://localhost/posts"));
+        when(request.getHeaders()).thenReturn(new HttpHeaders());
+
+        final List<RecordedEvent> events = pinnedEventsOf(() -> {
+            final ClientHttpRequestExecution slowUpstream = (httpRequest, body) -> {
+                sleep();
+                return slowResponse();
+            };
+            try (ClientHttpResponse response = interceptor.intercept(request, new byte[0], slowUpstream)) {
+                return response.getBody().readAllBytes();
+            }
+        });
+        assertEquals(List.of(), events.stream().map(RecordedEvent::toString).toList());
+    }
+
+    private static ClientHttpResponse slowResponse() throws IOException {
+        final ClientHttpResponse response = mock(ClientHttpResponse.class);
+        when(response.getStatusCode()).thenReturn(HttpStatus.OK);
+        when(response.getHeaders()).thenReturn(new HttpHeaders());
+        when(response.getBody()).thenReturn(new SlowInputStream(
+            new ByteArrayInputStream("[{\"id\":1}]".getBytes(StandardCharsets.UTF_8))));
+        return response;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(BLOCK_MILLIS);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Callable {
+
+        Object call() throws Exception;
+    }
+
+    // Blocks on every read like a socket waiting for data
+    private static final class SlowInputStream extends InputStream {
+
+        private final InputStream delegate;
+
+        SlowInputStream(final InputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            sleep();
+            return delegate.read();
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            sleep();
+            return delegate.read(buffer, offset, length);
+        }
+    }
+}
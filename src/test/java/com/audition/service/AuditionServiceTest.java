@@ -1,17 +1,31 @@
 package com.audition.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.audition.cache.CommentsIndex;
+import com.audition.cache.CommentsIndexStore;
+import com.audition.cache.PostSnapshot;
+import com.audition.cache.PostSnapshotStore;
+import com.audition.common.exception.SystemException;
+import com.audition.filter.PostFilter;
 import com.audition.integration.AuditionIntegrationClient;
 import com.audition.model.AuditionComment;
 import com.audition.model.AuditionPost;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -28,6 +42,12 @@ class AuditionServiceTest {
     @Mock
     private transient AuditionIntegrationClient auditionIntegrationClient;
 
+    @Mock
+    private transient PostSnapshotStore postSnapshotStore;
+
+    @Mock
+    private transient CommentsIndexStore commentsIndexStore;
+
     @InjectMocks
     private transient AuditionService auditionService;
 
@@ -81,7 +101,7 @@ class AuditionServiceTest {
     @Test
     void testGetPostsWithFilter() {
         when(auditionIntegrationClient.getPosts()).thenReturn(posts);
-        final List<AuditionPost> result = auditionService.getPostsWithFilter("first", 1, 10);
+        final List<AuditionPost> result = auditionService.getPostsWithFilter(PostFilter.compile("first"), 1, 10);
         assertEquals(2, result.size());
         assertEquals(FIRST_POST, result.get(0).getTitle());
         assertEquals(FIRST_POST, result.get(1).getTitle());
@@ -97,7 +117,7 @@ class AuditionServiceTest {
     @Test
     void testGetPostsWithFilterReturnsAllIfFilterBlank() {
         when(auditionIntegrationClient.getPosts()).thenReturn(posts);
-        final List<AuditionPost> result = auditionService.getPostsWithFilter(" ", 1, 10);
+        final List<AuditionPost> result = auditionService.getPostsWithFilter(PostFilter.compile(" "), 1, 10);
         assertEquals(2, result.size());
     }
 
@@ -123,6 +143,49 @@ class AuditionServiceTest {
         assertEquals(FIRST_POST, result.get(0).getBody());
     }
 
+    @Test
+    void testGetCommentsByPostIdsReadsTheIndexOncePerId() {
+        final AuditionComment first = new AuditionComment();
+        first.setPostId(1);
+        final AuditionComment second = new AuditionComment();
+        second.setPostId(2);
+        when(commentsIndexStore.current()).thenReturn(CommentsIndex.build(List.of(first, second)));
+        assertEquals(List.of(second, first), auditionService.getCommentsByPostIds(List.of(2L, 1L, 2L, 3L)));
+        verify(auditionIntegrationClient, never()).getCommentsByPostId(anyLong());
+    }
+
+    @Test
+    void testAsyncCallsAreDelegatedToTheClient() {
+        final AuditionPost post = new AuditionPost();
+        when(auditionIntegrationClient.getPostByIdAsync(1L)).thenReturn(CompletableFuture.completedFuture(post));
+        when(auditionIntegrationClient.getPostWithCommentsAsync(1L)).thenReturn(CompletableFuture.completedFuture(post));
+        when(auditionIntegrationClient.getCommentsByPostIdAsync(1L))
+            .thenReturn(CompletableFuture.completedFuture(List.of(new AuditionComment())));
+        assertSame(post, auditionService.getPostByIdAsync(1L).join());
+        assertSame(post, auditionService.getPostWithCommentsAsync(1L).join());
+        assertEquals(1, auditionService.getCommentsByPostIdAsync(1L).join().size());
+    }
+
+    // Unknown ids are left out, repeated ids are looked up once
+    @Test
+    void testGetPostsByIdsAsyncSkipsNotFound() {
+        final AuditionPost post = new AuditionPost();
+        when(auditionIntegrationClient.getPostByIdAsync(1L)).thenReturn(CompletableFuture.completedFuture(post));
+        when(auditionIntegrationClient.getPostByIdAsync(2L)).thenReturn(CompletableFuture.failedFuture(
+            new SystemException("Cannot find a Post with id 2", "Resource not found", 404)));
+        assertEquals(List.of(post), auditionService.getPostsByIdsAsync(List.of(1L, 2L, 1L)).join());
+        verify(auditionIntegrationClient, times(1)).getPostByIdAsync(1L);
+    }
+
+    @Test
+    void testGetPostsByIdsAsyncFailsOnUpstreamError() {
+        when(auditionIntegrationClient.getPostByIdAsync(1L)).thenReturn(CompletableFuture.failedFuture(
+            new SystemException("Upstream unavailable", "Bad Gateway", 502)));
+        final CompletionException ex = assertThrows(CompletionException.class,
+            () -> auditionService.getPostsByIdsAsync(List.of(1L)).join());
+        assertEquals("Upstream unavailable", ex.getCause().getMessage());
+    }
+
     @Test
     void testGetPaginatedPostsHandlesEmptyList() {
         final List<AuditionPost> result = auditionService.getPaginatedPosts(Collections.emptyList(), 1, 10);
@@ -148,4 +211,116 @@ class AuditionServiceTest {
         final List<AuditionPost> result = auditionService.getPaginatedPosts(posts, 10, 1);
         assertTrue(result.isEmpty());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testGetPostsServedFromSnapshot() {
+        when(postSnapshotStore.isEnabled()).thenReturn(true);
+        when(postSnapshotStore.current()).thenReturn(new PostSnapshot(1, posts));
+        final List<AuditionPost> result = auditionService.getPostsWithFilter(PostFilter.compile("first"), 2, 1);
+        assertEquals(1, result.size());
+        assertEquals(2, result.get(0).getId());
+        verify(auditionIntegrationClient, never()).getPosts();
+    }
+
+    @Test
+    void testServingSnapshotOnlyWhenPagesAreCutFromIt() {
+        final PostSnapshot snapshot = new PostSnapshot(3, posts);
+        assertNull(auditionService.getServingSnapshot());
+        when(postSnapshotStore.isEnabled()).thenReturn(true);
+        when(auditionIntegrationClient.isPushDownEnabled()).thenReturn(true);
+        assertNull(auditionService.getServingSnapshot());
+
+        when(postSnapshotStore.peek()).thenReturn(snapshot);
+        when(postSnapshotStore.current()).thenReturn(snapshot);
+        assertEquals(snapshot, auditionService.getServingSnapshot());
+        assertEquals(List.of(posts.get(1)), auditionService.getPostsWithFilter(snapshot, null, 2, 1));
+        assertEquals(List.of(post1), auditionService.getPostsWithFilter(snapshot, PostFilter.compile("first"), 1, 1));
+    }
+
+    @Test
+    void testPagingIsPushedDownWhileTheSnapshotIsCold() {
+        when(auditionIntegrationClient.isPushDownEnabled()).thenReturn(true);
+        when(postSnapshotStore.isEnabled()).thenReturn(true);
+        when(auditionIntegrationClient.getPostsPage(2, 5)).thenReturn(List.of(post1));
+        assertEquals(List.of(post1), auditionService.getPosts(2, 5));
+        assertTrue(auditionService.getPosts(0, 5).isEmpty());
+
+        when(postSnapshotStore.peek()).thenReturn(new PostSnapshot(1, posts));
+        when(postSnapshotStore.current()).thenReturn(new PostSnapshot(1, posts));
+        assertEquals(2, auditionService.getPosts(2, 1).get(0).getId());
+        verify(auditionIntegrationClient, times(1)).getPostsPage(2, 5);
+    }
+
+    // The most selective term goes upstream, the posts it matches in other fields are filtered out here
+    @Test
+    void testFilterIsPushedDownAsSearchTerm() {
+        when(auditionIntegrationClient.isPushDownEnabled()).thenReturn(true);
+        final AuditionPost other = new AuditionPost();
+        other.setId(3);
+        other.setTitle("third");
+        other.setBody("nothing");
+        when(auditionIntegrationClient.searchPosts("first post")).thenReturn(List.of(post1, other));
+        assertEquals(List.of(post1), auditionService.getPostsWithFilter(PostFilter.compile("\"First Post\" body",
+            PostFilter.Mode.BOOLEAN), 1, 10));
+        verify(auditionIntegrationClient, never()).getPosts();
+
+        when(auditionIntegrationClient.getPosts()).thenReturn(posts);
+        assertEquals(posts, auditionService.getPostsWithFilter(
+            PostFilter.compile("NOT missing", PostFilter.Mode.BOOLEAN), 1, 10));
+    }
+
+    @Test
+    void testCursorPagingStaysOnItsSnapshot() {
+        final PostSnapshot first = new PostSnapshot(1, posts);
+        when(postSnapshotStore.isEnabled()).thenReturn(true);
+        when(postSnapshotStore.current()).thenReturn(first);
+        final PostPage page1 = auditionService.getPostsPage(null, null, 1);
+        assertEquals(1, page1.posts().get(0).getId());
+
+        // A refresh in between does not move the second page
+        when(postSnapshotStore.current()).thenReturn(new PostSnapshot(2, List.of(post1)));
+        when(postSnapshotStore.find(1)).thenReturn(Optional.of(first));
+        final PostPage page2 = auditionService.getPostsPage(page1.nextCursor(), null, 1);
+        assertEquals(2, page2.posts().get(0).getId());
+        assertNull(page2.nextCursor());
+    }
+
+    @Test
+    void testExpiredCursorIsGone() {
+        when(postSnapshotStore.isEnabled()).thenReturn(true);
+        when(postSnapshotStore.find(7)).thenReturn(Optional.empty());
+        final String cursor = new PostCursor(7, 1, 0).encode();
+        final SystemException exception = assertThrows(SystemException.class,
+            () -> auditionService.getPostsPage(cursor, null, 1));
+        assertEquals(410, exception.getStatusCode());
+    }
+
+    @Test
+    void testCursorOfAnotherFilterOrGarbageIsRejected() {
+        when(postSnapshotStore.isEnabled()).thenReturn(true);
+        final String cursor = new PostCursor(1, 1, PostCursor.digest(PostFilter.compile("first"))).encode();
+        assertEquals(400, assertThrows(SystemException.class,
+            () -> auditionService.getPostsPage(cursor, PostFilter.compile("other"), 1)).getStatusCode());
+        // Same String.hashCode, still another filter
+        final String collision = new PostCursor(1, 1, PostCursor.digest(PostFilter.compile("Aa"))).encode();
+        assertEquals(400, assertThrows(SystemException.class,
+            () -> auditionService.getPostsPage(collision, PostFilter.compile("BB"), 1)).getStatusCode());
+        // Same text read as a boolean query
+        assertEquals(400, assertThrows(SystemException.class, () -> auditionService.getPostsPage(cursor,
+            PostFilter.compile("first", PostFilter.Mode.BOOLEAN), 1)).getStatusCode());
+        assertEquals(400, assertThrows(SystemException.class,
+            () -> auditionService.getPostsPage("not a cursor!", null, 1)).getStatusCode());
+    }
+
+    @Test
+    void testCursorPagingWithFilter() {
+        when(postSnapshotStore.isEnabled()).thenReturn(true);
+        final PostSnapshot snapshot = new PostSnapshot(1, posts);
+        when(postSnapshotStore.current()).thenReturn(snapshot);
+        final PostFilter filter = PostFilter.compile("first");
+        when(postSnapshotStore.matching(snapshot, filter)).thenReturn(snapshot.index().search(filter));
+        final PostPage page = auditionService.getPostsPage("", filter, 5);
+        assertEquals(2, page.posts().size());
+        assertNull(page.nextCursor());
+    }
+}
@@ -0,0 +1,187 @@
+package com.audition.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.audition.cache.CommentsCache;
+import com.audition.cache.NotFoundCache;
+import com.audition.cache.PostSnapshotStore;
+import com.audition.common.logging.AuditionLogger;
+import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.filter.PostFilter;
+import com.audition.integration.AuditionIntegrationClient;
+import com.audition.integration.RequestCoalescer;
+import com.audition.integration.StreamingJsonReader;
+import com.audition.integration.UpstreamRetry;
+import com.audition.model.AuditionPost;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.match.MockRestRequestMatchers;
+import org.springframework.test.web.client.response.MockRestResponseCreators;
+import org.springframework.web.client.RestTemplate;
+
+/*
+ * Conformance of the paging and filter push-down with the local path. Both services read the same posts from a mock
+ * upstream answering _sort, _page, _limit and q the way the jsonplaceholder json-server does: q is a case-insensitive
+ * substring search over every field, including id and userId, and the posts are kept in insertion order unless
+ * sorted. Every page of every filter must come back identical.
+ */
+
+class PostPushDownConformanceTest {
+
+    private static final String[] WORDS = {"dolor", "Dolor", "qui", "QUI", "est", "rerum", "Rerum", "ut", "sunt",
+        "facere", "optio", "et", "11", "velit"};
+    private static final List<PostFilter> FILTERS = Arrays.asList(null, plain("dolor"), plain("DOLOR"),
+        plain("rerum est"), plain("Rerum"), plain("ut"), query("dolor OR qui"), query("\"rerum est\" NOT qui"),
+        query("NOT dolor"), query("qui AND est"), plain("1"), plain("11"), plain("zzz"), plain("et velit"),
+        plain("dolor OR qui"));
+    private static final int[] SIZES = {1, 3, 10, 25};
+
+    private final transient List<AuditionPost> upstreamPosts = new ArrayList<>();
+    private final transient AtomicLong bytesServed = new AtomicLong();
+    private transient PostSnapshotStore snapshotStore;
+    private transient AuditionService pushedDown;
+    private transient AuditionService local;
+
+    @BeforeEach
+    void setUp() {
+        // Stored out of id order, the upstream only sorts when asked to
+        final Random random = new Random(17);
+        for (int id = 1; id <= 57; id++) {
+            final AuditionPost post = new AuditionPost();
+            post.setId(id);
+            post.setUserId(1 + id / 10);
+            post.setTitle(text(random, 3));
+            post.setBody(text(random, 12));
+            upstreamPosts.add(post);
+        }
+        Collections.shuffle(upstreamPosts, random);
+
+        final RestTemplate restTemplate = new RestTemplate();
+        MockRestServiceServer.bindTo(restTemplate).build()
+            .expect(ExpectedCount.manyTimes(), MockRestRequestMatchers.method(HttpMethod.GET))
+            .andRespond(this::respond);
+        final String baseUrl = "http://upstream";
+
+        final AuditionApiProperties pushDownConfig = properties(baseUrl, false, true);
+        pushedDown = new AuditionService(client(restTemplate, pushDownConfig),
+            new PostSnapshotStore(null, pushDownConfig, new AuditionLogger(), new SimpleMeterRegistry()), null);
+        final AuditionApiProperties localConfig = properties(baseUrl, true, false);
+        final AuditionIntegrationClient localClient = client(restTemplate, localConfig);
+        snapshotStore = new PostSnapshotStore(localClient, localConfig, new AuditionLogger(),
+            new SimpleMeterRegistry());
+        local = new AuditionService(localClient, snapshotStore, null);
+    }
+
+    private static PostFilter plain(final String filter) {
+        return PostFilter.compile(filter);
+    }
+
+    private static PostFilter query(final String query) {
+        return PostFilter.compile(query, PostFilter.Mode.BOOLEAN);
+    }
+
+    private static AuditionApiProperties properties(final String baseUrl, final boolean snapshot,
+        final boolean pushDown) {
+        return AuditionApiPropertiesFixtures.defaults().withBaseUrl(baseUrl)
+            .withSnapshot(new AuditionApiProperties.Snapshot(snapshot, null, null, null, null))
+            .withPushDown(new AuditionApiProperties.PushDown(pushDown));
+    }
+
+    private static AuditionIntegrationClient client(final RestTemplate restTemplate,
+        final AuditionApiProperties properties) {
+        return new AuditionIntegrationClient(restTemplate, properties, new StreamingJsonReader(new ObjectMapper()),
+            Runnable::run, new RequestCoalescer(new SimpleMeterRegistry()),
+            new CommentsCache(properties, new SimpleMeterRegistry()), null, null, null,
+            new NotFoundCache(properties, new SimpleMeterRegistry()),
+            new UpstreamRetry(properties, new SimpleMeterRegistry()));
+    }
+
+    private static String text(final Random random, final int words) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    @Test
+    void testEveryPageOfEveryFilterMatchesTheLocalPath() {
+        for (final PostFilter filter : FILTERS) {
+            for (final int size : SIZES) {
+                final int lastPage = upstreamPosts.size() / size + 2;
+                for (int page = 1; page <= lastPage; page++) {
+                    assertEquals(ids(local.getPostsWithFilter(filter, page, size)),
+                        ids(pushedDown.getPostsWithFilter(filter, page, size)),
+                        "filter " + filter + ", page " + page + ", size " + size);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testPushedDownPageDownloadsOnlyThatPage() {
+        pushedDown.getPosts(2, 5);
+        final long pageBytes = bytesServed.getAndSet(0);
+        snapshotStore.current();
+        final long allBytes = bytesServed.get();
+        assertTrue(pageBytes * 8 < allBytes, pageBytes + " bytes for one page, " + allBytes + " for all posts");
+    }
+
+    private static List<Integer> ids(final List<AuditionPost> posts) {
+        return posts.stream().map(AuditionPost::getId).toList();
+    }
+
+    private ClientHttpResponse respond(final ClientHttpRequest request) throws IOException {
+        final Map<String, String> params = new HashMap<>();
+        final String query = request.getURI().getRawQuery();
+        if (query != null) {
+            for (final String param : query.split("&")) {
+                final String[] pair = param.split("=", 2);
+                params.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                    pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+            }
+        }
+
+        Stream<AuditionPost> posts = upstreamPosts.stream();
+        if (params.containsKey("q")) {
+            final String term = params.get("q").toLowerCase(Locale.ROOT);
+            posts = posts.filter(post -> Stream.of(post.getId(), post.getUserId(), post.getTitle(), post.getBody())
+                .anyMatch(value -> String.valueOf(value).toLowerCase(Locale.ROOT).contains(term)));
+        }
+        if ("id".equals(params.get("_sort"))) {
+            posts = posts.sorted(Comparator.comparingInt(AuditionPost::getId));
+        }
+        if (params.containsKey("_page")) {
+            final int limit = Integer.parseInt(params.getOrDefault("_limit", "10"));
+            posts = posts.skip((Long.parseLong(params.get("_page")) - 1) * limit).limit(limit);
+        }
+
+        final byte[] body = new ObjectMapper().writeValueAsBytes(posts.toList());
+        bytesServed.addAndGet(body.length);
+        return MockRestResponseCreators.withSuccess(body, MediaType.APPLICATION_JSON).createResponse(request);
+    }
+}
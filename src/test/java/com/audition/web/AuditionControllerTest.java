@@ -2,26 +2,55 @@ package com.audition.web;
 
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.audition.cache.PostSnapshot;
+import com.audition.cache.PostsResponseCache;
+import com.audition.common.exception.SystemException;
 import com.audition.configuration.AuditionApiProperties;
+import com.audition.configuration.AuditionApiPropertiesFixtures;
+import com.audition.configuration.ExecutorConfiguration;
+import com.audition.filter.PostFilter;
 import com.audition.integration.AuditionIntegrationClient;
+import com.audition.integration.JsonPassthrough;
 import com.audition.model.AuditionComment;
 import com.audition.model.AuditionPost;
 import com.audition.service.AuditionService;
+import com.audition.service.PostPage;
+import com.audition.web.dto.PostIdsRequest;
+import com.fasterxml.jackson.core.JsonFactory;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.client.RestTemplate;
 
 /*
@@ -77,70 +106,258 @@ class AuditionControllerTest {
 
     @Test
     void shouldGetPostsWithFilter() {
-        when(auditionService.getPostsWithFilter("test", 1, 10)).thenReturn(testPosts);
+        when(auditionService.getPostsWithFilter(PostFilter.compile("test"), 1, 10)).thenReturn(testPosts);
         final MvcResult result = assertDoesNotThrow(() ->
-            mockMvc.perform(MockMvcRequestBuilders.get("/posts")
-                    .param("filter", "test")
-                    .param("page", "1")
-                    .param("size", "10")
-                    .accept(MediaType.APPLICATION_JSON))
-                .andReturn()
+            dispatch(MockMvcRequestBuilders.get("/posts")
+                .param("filter", "test")
+                .param("page", "1")
+                .param("size", "10"))
         );
-        verify(auditionService, times(1)).getPostsWithFilter("test", 1, 10);
+        verify(auditionService, times(1)).getPostsWithFilter(PostFilter.compile("test"), 1, 10);
         assertEquals(200, result.getResponse().getStatus());
         assertEquals(2, testPosts.size());
     }
 
+    // AND, OR, NOT and quotes are only operators with mode=boolean, an unknown mode is a bad request
     @Test
-    void shouldGetPostById() {
-        when(auditionService.getPostById(1L)).thenReturn(testPost);
+    void shouldReadBooleanFilterOnlyInBooleanMode() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/posts").param("filter", "\"a\" OR b")
+            .accept(MediaType.APPLICATION_JSON)).andReturn();
+        verify(auditionService).getPostsWithFilter(PostFilter.compile("\"a\" OR b"), 1, 10);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/posts").param("filter", "\"a\" OR b").param("mode", "boolean")
+            .accept(MediaType.APPLICATION_JSON)).andReturn();
+        verify(auditionService).getPostsWithFilter(PostFilter.compile("\"a\" OR b", PostFilter.Mode.BOOLEAN), 1, 10);
+
+        assertEquals(400, mockMvc.perform(MockMvcRequestBuilders.get("/posts").param("filter", "a")
+            .param("mode", "regex").accept(MediaType.APPLICATION_JSON)).andReturn().getResponse().getStatus());
+    }
+
+    // The second request is written from the cached bytes, gzipped only for the client that accepts it
+    @Test
+    void shouldWriteSnapshotPagesFromResponseCache() throws Exception {
+        final PostSnapshot snapshot = new PostSnapshot(7, testPosts);
+        when(auditionService.getServingSnapshot()).thenReturn(snapshot);
+        when(auditionService.getPostsWithFilter(snapshot, PostFilter.compile("Title"), 1, 10)).thenReturn(testPosts);
+
+        final MvcResult plain = dispatch(MockMvcRequestBuilders.get("/posts").param("filter", "Title"));
+        final MvcResult gzipped = dispatch(MockMvcRequestBuilders.get("/posts").param("filter", "Title")
+            .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"));
+
+        verify(auditionService, times(1)).getPostsWithFilter(snapshot, PostFilter.compile("Title"), 1, 10);
+        assertNull(plain.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertTrue(plain.getResponse().getContentAsString().contains("Test Post 2 Title"));
+        assertEquals("gzip", gzipped.getResponse().getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(plain.getResponse().getContentAsByteArray(),
+            gunzip(gzipped.getResponse().getContentAsByteArray()));
+    }
+
+    @Test
+    void shouldOnlyGzipForClientsAcceptingIt() {
+        assertTrue(AuditionController.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(AuditionController.acceptsGzip("gzip"));
+        assertFalse(AuditionController.acceptsGzip("gzip;q=0"));
+        assertFalse(AuditionController.acceptsGzip("br"));
+        assertFalse(AuditionController.acceptsGzip(null));
+    }
+
+    private static byte[] gunzip(final byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void shouldStreamUpstreamJsonInPassthroughMode() throws Exception {
+        final String post = "{\"userId\": 1, \"id\": 1, \"title\": \"as received\", \"body\": \"\"}";
+        when(auditionService.isPassthroughEnabled()).thenReturn(true);
+        when(auditionService.getPostByIdJsonAsync(1L)).thenReturn(CompletableFuture.completedFuture(
+            new JsonPassthrough(new JsonFactory(), new ByteArrayInputStream(post.getBytes(StandardCharsets.UTF_8)))));
+        when(auditionService.getCommentsByPostIdJsonAsync(1L)).thenReturn(CompletableFuture.completedFuture(
+            new JsonPassthrough(new JsonFactory(), new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8)))));
+
+        final MvcResult result = dispatch(MockMvcRequestBuilders.get("/posts/{postId}", 1));
+        assertEquals(200, result.getResponse().getStatus());
+        assertEquals(MediaType.APPLICATION_JSON_VALUE, result.getResponse().getContentType());
+        assertEquals("{\"userId\":1,\"id\":1,\"title\":\"as received\"}", result.getResponse().getContentAsString());
+        assertEquals("[]", dispatch(MockMvcRequestBuilders.get("/comments").param("postId", "1"))
+            .getResponse().getContentAsString());
+        verify(auditionService, times(0)).getPostByIdAsync(1L);
+    }
+
+    @Test
+    void shouldPageWithCursor() {
+        when(auditionService.getPostsPage("", null, 1)).thenReturn(new PostPage(List.of(testPost), "next"));
         final MvcResult result = assertDoesNotThrow(() ->
-            mockMvc.perform(MockMvcRequestBuilders.get("/posts/{postId}", 1)
-                    .accept(MediaType.APPLICATION_JSON))
-                .andReturn()
+            dispatch(MockMvcRequestBuilders.get("/posts")
+                .param("cursor", "")
+                .param("size", "1"))
         );
-        verify(auditionService, times(1)).getPostById(1L);
         assertEquals(200, result.getResponse().getStatus());
-        assertEquals(1, testPost.getId());
+        assertEquals("next", result.getResponse().getHeader(AuditionController.NEXT_CURSOR_HEADER));
     }
 
     @Test
-    void shouldGetPostWithComments() {
-        when(auditionService.getPostWithComments(1L)).thenReturn(testPost);
+    void shouldReturnGoneForExpiredCursor() {
+        when(auditionService.getPostsPage("old", null, 10)).thenThrow(
+            new SystemException("expired", "Cursor Expired", 410));
         final MvcResult result = assertDoesNotThrow(() ->
-            mockMvc.perform(MockMvcRequestBuilders.get("/posts/{postId}/comments", 1)
-                    .accept(MediaType.APPLICATION_JSON))
-                .andReturn()
+            dispatch(MockMvcRequestBuilders.get("/posts")
+                .param("cursor", "old"))
         );
-        verify(auditionService, times(1)).getPostWithComments(1L);
+        assertEquals(410, result.getResponse().getStatus());
+    }
+
+    @Test
+    void shouldGetPostById() throws Exception {
+        when(auditionService.getPostByIdAsync(1L)).thenReturn(CompletableFuture.completedFuture(testPost));
+        final MvcResult result = dispatch(MockMvcRequestBuilders.get("/posts/{postId}", 1));
+        verify(auditionService, times(1)).getPostByIdAsync(1L);
+        assertEquals(200, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentAsString().contains("Test Post 1 Title"));
+    }
+
+    @Test
+    void shouldGetPostWithComments() throws Exception {
+        when(auditionService.getPostWithCommentsAsync(1L)).thenReturn(CompletableFuture.completedFuture(testPost));
+        final MvcResult result = dispatch(MockMvcRequestBuilders.get("/posts/{postId}/comments", 1));
+        verify(auditionService, times(1)).getPostWithCommentsAsync(1L);
         assertEquals(200, result.getResponse().getStatus());
         assertEquals(1, testPost.getId());
     }
 
     @Test
-    void shouldGetCommentsForPost() {
-        when(auditionService.getCommentsByPostId(1L)).thenReturn(testComments);
-        final MvcResult result = assertDoesNotThrow(() ->
-            mockMvc.perform(MockMvcRequestBuilders.get("/comments")
-                    .param("postId", "1")
-                    .accept(MediaType.APPLICATION_JSON))
-                .andReturn()
-        );
-        verify(auditionService, times(1)).getCommentsByPostId(1L);
+    void shouldGetCommentsForPost() throws Exception {
+        when(auditionService.getCommentsByPostIdAsync(1L)).thenReturn(CompletableFuture.completedFuture(testComments));
+        final MvcResult result = dispatch(MockMvcRequestBuilders.get("/comments").param("postId", "1"));
+        verify(auditionService, times(1)).getCommentsByPostIdAsync(1L);
+        assertEquals(200, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentAsString().contains("test@example.com"));
+    }
+
+    @Test
+    void shouldGetPostsByIds() throws Exception {
+        when(auditionService.getPostsByIdsAsync(List.of(1L, 2L)))
+            .thenReturn(CompletableFuture.completedFuture(testPosts));
+        final MvcResult result = dispatch(MockMvcRequestBuilders.get("/posts").param("ids", "1,2"));
+        assertEquals(200, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentAsString().contains("Test Post 1 Title"));
+    }
+
+    @Test
+    void shouldGetPostsByIdsInBody() throws Exception {
+        when(auditionService.getPostsByIdsAsync(List.of(1L, 2L)))
+            .thenReturn(CompletableFuture.completedFuture(testPosts));
+        final MvcResult result = dispatch(MockMvcRequestBuilders.post("/posts/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"ids\": [1, 2]}"));
+        assertEquals(200, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentAsString().contains("Test Post 1 Title"));
+    }
+
+    @Test
+    void shouldRejectInvalidPostIds() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/posts").param("ids", "1,-2"))
+            .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        final String tooMany = String.join(",", Collections.nCopies(PostIdsRequest.MAX_IDS + 1, "1"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/posts").param("ids", tooMany))
+            .andExpect(MockMvcResultMatchers.status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.post("/posts/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"ids\": []}"))
+            .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    void shouldGetCommentsForSeveralPosts() throws Exception {
+        when(auditionService.getCommentsByPostIds(List.of(1L, 2L))).thenReturn(testComments);
+        final MvcResult result = dispatch(MockMvcRequestBuilders.get("/comments").param("postIds", "1,2"));
         assertEquals(200, result.getResponse().getStatus());
-        assertEquals(1, testComments.size());
+        assertTrue(result.getResponse().getContentAsString().contains("test@example.com"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/comments").param("postIds", "0"))
+            .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    // An upstream failure completing the future is rendered by the advice like a thrown exception
+    @Test
+    void shouldMapAsyncFailureToProblemDetail() throws Exception {
+        when(auditionService.getPostByIdAsync(9L)).thenReturn(CompletableFuture.failedFuture(
+            new SystemException("Cannot find a Post with id 9", "Resource not found", 404)));
+        final MvcResult result = dispatch(MockMvcRequestBuilders.get("/posts/{postId}", 9));
+        assertEquals(404, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentAsString().contains("Cannot find a Post with id 9"));
+    }
+
+    // MockMvc does not run the async timer, the container timeout is fired by hand
+    @Test
+    void shouldAnswerGatewayTimeoutWhenUpstreamIsTooSlow() throws Exception {
+        final CompletableFuture<AuditionPost> pending = new CompletableFuture<>();
+        when(auditionService.getPostWithCommentsAsync(1L)).thenReturn(pending);
+        final MvcResult started = mockMvc.perform(MockMvcRequestBuilders.get("/posts/{postId}/comments", 1)
+                .accept(MediaType.APPLICATION_JSON))
+            .andExpect(MockMvcResultMatchers.request().asyncStarted())
+            .andReturn();
+        assertEquals(3000L, started.getRequest().getAsyncContext().getTimeout());
+        final MockAsyncContext asyncContext = (MockAsyncContext) started.getRequest().getAsyncContext();
+        for (final AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+
+        final MvcResult result = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started)).andReturn();
+        assertEquals(504, result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentAsString().contains("Gateway Timeout"));
+        assertTrue(pending.isCancelled());
+    }
+
+    // The posts and the comments of several posts are read off the Tomcat thread too, with timeouts of their own
+    @Test
+    void shouldAnswerBlockingEndpointsWithTheirOwnTimeout() throws Exception {
+        when(auditionService.getPosts(1, 10)).thenReturn(testPosts);
+        when(auditionService.getCommentsByPostIds(List.of(1L))).thenReturn(testComments);
+        final MvcResult posts = mockMvc.perform(MockMvcRequestBuilders.get("/posts")
+                .accept(MediaType.APPLICATION_JSON))
+            .andExpect(MockMvcResultMatchers.request().asyncStarted())
+            .andReturn();
+        assertEquals(4000L, posts.getRequest().getAsyncContext().getTimeout());
+        final MvcResult comments = mockMvc.perform(MockMvcRequestBuilders.get("/comments").param("postIds", "1")
+                .accept(MediaType.APPLICATION_JSON))
+            .andExpect(MockMvcResultMatchers.request().asyncStarted())
+            .andReturn();
+        assertEquals(6000L, comments.getRequest().getAsyncContext().getTimeout());
+    }
+
+    private MvcResult dispatch(final MockHttpServletRequestBuilder request) throws Exception {
+        final MvcResult started = mockMvc.perform(request.accept(MediaType.APPLICATION_JSON))
+            .andExpect(MockMvcResultMatchers.request().asyncStarted())
+            .andReturn();
+        return mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started)).andReturn();
     }
 
     @org.springframework.boot.test.context.TestConfiguration
     static class TestConfig {
 
         @org.springframework.context.annotation.Bean
+        @org.springframework.context.annotation.Primary
         public AuditionApiProperties auditionApiProperties() {
-            return new AuditionApiProperties(
-                "http://dummy-url",
-                new AuditionApiProperties.Posts("/posts"),
-                new AuditionApiProperties.Comments("/comments")
-            );
+            return AuditionApiPropertiesFixtures.defaults()
+                .withBaseUrl("http://dummy-url")
+                .withAsync(new AuditionApiProperties.Async(null, null, Map.of(AuditionController.POST_WITH_COMMENTS,
+                    Duration.ofSeconds(3), AuditionController.POSTS, Duration.ofSeconds(4),
+                    AuditionController.COMMENTS_BY_POST_IDS, Duration.ofSeconds(6))))
+                .withResponseCache(new AuditionApiProperties.ResponseCache(true, null, DataSize.ofBytes(64)));
+        }
+
+        // The blocking calls of the controller run on the test thread
+        @org.springframework.context.annotation.Bean(ExecutorConfiguration.UPSTREAM_EXECUTOR)
+        public java.util.concurrent.Executor upstreamExecutor() {
+            return Runnable::run;
+        }
+
+        @org.springframework.context.annotation.Bean
+        public PostsResponseCache postsResponseCache(final AuditionApiProperties auditionApiProperties,
+            final com.fasterxml.jackson.databind.ObjectMapper objectMapper) {
+            return new PostsResponseCache(auditionApiProperties, objectMapper,
+                new io.micrometer.core.instrument.simple.SimpleMeterRegistry());
         }
     }
 }
\ No newline at end of file